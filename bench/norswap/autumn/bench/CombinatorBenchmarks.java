@@ -0,0 +1,213 @@
+package norswap.autumn.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.Grammar;
+import norswap.autumn.Parse;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.autumn.ParseState;
+import norswap.autumn.memo.MemoCache;
+import norswap.autumn.memo.MemoTable;
+import norswap.autumn.memo.Memoizer;
+import norswap.autumn.memo.NullMemoizer;
+import norswap.autumn.parsers.AbstractPrimitive;
+import norswap.autumn.parsers.StringChoice;
+import norswap.utils.Strings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks for individual parsers and for the parsing infrastructure. Each benchmark parses
+ * a synthetic input of about 64kB that exercises a single parser (or piece of infrastructure) at
+ * every position.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinatorBenchmarks
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int SIZE = 64 * 1024;
+
+    private static final String[] KEYWORDS = {
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+        "const", "continue", "default", "do", "double", "else", "enum", "extends", "final",
+        "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+        "interface", "long", "native", "new", "package", "private", "protected", "public",
+        "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+        "throw", "throws", "transient", "try", "void", "volatile", "while" };
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Pushes an item at each position, and pops 16 items every 16 positions. */
+    private static final class StackChurn extends AbstractPrimitive
+    {
+        StackChurn() { super("stack_churn", false); }
+
+        @Override protected boolean doparse (Parse parse)
+        {
+            if (parse.pos == parse.endOfInput) return false;
+            parse.stack.push(parse.pos);
+            if (++parse.pos % 16 == 0)
+                parse.stack.pop(16);
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Pushes 8 items, then rolls back the log, at each position. */
+    private static final class LogChurn extends AbstractPrimitive
+    {
+        LogChurn() { super("log_churn", false); }
+
+        @Override protected boolean doparse (Parse parse)
+        {
+            if (parse.pos == parse.endOfInput) return false;
+            int log0 = parse.log.size();
+            for (int i = 0; i < 8; ++i)
+                parse.stack.push(i);
+            parse.log.rollback(log0);
+            ++parse.pos;
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Micro extends Grammar
+    {
+        rule char_class     = alphanum.at_least(0);
+        rule char_lambda    = cpred(Character::isLetterOrDigit).at_least(0);
+        rule string_match   = str("hello").at_least(0);
+        rule string_choice  = seq(rule(new StringChoice(KEYWORDS)), ' ')
+                              .at_least(0);
+        rule stack          = rule(new StackChurn()).at_least(0);
+        rule log            = rule(new LogChurn()).at_least(0);
+
+        // Each item is parsed twice, the second parse hitting the memoizer.
+        rule memo_table     = memoized(new ParseState<>(new Object(), () -> new MemoTable(false)));
+        rule memo_cache     = memoized(new ParseState<>(new Object(), () -> new MemoCache(4, false)));
+        rule memo_null      = memoized(new ParseState<>(new Object(), NullMemoizer::new));
+
+        rule memoized (ParseState<Memoizer> memoizer)
+        {
+            rule item = seq(alpha.at_least(1), ' ').memo(memoizer);
+            return choice(seq(item, ';'), seq(item, ',')).at_least(0);
+        }
+
+        @Override public rule root() { return char_class; }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Micro g = new Micro();
+    private final ParseOptions options = ParseOptions.wellFormednessCheck(false).get();
+
+    private String alphanums;
+    private String hellos;
+    private String keywords;
+    private String items;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup public void setup()
+    {
+        StringBuilder b = new StringBuilder(SIZE);
+        for (int i = 0; b.length() < SIZE; ++i)
+            b.append((char) (i % 3 == 0 ? '0' + i % 10 : 'a' + i % 26));
+        alphanums = b.toString();
+
+        hellos = Strings.repeat("hello", SIZE / 5);
+
+        b.setLength(0);
+        for (int i = 0; b.length() < SIZE; ++i)
+            b.append(KEYWORDS[i * 7 % KEYWORDS.length]).append(' ');
+        keywords = b.toString();
+
+        b.setLength(0);
+        for (int i = 0; b.length() < SIZE; ++i)
+            b.append(KEYWORDS[i % KEYWORDS.length]).append(i % 2 == 0 ? " ;" : " ,");
+        items = b.toString();
+
+        // Checks that the inputs parse, performing the well-formedness checks once.
+        check(g.char_class, alphanums);
+        check(g.char_lambda, alphanums);
+        check(g.string_match, hellos);
+        check(g.string_choice, keywords);
+        check(g.stack, alphanums);
+        check(g.log, alphanums);
+        check(g.memo_table, items);
+        check(g.memo_cache, items);
+        check(g.memo_null, items);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void check (Grammar.rule rule, String input)
+    {
+        if (!Autumn.parse(rule, input, ParseOptions.get()).fullMatch)
+            throw new IllegalStateException("benchmark input does not parse for " + rule);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseResult parse (Throughput throughput, Grammar.rule rule, String input)
+    {
+        throughput.bytes += input.length(); // inputs are ASCII
+        return Autumn.parse(rule, input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public ParseResult charClass (Throughput t) {
+        return parse(t, g.char_class, alphanums);
+    }
+
+    @Benchmark public ParseResult charLambda (Throughput t) {
+        return parse(t, g.char_lambda, alphanums);
+    }
+
+    @Benchmark public ParseResult stringMatch (Throughput t) {
+        return parse(t, g.string_match, hellos);
+    }
+
+    @Benchmark public ParseResult stringChoice (Throughput t) {
+        return parse(t, g.string_choice, keywords);
+    }
+
+    @Benchmark public ParseResult memoTable (Throughput t) {
+        return parse(t, g.memo_table, items);
+    }
+
+    @Benchmark public ParseResult memoCache (Throughput t) {
+        return parse(t, g.memo_cache, items);
+    }
+
+    @Benchmark public ParseResult memoNull (Throughput t) {
+        return parse(t, g.memo_null, items);
+    }
+
+    @Benchmark public ParseResult logRollback (Throughput t) {
+        return parse(t, g.log, alphanums);
+    }
+
+    @Benchmark public ParseResult sideEffectingStack (Throughput t) {
+        return parse(t, g.stack, alphanums);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
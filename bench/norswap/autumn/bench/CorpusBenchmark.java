@@ -0,0 +1,431 @@
+package norswap.autumn.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.Grammar;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.lang.java.Lexer;
+import norswap.lang.json.JSON;
+import norswap.utils.Util;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Parses a corpus of files with a grammar, and reports throughput, latency, allocation, GC and
+ * memory usage measures.
+ *
+ * <p>Usage: {@code CorpusBenchmark [options] <grammar-class> <corpus-dir>}
+ *
+ * <p>The grammar class must be a {@link Grammar} subclass with a no-argument constructor. Options:
+ *
+ * <ul>
+ * <li>{@code --glob <pattern>}: the files to parse, relative to the corpus directory (default:
+ * {@code **}, i.e. all files)</li>
+ * <li>{@code --warmup <n>}: number of unmeasured iterations over the whole corpus (default: 3)</li>
+ * <li>{@code --iterations <n>}: number of measured iterations over the whole corpus (default:
+ * 5)</li>
+ * <li>{@code --lexer <name>}: lexes the files with the given lexer and parses the resulting list
+ * of tokens. The only supported lexer is {@code java} ({@link Lexer}, for {@link
+ * norswap.lang.java.JavaGrammarTokens}).</li>
+ * <li>{@code --out <file>}: writes the results as JSON in the given file</li>
+ * <li>{@code --baseline <file>}: compares the results to a results file written by a previous
+ * run</li>
+ * <li>{@code --max-regression <percent>}: in conjunction with {@code --baseline}, exit with
+ * status 2 if the throughput decreased, or if the allocated bytes per input byte increased, by
+ * more than the given percentage</li>
+ * </ul>
+ *
+ * <p>Files are read in memory (and lexed) beforehand, and parsed with well-formedness checking and
+ * call stack recording disabled. Files that do not parse fully are reported, and counted as
+ * failures, but are measured nonetheless.
+ *
+ * <p>Grammars that parse list inputs can only be benchmarked with a lexer: those that define
+ * {@link Grammar#token_kind} are rejected up front if {@code --lexer} isn't specified. The
+ * throughput is still measured in bytes of source text.
+ *
+ * <p>The measures are:
+ * <ul>
+ * <li>{@code mbPerSecond}, {@code filesPerSecond}: throughput (1 MB = 10^6 bytes)</li>
+ * <li>{@code latencyMicros}: percentiles of the time taken to parse a single file</li>
+ * <li>{@code allocatedBytesPerByte}: bytes allocated by the parsing thread per input byte
+ * (requires {@code com.sun.management.ThreadMXBean}, -1 if not supported)</li>
+ * <li>{@code gcCount}, {@code gcTimeMillis}: garbage collections during the measured
+ * iterations</li>
+ * <li>{@code peakLogSize}, {@code peakStackSize}: the largest {@link ParseResult#peakLogSize}
+ * and {@link ParseResult#peakStackSize} over all files</li>
+ * </ul>
+ *
+ * <p>The JSON output has one measure per line, and does not depend on the machine beyond the
+ * measures themselves, so that results files can be diffed and stored as baselines.
+ */
+public final class CorpusBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final String USAGE =
+        "usage: CorpusBenchmark [--glob <pattern>] [--warmup <n>] [--iterations <n>] " +
+        "[--lexer java] [--out <file>] [--baseline <file>] [--max-regression <percent>] " +
+        "<grammar-class> <corpus-dir>";
+
+    // ---------------------------------------------------------------------------------------------
+
+    private String glob = "**";
+    private int warmup = 3;
+    private int iterations = 5;
+    private String lexer;
+    private Path out;
+    private Path baseline;
+    private double maxRegression = Double.NaN;
+    private String grammarClass;
+    private Path corpus;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private CorpusBenchmark() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static void main (String[] args) throws IOException
+    {
+        CorpusBenchmark benchmark = new CorpusBenchmark();
+        Map<String, Object> results = null;
+        try {
+            benchmark.parseArguments(args);
+            results = benchmark.run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        String json = toJson(results, "");
+        System.out.println(json);
+
+        if (benchmark.out != null)
+            Files.write(benchmark.out, json.getBytes(StandardCharsets.UTF_8));
+
+        if (benchmark.baseline != null && !benchmark.compare(results))
+            System.exit(2);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void parseArguments (String[] args)
+    {
+        List<String> positional = new ArrayList<>();
+
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            if (i + 1 == args.length)
+                throw new IllegalArgumentException("missing value for option: " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "--glob":              glob = value;                               break;
+                case "--warmup":            warmup = Integer.parseInt(value);           break;
+                case "--iterations":        iterations = Integer.parseInt(value);       break;
+                case "--lexer":             lexer = value;                              break;
+                case "--out":               out = Paths.get(value);                     break;
+                case "--baseline":          baseline = Paths.get(value);                break;
+                case "--max-regression":    maxRegression = Double.parseDouble(value);  break;
+                default: throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+
+        if (positional.size() != 2)
+            throw new IllegalArgumentException("expected a grammar class and a corpus directory");
+        if (iterations < 1)
+            throw new IllegalArgumentException("there must be at least one measured iteration");
+        if (lexer != null && !lexer.equals("java"))
+            throw new IllegalArgumentException("unknown lexer: " + lexer);
+
+        grammarClass = positional.get(0);
+        corpus = Paths.get(positional.get(1));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Grammar grammar()
+    {
+        try {
+            return (Grammar) Class.forName(grammarClass).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("could not instantiate grammar " + grammarClass, e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Map<String, Object> run() throws IOException
+    {
+        Grammar grammar = grammar();
+        Grammar.rule root = grammar.root();
+
+        if (grammar.token_kind != null && lexer == null)
+            throw new IllegalArgumentException("grammar " + grammarClass
+                + " parses list inputs (tokens), specify a lexer with --lexer");
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(corpus)) {
+            paths = stream
+                .filter(Files::isRegularFile)
+                .filter(p -> matcher.matches(corpus.relativize(p)))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+
+        if (paths.isEmpty())
+            throw new IllegalArgumentException("no files matching " + glob + " in " + corpus);
+
+        Object[] inputs = new Object[paths.size()];
+        long bytes = 0;
+        for (int i = 0; i < inputs.length; ++i) {
+            byte[] content = Files.readAllBytes(paths.get(i));
+            String text = new String(content, StandardCharsets.UTF_8);
+            inputs[i] = lexer != null ? Arrays.asList(new Lexer(text).lex()) : text;
+            bytes += content.length;
+        }
+
+        // Performs the well-formedness check once.
+        parse(root, lexer != null ? Collections.emptyList() : "", ParseOptions.get());
+
+        ParseOptions options = ParseOptions
+            .wellFormednessCheck(false)
+            .recordCallStack(false)
+            .get();
+
+        for (int i = 0; i < warmup; ++i)
+            for (Object input: inputs)
+                parse(root, input, options);
+
+        com.sun.management.ThreadMXBean threads = threadBean();
+        long thread = Thread.currentThread().getId();
+        long[] latencies = new long[inputs.length * iterations];
+        long allocated = 0;
+        long totalTime = 0;
+        int failures = 0;
+        int peakLog = 0;
+        int peakStack = 0;
+        long gcCount0 = gcCount();
+        long gcTime0 = gcTime();
+
+        for (int i = 0; i < iterations; ++i) {
+            for (int j = 0; j < inputs.length; ++j) {
+                long alloc0 = threads != null ? threads.getThreadAllocatedBytes(thread) : 0;
+                long t0 = System.nanoTime();
+                ParseResult result = parse(root, inputs[j], options);
+                long time = System.nanoTime() - t0;
+                if (threads != null)
+                    allocated += threads.getThreadAllocatedBytes(thread) - alloc0;
+                latencies[i * inputs.length + j] = time;
+                totalTime += time;
+                peakLog = Math.max(peakLog, result.peakLogSize);
+                peakStack = Math.max(peakStack, result.peakStackSize);
+                if (i == 0 && !result.fullMatch) {
+                    ++failures;
+                    System.err.println("failed to parse " + paths.get(j) + " (error at offset "
+                        + result.errorOffset + ")");
+                }
+            }
+        }
+
+        long gcCount = gcCount() - gcCount0;
+        long gcTime = gcTime() - gcTime0;
+        Arrays.sort(latencies);
+        double seconds = totalTime / 1e9;
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", percentile(latencies, 50) / 1e3);
+        latency.put("p90", percentile(latencies, 90) / 1e3);
+        latency.put("p99", percentile(latencies, 99) / 1e3);
+        latency.put("max", latencies[latencies.length - 1] / 1e3);
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("grammar", grammarClass);
+        results.put("corpus", corpus.toString());
+        results.put("glob", glob);
+        results.put("files", inputs.length);
+        results.put("bytes", bytes);
+        results.put("warmupIterations", warmup);
+        results.put("iterations", iterations);
+        results.put("failures", failures);
+        results.put("mbPerSecond", bytes * iterations / 1e6 / seconds);
+        results.put("filesPerSecond", inputs.length * iterations / seconds);
+        results.put("latencyMicros", latency);
+        results.put("allocatedBytesPerByte",
+            threads != null ? (double) allocated / (bytes * iterations) : -1);
+        results.put("gcCount", gcCount);
+        results.put("gcTimeMillis", gcTime);
+        results.put("peakLogSize", peakLog);
+        results.put("peakStackSize", peakStack);
+        return results;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Parses {@code input}, which is either a string or a list of tokens. */
+    private static ParseResult parse (Grammar.rule root, Object input, ParseOptions options)
+    {
+        return input instanceof String
+            ? Autumn.parse(root, (String) input, options)
+            : Autumn.parse(root, (List<?>) input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Nearest-rank percentile over sorted values. */
+    private static long percentile (long[] sorted, int percent)
+    {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static com.sun.management.ThreadMXBean threadBean()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported())
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static long gcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(gc.getCollectionCount(), 0);
+        return count;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static long gcTime()
+    {
+        long time = 0;
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(gc.getCollectionTime(), 0);
+        return time;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String toJson (Map<String, Object> map, String indent)
+    {
+        StringBuilder b = new StringBuilder("{\n");
+        int i = 0;
+        for (Map.Entry<String, Object> entry: map.entrySet()) {
+            b.append(indent).append("  \"").append(entry.getKey()).append("\": ");
+            Object value = entry.getValue();
+            if (value instanceof Map)
+                b.append(toJson(Util.cast(value), indent + "  "));
+            else if (value instanceof String)
+                b.append('"').append(((String) value)
+                    .replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            else if (value instanceof Double)
+                b.append(String.format(Locale.ROOT, "%.3f", (Double) value));
+            else
+                b.append(value);
+            b.append(++i < map.size() ? ",\n" : "\n");
+        }
+        return b.append(indent).append("}").toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prints the relative change of each measure with respect to the baseline, and returns false
+     * iff {@link #maxRegression} was specified and exceeded.
+     */
+    private boolean compare (Map<String, Object> results) throws IOException
+    {
+        String text = new String(Files.readAllBytes(baseline), StandardCharsets.UTF_8);
+        ParseResult result = Autumn.parse(new JSON(), text, ParseOptions.get());
+        if (!result.fullMatch)
+            throw new IllegalArgumentException("not a valid results file: " + baseline);
+
+        Map<String, Object> base = result.topValue();
+        Map<String, Object> current = flatten(results, "", new LinkedHashMap<>());
+        Map<String, Object> previous = flatten(base, "", new LinkedHashMap<>());
+
+        System.out.println("\nComparison with " + baseline + ":");
+        for (Map.Entry<String, Object> entry: current.entrySet()) {
+            Object before = previous.get(entry.getKey());
+            if (!(before instanceof Double) || !(entry.getValue() instanceof Number))
+                continue;
+            double b = (Double) before;
+            double a = ((Number) entry.getValue()).doubleValue();
+            System.out.println(String.format("%-24s %14.3f -> %14.3f  (%+.1f%%)",
+                entry.getKey(), b, a, change(b, a)));
+        }
+
+        if (Double.isNaN(maxRegression))
+            return true;
+
+        boolean ok = true;
+        double throughput = change(
+            ((Number) previous.get("mbPerSecond")).doubleValue(),
+            ((Number) current.get("mbPerSecond")).doubleValue());
+        double allocation = change(
+            ((Number) previous.get("allocatedBytesPerByte")).doubleValue(),
+            ((Number) current.get("allocatedBytesPerByte")).doubleValue());
+
+        if (-throughput > maxRegression) {
+            System.out.println(String.format("Throughput regressed by %.1f%%", -throughput));
+            ok = false;
+        }
+        if (allocation > maxRegression) {
+            System.out.println(String.format("Allocation regressed by %.1f%%", allocation));
+            ok = false;
+        }
+        return ok;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static double change (double before, double after) {
+        return before == 0 ? 0 : (after - before) / before * 100;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Map<String, Object> flatten (
+            Map<String, Object> map, String prefix, Map<String, Object> out)
+    {
+        for (Map.Entry<String, Object> entry: map.entrySet()) {
+            if (entry.getValue() instanceof Map)
+                flatten(Util.cast(entry.getValue()), prefix + entry.getKey() + ".", out);
+            else
+                out.put(prefix + entry.getKey(), entry.getValue());
+        }
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
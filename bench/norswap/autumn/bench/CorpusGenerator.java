@@ -0,0 +1,641 @@
+package norswap.autumn.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates synthetic inputs for the example grammars ({@code JavaGrammar}, {@code JSON} and
+ * {@code SimpleXML}), so that benchmarks and scaling experiments do not depend on an external
+ * corpus.
+ *
+ * <p>Generation is deterministic: a generator created with a given seed always produces the same
+ * sequence of inputs (for the same sequence of calls).
+ *
+ * <p>The regular generators ({@link #java}, {@link #json}, {@link #xml}) produce inputs of
+ * (approximately, and at least) a target size, whose shape is controlled by a few parameters. The
+ * {@code adversarial*} generators produce small inputs that trigger a lot of backtracking, or that
+ * are pathologically nested.
+ *
+ * <p>The generated inputs are syntactically valid, but meaningless.
+ *
+ * <p>Run {@link #main} to generate a corpus on disk, e.g. for {@code lang.java.Benchmark}.
+ */
+public final class CorpusGenerator
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final Random random;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CorpusGenerator (long seed) {
+        this.random = new Random(seed);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int nextInt (int bound) {
+        return random.nextInt(bound);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean chance (double probability) {
+        return random.nextDouble() < probability;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private <T> T pick (T[] array) {
+        return array[random.nextInt(array.length)];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns a sample of a geometric distribution with the given mean. */
+    private int geometric (double mean)
+    {
+        if (mean <= 0) return 0;
+        double p = 1 / (mean + 1);
+        int n = 0;
+        while (random.nextDouble() >= p) ++n;
+        return n;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private String word (int minLength, int maxLength)
+    {
+        int length = minLength + nextInt(maxLength - minLength + 1);
+        StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; ++i)
+            b.append((char) ('a' + nextInt(26)));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns an identifier (which can't be a Java keyword thanks to its numeric suffix). */
+    private String identifier() {
+        return word(1, 6) + nextInt(10);
+    }
+
+    // =============================================================================================
+    // region [Java]
+    // =============================================================================================
+
+    private static final String[] JAVA_BINARY_OPERATORS = {
+        "+", "-", "*", "/", "%", "<<", ">>", ">>>", "<", ">", "<=", ">=", "==", "!=", "&", "^", "|",
+        "&&", "||" };
+
+    private static final String[] JAVA_TYPES = {
+        "int", "long", "double", "boolean", "String", "Object", "List<String>",
+        "Map<String, List<Integer>>", "int[]", "Node<T>" };
+
+    private static final String[] JAVA_MODIFIERS = {
+        "public ", "private ", "protected ", "static ", "final ", "public static ",
+        "private final ", "" };
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Generates a Java compilation unit of at least {@code size} characters, made of classes
+     * containing fields, constructors, methods and nested classes.
+     *
+     * <p>Blocks (statements and nested classes) are nested up to {@code depth} levels deep, and
+     * expressions contain on average {@code expressionDensity} binary operators.
+     */
+    public String java (int size, int depth, double expressionDensity)
+    {
+        StringBuilder b = new StringBuilder(size + 1024);
+        b.append("package gen.p").append(nextInt(1000)).append(";\n\n");
+        b.append("import java.util.*;\n");
+        b.append("import java.util.function.Function;\n");
+        b.append("import static java.lang.Math.max;\n\n");
+
+        for (int i = 0; b.length() < size; ++i)
+            javaClass(b, "C" + i, "", depth, expressionDensity, size);
+
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void javaClass (
+            StringBuilder b, String name, String indent, int depth, double density, int size)
+    {
+        b.append(indent).append("@SuppressWarnings(\"unchecked\")\n");
+        b.append(indent).append(indent.isEmpty() ? "public " : "static ").append("class ")
+            .append(name).append("<T extends Comparable<? super T>> implements Runnable\n");
+        b.append(indent).append("{\n");
+        String in = indent + "    ";
+
+        int members = 2 + nextInt(8);
+        for (int i = 0; i < members && b.length() < size; ++i) {
+            switch (nextInt(depth > 1 ? 6 : 5)) {
+                case 0:
+                case 1:
+                    b.append(in).append(pick(JAVA_MODIFIERS)).append(pick(JAVA_TYPES))
+                        .append(" f").append(i);
+                    if (chance(0.7)) {
+                        b.append(" = ");
+                        javaExpression(b, geometric(density), 3);
+                    }
+                    b.append(";\n");
+                    break;
+                case 2:
+                    b.append(in).append("public ").append(name).append(" (int a, T... rest) {\n");
+                    javaBlockContents(b, in + "    ", depth - 1, density);
+                    b.append(in).append("}\n");
+                    break;
+                case 5:
+                    javaClass(b, name + "_" + i, in, depth - 1, density, size);
+                    break;
+                default:
+                    b.append(in).append(pick(JAVA_MODIFIERS)).append(pick(JAVA_TYPES))
+                        .append(" m").append(i)
+                        .append(" (int a, String b, List<? extends T> c) throws Exception\n");
+                    javaBlock(b, in, depth - 1, density);
+            }
+            b.append("\n");
+        }
+
+        b.append(in).append("@Override public void run() {}\n");
+        b.append(indent).append("}\n\n");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void javaBlock (StringBuilder b, String indent, int depth, double density)
+    {
+        b.append(indent).append("{\n");
+        javaBlockContents(b, indent + "    ", depth, density);
+        b.append(indent).append("}\n");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void javaBlockContents (StringBuilder b, String indent, int depth, double density)
+    {
+        int statements = 1 + nextInt(6);
+        for (int i = 0; i < statements; ++i)
+            javaStatement(b, indent, depth, density);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void javaStatement (StringBuilder b, String indent, int depth, double density)
+    {
+        int kind = nextInt(depth > 0 ? 12 : 5);
+        b.append(indent);
+        switch (kind) {
+            case 0:
+                b.append(pick(JAVA_TYPES)).append(" v").append(nextInt(100)).append(" = ");
+                javaExpression(b, geometric(density), 3);
+                b.append(";\n");
+                break;
+            case 1:
+                b.append("x").append(nextInt(10)).append(chance(0.5) ? " = " : " += ");
+                javaExpression(b, geometric(density), 3);
+                b.append(";\n");
+                break;
+            case 2:
+                b.append("f").append(nextInt(10)).append("(");
+                javaExpression(b, geometric(density), 3);
+                b.append(", ");
+                javaExpression(b, 0, 3);
+                b.append(");\n");
+                break;
+            case 3:
+                b.append("return ");
+                javaExpression(b, geometric(density), 3);
+                b.append(";\n");
+                break;
+            case 4:
+                b.append("i++;\n");
+                break;
+            case 5:
+            case 6:
+                b.append("if (");
+                javaExpression(b, geometric(density), 3);
+                b.append(")\n");
+                javaBlock(b, indent, depth - 1, density);
+                if (chance(0.5)) {
+                    b.append(indent).append("else\n");
+                    javaBlock(b, indent, depth - 1, density);
+                }
+                break;
+            case 7:
+                b.append("while (");
+                javaExpression(b, geometric(density), 3);
+                b.append(")\n");
+                javaBlock(b, indent, depth - 1, density);
+                break;
+            case 8:
+                b.append("for (int i = 0; i < ");
+                javaExpression(b, geometric(density), 3);
+                b.append("; ++i)\n");
+                javaBlock(b, indent, depth - 1, density);
+                break;
+            case 9:
+                b.append("try\n");
+                javaBlock(b, indent, depth - 1, density);
+                b.append(indent).append("catch (IllegalStateException | ClassCastException e)\n");
+                javaBlock(b, indent, depth - 1, density);
+                break;
+            case 10:
+                b.append("switch (");
+                javaExpression(b, 0, 3);
+                b.append(") {\n");
+                for (int i = 0, n = 1 + nextInt(3); i < n; ++i) {
+                    b.append(indent).append("    case ").append(i).append(":\n");
+                    javaBlockContents(b, indent + "        ", depth - 1, density);
+                }
+                b.append(indent).append("    default:\n");
+                b.append(indent).append("        break;\n");
+                b.append(indent).append("}\n");
+                break;
+            default:
+                b.append("Runnable r").append(nextInt(100)).append(" = () ->\n");
+                javaBlock(b, indent, depth - 1, density);
+                b.setLength(b.length() - 1);
+                b.append(";\n");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Appends an expression with {@code operators} binary operators. {@code depth} limits the
+     * nesting of expressions within primary expressions (e.g. arguments, array indices).
+     */
+    private void javaExpression (StringBuilder b, int operators, int depth)
+    {
+        if (operators == 0) {
+            javaPrimary(b, depth);
+            return;
+        }
+
+        int left = nextInt(operators);
+        boolean parens = chance(0.2);
+        if (parens) b.append("(");
+        javaExpression(b, left, depth);
+        b.append(" ").append(pick(JAVA_BINARY_OPERATORS)).append(" ");
+        javaExpression(b, operators - 1 - left, depth);
+        if (parens) b.append(")");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void javaPrimary (StringBuilder b, int depth)
+    {
+        switch (nextInt(depth > 0 ? 14 : 6)) {
+            case 0: b.append(nextInt(1000)); break;
+            case 1: b.append(nextInt(100)).append(".").append(nextInt(100)).append("e3"); break;
+            case 2: b.append("\"").append(word(0, 12)).append("\""); break;
+            case 3: b.append("'").append((char) ('a' + nextInt(26))).append("'"); break;
+            case 4: b.append(chance(0.5) ? "true" : "null"); break;
+            case 5: b.append(identifier()); break;
+            case 6:
+                b.append(identifier()).append(".").append(identifier()).append("(");
+                javaExpression(b, nextInt(2), depth - 1);
+                b.append(", ");
+                javaArgument(b, depth - 1);
+                b.append(")");
+                break;
+            case 7:
+                b.append("-");
+                javaPrimary(b, depth - 1);
+                break;
+            case 8:
+                b.append("!");
+                javaPrimary(b, depth - 1);
+                break;
+            case 9:
+                b.append("(int) ");
+                javaPrimary(b, depth - 1);
+                break;
+            case 10:
+                b.append("new ArrayList<>(");
+                javaExpression(b, 0, depth - 1);
+                b.append(")");
+                break;
+            case 11:
+                b.append(identifier()).append("[");
+                javaExpression(b, nextInt(2), depth - 1);
+                b.append("]");
+                break;
+            case 12:
+                b.append("(");
+                javaExpression(b, 0, depth - 1);
+                b.append(" ? ");
+                javaExpression(b, 0, depth - 1);
+                b.append(" : ");
+                javaExpression(b, 0, depth - 1);
+                b.append(")");
+                break;
+            default:
+                b.append("this.f").append(nextInt(10));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Appends a method argument: an expression, a lambda or a method reference. */
+    private void javaArgument (StringBuilder b, int depth)
+    {
+        switch (nextInt(4)) {
+            case 0:
+                b.append("(x, y) -> ");
+                javaExpression(b, nextInt(2), depth);
+                break;
+            case 1:
+                b.append("String::valueOf");
+                break;
+            default:
+                javaExpression(b, nextInt(2), depth);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Generates a Java class whose expressions are parenthesized {@code depth} levels deep, and
+     * where parenthesized expressions are ambiguous with casts and lambda parameters for the
+     * parser, causing heavy backtracking.
+     */
+    public String adversarialJava (int depth)
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("class Adversarial\n{\n    void m()\n    {\n");
+
+        // parenthesized expression vs cast
+        b.append("        int a = ");
+        for (int i = 0; i < depth; ++i) b.append("(");
+        b.append("x");
+        for (int i = 0; i < depth; ++i) b.append(")");
+        b.append(";\n");
+
+        // cast chains
+        b.append("        Object b = ");
+        for (int i = 0; i < depth; ++i) b.append("(T").append(i).append(") ");
+        b.append("x;\n");
+
+        // lambda vs parenthesized expression
+        b.append("        Function c = ");
+        for (int i = 0; i < depth; ++i) b.append("(x").append(i).append(") -> ");
+        b.append("x;\n");
+
+        // generic types vs relational operators
+        b.append("        boolean d = ");
+        for (int i = 0; i < depth; ++i) b.append("a").append(i).append(" < ");
+        b.append("b;\n");
+
+        b.append("    }\n}\n");
+        return b.toString();
+    }
+
+    // endregion
+    // =============================================================================================
+    // region [JSON]
+    // =============================================================================================
+
+    /**
+     * Generates a JSON array of at least {@code size} characters, whose items are values nested
+     * up to {@code depth} levels deep. Objects and arrays have up to {@code width} entries, and
+     * scalar values are strings with probability {@code stringRatio} (numbers or booleans
+     * otherwise).
+     */
+    public String json (int size, int width, int depth, double stringRatio)
+    {
+        StringBuilder b = new StringBuilder(size + 1024);
+        b.append("[\n");
+        for (int i = 0; b.length() < size; ++i) {
+            if (i > 0) b.append(",\n");
+            b.append("  ");
+            jsonValue(b, width, depth, stringRatio);
+        }
+        b.append("\n]\n");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void jsonValue (StringBuilder b, int width, int depth, double stringRatio)
+    {
+        if (depth <= 0 || chance(0.25)) {
+            jsonScalar(b, stringRatio, false);
+            return;
+        }
+
+        int n = nextInt(width + 1);
+        boolean object = chance(0.5);
+        b.append(object ? "{" : "[");
+        for (int i = 0; i < n; ++i) {
+            if (i > 0) b.append(", ");
+            if (object) {
+                b.append("\"").append(word(1, 10)).append(i).append("\": ");
+                jsonValue(b, width, depth - 1, stringRatio);
+            } else if (chance(0.3)) {
+                jsonScalar(b, stringRatio, true);
+            } else {
+                jsonValue(b, width, depth - 1, stringRatio);
+            }
+        }
+        b.append(object ? "}" : "]");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** {@code allowNull}: null can't be used as object value with the JSON example grammar. */
+    private void jsonScalar (StringBuilder b, double stringRatio, boolean allowNull)
+    {
+        if (chance(stringRatio)) {
+            b.append("\"");
+            for (int i = 0, n = nextInt(4); i < n; ++i) {
+                b.append(word(0, 8));
+                switch (nextInt(8)) {
+                    case 0: b.append("\\n"); break;
+                    case 1: b.append("\\\\"); break;
+                    case 2: b.append("\\u00e9"); break;
+                    default: b.append(" ");
+                }
+            }
+            b.append("\"");
+            return;
+        }
+
+        switch (nextInt(allowNull ? 6 : 5)) {
+            case 0: b.append(nextInt(100_000)); break;
+            case 1: b.append(-nextInt(1000)); break;
+            case 2: b.append(nextInt(1000)).append(".").append(nextInt(1000)); break;
+            case 3: b.append(nextInt(10)).append(".").append(nextInt(10)).append("e-")
+                     .append(nextInt(20)); break;
+            case 4: b.append(chance(0.5) ? "true" : "false"); break;
+            default: b.append("null");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Generates a JSON value made of arrays and objects nested {@code depth} levels deep.
+     */
+    public String adversarialJson (int depth)
+    {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < depth; ++i)
+            b.append(i % 2 == 0 ? "[" : "{\"k\": ");
+        b.append("0");
+        for (int i = depth - 1; i >= 0; --i)
+            b.append(i % 2 == 0 ? "]" : "}");
+        return b.toString();
+    }
+
+    // endregion
+    // =============================================================================================
+    // region [XML]
+    // =============================================================================================
+
+    /**
+     * Generates a document for the {@code SimpleXML} example grammar (nested tags and text, no
+     * attributes) of at least {@code size} characters, where each tag contains up to {@code
+     * width} children (tags or text), nested up to {@code depth} levels deep.
+     */
+    public String xml (int size, int width, int depth)
+    {
+        StringBuilder b = new StringBuilder(size + 1024);
+        b.append("<root>\n");
+        while (b.length() < size) {
+            xmlTag(b, width, depth);
+            b.append("\n");
+        }
+        b.append("</root>");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void xmlTag (StringBuilder b, int width, int depth)
+    {
+        String name = word(1, 8) + nextInt(10);
+        b.append("<").append(name).append(">");
+        int n = depth <= 1 ? 1 : 1 + nextInt(width);
+        for (int i = 0; i < n; ++i) {
+            if (depth <= 1 || chance(0.3))
+                b.append(word(1, 10)).append(" ").append(word(1, 10));
+            else
+                xmlTag(b, width, depth - 1);
+        }
+        b.append("</").append(name).append(">");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Generates a {@code SimpleXML} document whose tags are nested {@code depth} levels deep.
+     */
+    public String adversarialXml (int depth)
+    {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < depth; ++i)
+            b.append("<a").append(i).append(">");
+        b.append("text");
+        for (int i = depth - 1; i >= 0; --i)
+            b.append("</a").append(i).append(">");
+        return b.toString();
+    }
+
+    // endregion
+    // =============================================================================================
+    // region [Expressions]
+    // =============================================================================================
+
+    private static final String[] EXPRESSION_OPERATORS = {
+        "+", "-", "*", "/", "<<", ">>", "==", "!=", "<", ">", "<=", ">=" };
+
+    /**
+     * Generates an expression for the grammars in {@code ExpressionBenchmark}, with {@code terms}
+     * terms, where each term is parenthesized with probability {@code parenRatio}. Parenthesized
+     * terms contain 2 to 4 terms, which are not themselves parenthesized (see {@link
+     * #adversarialExpression} for nested parentheses).
+     */
+    public String expression (int terms, double parenRatio)
+    {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < terms; ++i) {
+            if (i > 0) b.append(pick(EXPRESSION_OPERATORS));
+            if (chance(parenRatio))
+                b.append("(").append(expression(2 + nextInt(3), 0)).append(")");
+            else
+                b.append(nextInt(1000));
+        }
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Generates an expression for the grammars in {@code ExpressionBenchmark}, where each level of
+     * nested parentheses contains an operator of each precedence level. For grammars that
+     * re-parse the operands of each operator they try, the cost is exponential in {@code depth}.
+     */
+    public String adversarialExpression (int depth)
+    {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < depth; ++i)
+            b.append("1*2+3<<4==(");
+        b.append("0");
+        for (int i = 0; i < depth; ++i)
+            b.append(")");
+        return b.toString();
+    }
+
+    // endregion
+    // =============================================================================================
+
+    /**
+     * Generates a corpus on disk.
+     *
+     * <p>Usage: {@code CorpusGenerator <java|json|xml> <output-dir> [files] [size] [seed]}
+     *
+     * <p>Writes {@code files} (default: 100) files of at least {@code size} characters (default:
+     * 16384) in the output directory, using default shape parameters and the given seed
+     * (default: 0).
+     */
+    public static void main (String[] args) throws IOException
+    {
+        if (args.length < 2 || args.length > 5) {
+            System.err.println(
+                "usage: CorpusGenerator <java|json|xml> <output-dir> [files] [size] [seed]");
+            System.exit(1);
+        }
+
+        String kind = args[0];
+        Path dir = Paths.get(args[1]);
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int size  = args.length > 3 ? Integer.parseInt(args[3]) : 16384;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        Files.createDirectories(dir);
+
+        for (int i = 0; i < files; ++i) {
+            String content;
+            switch (kind) {
+                case "java": content = generator.java(size, 4, 1.5);        break;
+                case "json": content = generator.json(size, 8, 5, 0.5);     break;
+                case "xml":  content = generator.xml(size, 6, 5);           break;
+                default: throw new IllegalArgumentException("unknown corpus kind: " + kind);
+            }
+            Path path = dir.resolve(String.format("gen%04d.%s", i, kind));
+            Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,199 @@
+package norswap.autumn.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.Grammar;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.lang.java.JavaGrammar;
+import norswap.lang.java.JavaGrammarTokens;
+import norswap.lang.java.Lexer;
+import norswap.lang.json.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing whole inputs with the example grammars.
+ *
+ * <ul>
+ * <li>{@code java}: {@link JavaGrammar}</li>
+ * <li>{@code java-tokens}: {@link JavaGrammarTokens} (lexing is done beforehand and not
+ * measured)</li>
+ * <li>{@code json}: {@link JSON}</li>
+ * <li>{@code xml}: {@code SimpleXML}</li>
+ * <li>{@code expr-table}, {@code expr-tower}, {@code expr-right-recursive}: the grammars of
+ * {@code ExpressionBenchmark} (respectively {@code OperatorTableExpression}, {@code
+ * GoodRightExpression} and {@code BadRightExpression}).</li>
+ * </ul>
+ *
+ * <p>The {@link #input} parameter selects the input:
+ *
+ * <ul>
+ * <li>{@code bundled} (default): {@code inputs/sample-java.txt}, {@code inputs/sample.json} and
+ * {@code inputs/sample.xml}. There is no bundled expression, so a 200-term expression is generated
+ * instead.</li>
+ * <li>{@code generated}: an input of about {@link #size} bytes, generated by {@link
+ * CorpusGenerator} with seed {@link #seed}. Beware that {@code expr-right-recursive} overflows
+ * the stack on large inputs.</li>
+ * <li>{@code adversarial}: the {@code adversarial*} inputs of {@link CorpusGenerator}, with
+ * nesting depth {@link #depth}. For {@code expr-right-recursive}, the parse time is multiplied by
+ * about 30 for each level of depth: use {@code -p depth=2}.</li>
+ * </ul>
+ *
+ * <p>For instance: {@code gradle jmh -PjmhArgs="GrammarBenchmarks -p input=generated -p
+ * size=1000000"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrammarBenchmarks
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({
+        "java", "java-tokens", "json", "xml", "expr-table", "expr-tower", "expr-right-recursive" })
+    public String grammar;
+
+    @Param({"bundled"})
+    public String input;
+
+    @Param({"65536"})
+    public int size;
+
+    @Param({"0"})
+    public long seed;
+
+    @Param({"8"})
+    public int depth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Grammar.rule root;
+    private String string;
+    private List<?> list;
+    private int bytes;
+
+    private final ParseOptions options = ParseOptions.wellFormednessCheck(false).get();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Instantiates a grammar that lives in the default package, and hence can't be imported.
+     */
+    private static Grammar load (String className)
+    {
+        try {
+            return (Grammar) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not instantiate " + className, e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the input of the given kind ("java", "json", "xml" or "expr"), as selected by
+     * {@link #input}.
+     */
+    private String source (String kind)
+    {
+        CorpusGenerator gen = new CorpusGenerator(seed);
+        switch (input + "/" + kind) {
+            case "bundled/java":        return Inputs.load("sample-java.txt");
+            case "bundled/json":        return Inputs.load("sample.json");
+            case "bundled/xml":         return Inputs.load("sample.xml").trim();
+            case "bundled/expr":        return gen.expression(200, 0.2);
+            case "generated/java":      return gen.java(size, 4, 1.5);
+            case "generated/json":      return gen.json(size, 8, 5, 0.5);
+            case "generated/xml":       return gen.xml(size, 6, 5);
+            case "generated/expr":      return gen.expression(size / 4, 0.2);
+            case "adversarial/java":    return gen.adversarialJava(depth);
+            case "adversarial/json":    return gen.adversarialJson(depth);
+            case "adversarial/xml":     return gen.adversarialXml(depth);
+            case "adversarial/expr":    return gen.adversarialExpression(depth);
+            default: throw new IllegalArgumentException("unknown input: " + input);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup public void setup()
+    {
+        Grammar g;
+        String source;
+        list = null;
+
+        switch (grammar) {
+            case "java":
+                g = new JavaGrammar();
+                source = source("java");
+                break;
+            case "java-tokens":
+                g = new JavaGrammarTokens();
+                source = source("java");
+                list = Arrays.asList(new Lexer(source).lex());
+                break;
+            case "json":
+                g = new JSON();
+                source = source("json");
+                break;
+            case "xml":
+                g = load("SimpleXML");
+                source = source("xml");
+                break;
+            case "expr-table":
+                g = load("ExpressionBenchmark$OperatorTableExpression");
+                source = source("expr");
+                break;
+            case "expr-tower":
+                g = load("ExpressionBenchmark$GoodRightExpression");
+                source = source("expr");
+                break;
+            case "expr-right-recursive":
+                g = load("ExpressionBenchmark$BadRightExpression");
+                source = source("expr");
+                break;
+            default:
+                throw new IllegalArgumentException("unknown grammar: " + grammar);
+        }
+
+        root = g.root();
+        if (list == null) string = source;
+        bytes = source.getBytes(StandardCharsets.UTF_8).length;
+
+        // Checks that the input parses, performing the well-formedness check once.
+        ParseResult result = list != null
+            ? Autumn.parse(root, list, ParseOptions.get())
+            : Autumn.parse(root, string, ParseOptions.get());
+        if (!result.fullMatch)
+            throw new IllegalStateException(
+                "benchmark input does not parse for " + grammar + ":\n" + result.toString());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public ParseResult parse (Throughput throughput)
+    {
+        throughput.bytes += bytes;
+        return list != null
+            ? Autumn.parse(root, list, options)
+            : Autumn.parse(root, string, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
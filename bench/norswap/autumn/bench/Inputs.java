@@ -0,0 +1,44 @@
+package norswap.autumn.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Access to the benchmark inputs bundled in the {@code bench/inputs} directory (which is on the
+ * classpath of the benchmarks). See {@link CorpusGenerator} for generated inputs.
+ */
+public final class Inputs
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Inputs() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the content of the bundled input with the given name (e.g. "sample.json").
+     */
+    public static String load (String name)
+    {
+        try (InputStream in = Inputs.class.getResourceAsStream("/inputs/" + name))
+        {
+            if (in == null)
+                throw new IllegalArgumentException("no bundled benchmark input: " + name);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0)
+                out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
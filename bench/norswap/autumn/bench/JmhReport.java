@@ -0,0 +1,98 @@
+package norswap.autumn.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.lang.json.JSON;
+import norswap.utils.Util;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static norswap.utils.Util.cast;
+
+/**
+ * Summarizes a JMH JSON result file (as produced by {@code gradle jmh}) in terms of throughput
+ * (MB/s, where 1 MB = 10^6 bytes) and allocated bytes per input byte.
+ *
+ * <p>This requires the benchmarks to count their input bytes with {@link Throughput}, and to have
+ * been run with the GC profiler ({@code -prof gc}). Missing metrics are reported as "?".
+ *
+ * <p>The JSON file is parsed with the {@link JSON} example grammar.
+ *
+ * <p>Usage: {@code JmhReport <results.json>}
+ */
+public final class JmhReport
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private JmhReport() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final String FORMAT = "%-60s %12s %12s %14s";
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static void main (String[] args) throws IOException
+    {
+        if (args.length != 1) {
+            System.err.println("usage: JmhReport <results.json>");
+            System.exit(1);
+        }
+
+        String text = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+        ParseResult result = Autumn.parse(new JSON(), text, ParseOptions.get());
+        if (!result.fullMatch)
+            throw new IllegalArgumentException("not a valid JSON file: " + args[0]);
+
+        List<?> runs = result.topValue();
+        System.out.println(String.format(FORMAT, "Benchmark", "MB/s", "B/byte", "ops/s"));
+        for (Object run: runs)
+            System.out.println(line(cast(run)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String line (Map<String, Object> run)
+    {
+        String name = (String) run.get("benchmark");
+        name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+
+        Map<String, Object> params = cast(run.get("params"));
+        if (params != null)
+            name += " " + new TreeMap<>(params);
+
+        double ops = score(run.get("primaryMetric"));
+        Map<String, Object> secondary = cast(run.get("secondaryMetrics"));
+        double bytes = secondary == null ? Double.NaN : score(secondary.get("bytes"));
+        double alloc = secondary == null ? Double.NaN : score(secondary.get("gc.alloc.rate.norm"));
+
+        // bytes is a rate (bytes/s), alloc is per operation (B/op)
+        double mbs = bytes / 1e6;
+        double perByte = alloc / (bytes / ops);
+
+        return String.format(FORMAT, name, format(mbs), format(perByte), format(ops));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static double score (Object metric)
+    {
+        if (metric == null) return Double.NaN;
+        Object score = Util.<Map<String, Object>>cast(metric).get("score");
+        return score instanceof Double ? (Double) score : Double.NaN; // JMH writes "NaN" as string
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String format (double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "?" : String.format("%.2f", value);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
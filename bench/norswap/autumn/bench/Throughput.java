@@ -0,0 +1,33 @@
+package norswap.autumn.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Auxiliary JMH counter that records the number of input bytes processed by a benchmark. JMH
+ * reports it as a rate alongside the primary metric (e.g. "bytes" in bytes/s), which {@link
+ * JmhReport} then converts into MB/s and into allocated bytes per input byte.
+ *
+ * <p>Benchmarks should add the size of their input to {@link #bytes} on each invocation. For token
+ * inputs, this is the size of the source text the tokens were lexed from.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of input bytes processed during the current iteration. */
+    public long bytes;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup(Level.Iteration) public void reset() {
+        bytes = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -42,6 +42,49 @@ tasks.withType<JavaCompile> {
 
 tasks.test.get().useTestNG()
 
+// === JAVA 11+ ====================================================================================
+
+// Classes in `src-java11` replace their namesake in `src` on Java 11+ (e.g. to emit Java Flight
+// Recorder events), by being packaged in the Java 11 section of a multi-release jar.
+
+val java11: SourceSet by sourceSets.creating {
+    java.srcDir("src-java11")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(java11.compileJavaTaskName) {
+    options.release.set(11)
+}
+
+tasks.jar {
+    into("META-INF/versions/11") { from(java11.output) }
+    manifest.attributes("Multi-Release" to "true")
+}
+
+// Tests for the Java 11+ classes live in `test-java11` and run with these classes ahead of their
+// namesakes in `src`. Run them with `gradle testJava11` (also part of `gradle check`).
+
+val java11Test: SourceSet by sourceSets.creating {
+    java.srcDir("test-java11")
+    compileClasspath += java11.output + sourceSets.test.get().output +
+        sourceSets.test.get().compileClasspath
+    runtimeClasspath += output + compileClasspath + sourceSets.test.get().runtimeClasspath
+}
+
+tasks.named<JavaCompile>(java11Test.compileJavaTaskName) {
+    options.release.set(11)
+}
+
+val testJava11 by tasks.registering(Test::class) {
+    group = "verification"
+    description = "Runs the tests of the Java 11+ classes."
+    testClassesDirs = java11Test.output.classesDirs
+    classpath = java11Test.runtimeClasspath
+    useTestNG()
+}
+
+tasks.check.get().dependsOn(testJava11)
+
 tasks.javadoc.get().options {
     // https://github.com/gradle/gradle/issues/7038
     this as StandardJavadocDocletOptions
@@ -50,6 +93,53 @@ tasks.javadoc.get().options {
         addBooleanOption("html5", true) // nice future proofing
 }
 
+// === BENCHMARKS ==================================================================================
+
+// JMH benchmarks live in `bench` and can use the main, test and example code.
+// Run them with `gradle jmh`, optionally passing JMH options, e.g.:
+// gradle jmh -PjmhArgs="GrammarBenchmarks -p grammar=json,xml"
+// Results are written to build/reports/jmh/results.json, then summarized in MB/s and in bytes
+// allocated per input byte (`gradle jmhReport` re-prints the summary).
+
+val jmh: SourceSet by sourceSets.creating {
+    java.srcDir("bench")
+    resources.srcDir("bench")
+    resources.exclude("**/*.java")
+    compileClasspath += sourceSets.test.get().output + sourceSets.test.get().compileClasspath
+    runtimeClasspath += output + compileClasspath + sourceSets.test.get().runtimeClasspath
+}
+
+val jmhResults = "$buildDir/reports/jmh/results.json"
+
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks (pass JMH options with -PjmhArgs=\"...\")."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args("-prof", "gc", "-rf", "json", "-rff", jmhResults)
+    val extraArgs = project.findProperty("jmhArgs") as String?
+    if (extraArgs != null) args(extraArgs.split(" ").filter(String::isNotBlank))
+    doFirst { file(jmhResults).parentFile.mkdirs() }
+    finalizedBy("jmhReport")
+}
+
+tasks.register<JavaExec>("jmhReport") {
+    group = "verification"
+    description = "Summarizes the last JMH results in MB/s and allocated bytes per input byte."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("norswap.autumn.bench.JmhReport")
+    args(jmhResults)
+}
+
+tasks.register<JavaExec>("corpusBenchmark") {
+    group = "verification"
+    description = "Parses a corpus with a grammar (pass arguments with -PbenchArgs=\"...\")."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("norswap.autumn.bench.CorpusBenchmark")
+    val extraArgs = project.findProperty("benchArgs") as String?
+    if (extraArgs != null) args(extraArgs.split(" ").filter(String::isNotBlank))
+}
+
 // === IDE =========================================================================================
 
 idea.module {
@@ -164,6 +254,8 @@ dependencies {
     testImplementation("org.testng:testng:6.14.3")
     testCompileOnly("com.google.auto.value:auto-value-annotations:1.6.2")
     testAnnotationProcessor("com.google.auto.value:auto-value:1.6.2")
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.36")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.36")
 }
 
 // =================================================================================================
\ No newline at end of file
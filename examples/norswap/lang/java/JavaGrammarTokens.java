@@ -22,8 +22,10 @@ public final class JavaGrammarTokens extends Grammar
 {
     /// LEXICAL ====================================================================================
 
+    { token_kind = it -> ((Token) it).kind.ordinal(); }
+
     rule tok (TokenKind kind) {
-        return opred(it -> it != null && ((Token) it).kind == kind);
+        return kind(kind.ordinal());
     }
 
     public rule tok (String kind_name) {
@@ -0,0 +1,207 @@
+package norswap.autumn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits Java Flight Recorder events for {@link ParseOptions#jfr}.
+ *
+ * <p>This is the Java 11+ version of this class, packaged in the multi-release section of the jar.
+ * The Java 8 version (in {@code src}) does nothing.
+ */
+final class ParseEvents
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseEvents() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Name("norswap.autumn.Parse")
+    @Label("Parse")
+    @Category("Autumn")
+    @Description("A parse performed with Autumn")
+    @StackTrace(false)
+    static final class ParseEvent extends Event
+    {
+        @Label("Parser")
+        @Description("The root parser (or rule)")
+        String parser;
+
+        @Label("Input Size")
+        @Description("Size of the input, in code points (string inputs) or objects (list inputs)")
+        int inputSize;
+
+        @Label("List Input")
+        boolean listInput;
+
+        @Label("Success")
+        @Description("Whether the parse matched a prefix of the input")
+        boolean success;
+
+        @Label("Full Match")
+        @Description("Whether the parse matched the whole input")
+        boolean fullMatch;
+
+        @Label("Error Offset")
+        @Description("Offset of the furthest error or exception, -1 for a full match")
+        int errorOffset;
+
+        @Label("Exception")
+        @Description("Class of the exception that terminated the parse, if any")
+        String thrown;
+
+        @Label("Memo Entries")
+        @Description("Number of memo entries created")
+        int memoEntries;
+
+        @Label("Memo Hits")
+        @Description("Number of memo lookups that reused a memo entry")
+        int memoHits;
+
+        @Label("Peak Log Size")
+        @Description("Maximum size reached by the side-effect log")
+        int peakLogSize;
+
+        @Label("Peak Stack Size")
+        @Description("Maximum size reached by the value stack")
+        int peakStackSize;
+
+        @Label("Max Depth")
+        @Description("Maximum number of parsers running at the same time")
+        int maxDepth;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Name("norswap.autumn.RuleSample")
+    @Label("Rule Sample")
+    @Category("Autumn")
+    @Description("The rule running when a parser invocation was sampled")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class RuleSampleEvent extends Event
+    {
+        @Label("Rule")
+        @Description("The innermost running named parser, if any")
+        String rule;
+
+        @Label("Parser")
+        @Description("Class of the innermost running parser")
+        String parser;
+
+        @Label("Position")
+        @Description("Current input position")
+        int position;
+
+        @Label("Depth")
+        @Description("Number of running parsers")
+        int depth;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether JFR events can be emitted.
+     */
+    static boolean available() {
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called before a parse starts. Returns an object to pass to {@link #parseEnd}, or null if no
+     * event should be emitted.
+     */
+    static Object parseStart()
+    {
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called after a parse ends, with the object returned by {@link #parseStart()}.
+     */
+    static void parseEnd (Object object, Parse parse, ParseResult result)
+    {
+        ParseEvent event = (ParseEvent) object;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.parser = result.parser.toString();
+        event.inputSize = parse.inputLength();
+        event.listInput = parse.list != null;
+        event.success = result.success;
+        event.fullMatch = result.fullMatch;
+        event.errorOffset = result.errorOffset;
+        event.thrown = result.thrown == null ? null : result.thrown.getClass().getName();
+        event.memoEntries = result.memoEntries;
+        event.memoHits = parse.memoHits;
+        event.peakLogSize = result.peakLogSize;
+        event.peakStackSize = result.peakStackSize;
+        event.maxDepth = result.footprint.maxDepth;
+        event.commit();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called after a stream ends, with the object returned by {@link #parseStart()} and the
+     * parser used to parse the records. The stream is reported as a single parse, which succeeds if
+     * at least one record was parsed, and fully matches if the stream is {@link
+     * StreamResult#complete}.
+     */
+    static void streamEnd (Object object, Parse parse, Parser record, StreamResult result)
+    {
+        ParseEvent event = (ParseEvent) object;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.parser = record.toString();
+        event.inputSize = parse.inputLength();
+        event.listInput = parse.list != null;
+        event.success = result.records > 0;
+        event.fullMatch = result.complete;
+        event.errorOffset = result.complete ? -1 : result.position;
+        event.thrown = result.thrown == null ? null : result.thrown.getClass().getName();
+        event.memoEntries = parse.memoEntries;
+        event.memoHits = parse.memoHits;
+        event.peakLogSize = result.peakLogSize;
+        event.peakStackSize = result.peakStackSize;
+        event.maxDepth = parse.maxDepth;
+        event.commit();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a sample of {@link Parse#profileStack} is taken.
+     */
+    static void ruleSample (Parse parse)
+    {
+        RuleSampleEvent event = new RuleSampleEvent();
+        if (!event.isEnabled() || parse.depth == 0) return;
+
+        int depth = parse.depth;
+        for (int i = depth - 1; i >= 0; --i)
+            if (parse.profileStack[i].rule() != null) {
+                event.rule = parse.profileStack[i].rule();
+                break;
+            }
+
+        event.parser = parse.profileStack[depth - 1].getClass().getName();
+        event.position = parse.pos;
+        event.depth = depth;
+        event.commit();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
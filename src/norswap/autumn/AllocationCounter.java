@@ -0,0 +1,76 @@
+package norswap.autumn;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads the per-thread allocation counter of the JVM (the number of bytes allocated by a thread),
+ * used to measure allocations when the {@link ParseOptions#traceAllocations} option is set.
+ *
+ * <p>The counter is only supported by some JVMs (including HotSpot): see {@link #SUPPORTED}.
+ */
+final class AllocationCounter
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private AllocationCounter() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final com.sun.management.ThreadMXBean BEAN = bean();
+
+    /**
+     * Whether the allocation counter is supported by the JVM.
+     */
+    static final boolean SUPPORTED = BEAN != null;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static com.sun.management.ThreadMXBean bean()
+    {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean))
+                return null;
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (!sunBean.isThreadAllocatedMemorySupported())
+                return null;
+            if (!sunBean.isThreadAllocatedMemoryEnabled())
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+            return sunBean;
+        }
+        catch (LinkageError | RuntimeException e) {
+            // com.sun.management missing, or security manager forbidding the change
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of bytes allocated so far by the thread with the given id. Must only be
+     * called if {@link #SUPPORTED} is true.
+     */
+    static long bytes (long threadId) {
+        return BEAN.getThreadAllocatedBytes(threadId);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of bytes allocated by a call to {@link #bytes(long)} for the given thread,
+     * which must be the current thread. This is the amount by which each measurement inflates the
+     * allocation it measures. Must only be called if {@link #SUPPORTED} is true.
+     */
+    static long readSize (long threadId)
+    {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 4; ++i) {
+            long before = bytes(threadId);
+            min = Math.min(min, bytes(threadId) - before);
+        }
+        return min;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
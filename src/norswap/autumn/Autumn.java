@@ -1,11 +1,14 @@
 package norswap.autumn;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
 
 /**
- * This class holds the {@code run} methods, which are the entry points to start a parse.
+ * This class holds the {@code parse}, {@code stream} and {@code parseParallel} methods, which are
+ * the entry points to start a parse.
  */
 public final class Autumn
 {
@@ -19,7 +22,8 @@ public final class Autumn
         "Stack overflow during parse. Maybe your grammar is not well-formed " +
         "(contains left-recursion or repetition over nullable parsers)? " +
         "Re-run the parse with options ParseOptions#wellFormednessCheck or " +
-        " ParseOptions#wellFormednessChecker to verify.";
+        " ParseOptions#wellFormednessChecker to verify. If the input is deeply nested instead, " +
+        "use ParseOptions#iterative.";
 
     // ---------------------------------------------------------------------------------------------
 
@@ -133,4 +137,112 @@ public final class Autumn
     }
 
     // ---------------------------------------------------------------------------------------------
-}
\ No newline at end of file
+
+    /**
+     * Parses {@code string} as a sequence of records, by repeatedly applying {@code record} until
+     * the end of the input, and passes the values pushed on the value stack by each record to
+     * {@code consumer} (in order) as soon as it has been parsed. The stream stops at the first
+     * record that fails to parse (or that matches no input), which is reported in {@link
+     * StreamResult#error}.
+     *
+     * <p>After each record, the parse is cut at the end of the record (see {@link Parse#cut()})
+     * and the value stack is cleared: the log and the value stack never hold more than what is
+     * needed for a single record, and memoized results are evicted (if the memoizer supports it,
+     * like {@link norswap.autumn.memo.MemoTable}). Parse states ({@link ParseState}) are not reset
+     * between records.
+     *
+     * <p>The options apply to the stream as a whole: in particular, the {@link ParseBudget} limits
+     * the whole stream. A {@link ParseOptions#monitor} counts the stream as an in-flight parse but
+     * doesn't record its statistics.
+     *
+     * <p>Use {@code ParseOptions.get()} to get a default set of options.
+     */
+    public static StreamResult stream (
+            Grammar.rule record, String string, ParseOptions options, Consumer<Object> consumer)
+    {
+        return stream(record, null, string, options, consumer, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #stream(Grammar.rule, String, ParseOptions, Consumer)}, but if a record fails
+     * to parse, reports the error to {@code onError} (if non-null), then if {@code resync} is
+     * non-null, tries to skip over the record by applying {@code resync} at its start position
+     * (e.g. a rule that matches everything until the next line terminator), and resumes the stream
+     * after the input it matched.
+     *
+     * <p>The stream stops if {@code resync} fails or matches no input. Otherwise, only the errors
+     * passed to {@code onError} are kept, keeping the memory usage constant.
+     */
+    public static StreamResult stream (
+            Grammar.rule record, Grammar.rule resync, String string, ParseOptions options,
+            Consumer<Object> consumer, Consumer<RecordError> onError)
+    {
+        requireNonNull(record,   "Record rule cannot be null.");
+        requireNonNull(string,   "Input string cannot be null.");
+        requireNonNull(options,  "Parse options cannot be null.");
+        requireNonNull(consumer, "Consumer cannot be null.");
+        record.grammar().makeRuleNames();
+        if (resync != null) resync.grammar().makeRuleNames();
+
+        try {
+            return Parse.stream(record.getParser(), resync == null ? null : resync.getParser(),
+                string, null, options, consumer, onError);
+        } catch (StackOverflowError e) {
+            throw new PotentiallyMalformedGrammarError(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses {@code string} in parallel: splits it into chunks of at least {@code chunkSize} chars
+     * (except for the last one) ending at boundaries found by {@code splitter}, then parses each
+     * chunk with {@code rule} (typically a repetition of records) and the given options, as a
+     * separate parse running on {@code pool}.
+     *
+     * <p>The results of the chunks are combined in input order: see {@link ParallelParseResult}.
+     * The options apply to each chunk separately (e.g. the {@link ParseBudget} limits each chunk),
+     * except for the well-formedness check, which is performed once.
+     *
+     * <p>This is only correct if parsing each chunk separately matches the same thing as parsing
+     * the whole input, which is the responsibility of the splitter.
+     */
+    public static ParallelParseResult parseParallel (Grammar.rule rule, String string,
+            ChunkSplitter splitter, int chunkSize, ParseOptions options, ForkJoinPool pool)
+    {
+        requireNonNull(rule,     "Rule cannot be null.");
+        requireNonNull(string,   "Input string cannot be null.");
+        requireNonNull(splitter, "Chunk splitter cannot be null.");
+        requireNonNull(options,  "Parse options cannot be null.");
+        requireNonNull(pool,     "Fork-join pool cannot be null.");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+        rule.grammar().makeRuleNames();
+
+        try {
+            return Parse.runParallel(rule.getParser(), string, splitter, chunkSize, options, pool);
+        } catch (StackOverflowError e) {
+            throw new PotentiallyMalformedGrammarError(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #parseParallel(Grammar.rule, String, ChunkSplitter, int, ParseOptions,
+     * ForkJoinPool)}, using the common fork-join pool and a chunk size that yields about four
+     * chunks per thread of the pool (but at least 64k chars).
+     */
+    public static ParallelParseResult parseParallel (
+            Grammar.rule rule, String string, ChunkSplitter splitter, ParseOptions options)
+    {
+        requireNonNull(string, "Input string cannot be null.");
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkSize = Math.max(1 << 16, string.length() / (4 * pool.getParallelism()));
+        return parseParallel(rule, string, splitter, chunkSize, options, pool);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,63 @@
+package norswap.autumn;
+
+/**
+ * The JMX management interface of {@link AutumnMonitor}, exposing live statistics about the
+ * parses performed with a grammar.
+ *
+ * <p>All statistics cover the parses that completed since the monitor was created or last reset
+ * ({@link #reset()}), except {@link #getInFlightParses()}.
+ */
+public interface AutumnMXBean
+{
+    /** Number of completed parses. */
+    long getParses();
+
+    /** Number of completed parses that did not match the whole input (including exceptions). */
+    long getFailures();
+
+    /** Number of parses that terminated with an exception. */
+    long getExceptions();
+
+    /** Number of parses aborted because they exceeded their budget ({@link ParseBudget}). */
+    long getBudgetsExceeded();
+
+    /** Cumulative size of the inputs of the completed parses (code points or list items). */
+    long getInputParsed();
+
+    /** Average number of parses completed per second. */
+    double getParseRate();
+
+    /** Average input size parsed per second (code points or list items). */
+    double getInputRate();
+
+    /** Average duration of a parse, in milliseconds. */
+    double getAverageLatencyMillis();
+
+    /** Maximum duration of a parse, in milliseconds. */
+    double getMaxLatencyMillis();
+
+    /** Number of parses currently running. */
+    long getInFlightParses();
+
+    /**
+     * Share of the memo lookups that were hits (i.e. that reused a memo entry), between 0 and 1,
+     * or NaN if there were no lookups.
+     */
+    double getMemoHitRate();
+
+    /**
+     * The parsers with the most samples (estimated self time), as sampled by the profiler (see
+     * {@link ParseProfile}), if sampling is enabled, otherwise an empty array. At most {@link
+     * #getTopRulesCount()} parsers are returned.
+     */
+    String[] getSlowestRules();
+
+    /** Maximum number of parsers returned by {@link #getSlowestRules()}. */
+    int getTopRulesCount();
+
+    /** Sets the value returned by {@link #getTopRulesCount()}. */
+    void setTopRulesCount (int count);
+
+    /** Resets all statistics (except {@link #getInFlightParses()}). */
+    void reset();
+}
@@ -0,0 +1,310 @@
+package norswap.autumn;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects live statistics about the parses performed with the {@link ParseOptions#monitor}
+ * option, and exposes them over JMX via the {@link AutumnMXBean} interface.
+ *
+ * <p>Create one monitor per grammar with {@link #register(Grammar, boolean)} (or {@link
+ * #register(String, boolean)}), which registers it with the platform MBean server under the name
+ * {@code norswap.autumn:type=AutumnMonitor,name=<name>}, then pass it to all the parses using
+ * that grammar via {@link ParseOptions#monitor}. Monitors can also be used without JMX, by
+ * creating them with the constructor and reading the statistics directly.
+ *
+ * <p>If sampling is enabled, the monitor also owns a {@link ParseProfile}, used as the {@link
+ * ParseOptions#profile} of the monitored parses, from which the slowest rules are reported
+ * ({@link #getSlowestRules()}). This has an overhead of a few percents. Otherwise, the cost of
+ * monitoring is a few counter updates per parse.
+ *
+ * <p>This class is thread-safe. Its statistics are not updated atomically as a whole: a reading
+ * taken while parses complete may mix values from before and after a parse.
+ */
+public final class AutumnMonitor implements AutumnMXBean
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Name under which the monitor is registered.
+     */
+    public final String name;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the monitor samples the parses to find the slowest rules.
+     */
+    public final boolean sampling;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LongAdder budgetsExceeded = new LongAdder();
+    private final LongAdder input = new LongAdder();
+    private final LongAdder latency = new LongAdder();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder memoHits = new LongAdder();
+    private final LongAdder memoMisses = new LongAdder();
+    private volatile long start = System.nanoTime();
+    private volatile ParseProfile profile;
+    private volatile int topRulesCount = 10;
+    private ObjectName objectName;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a monitor with the given name, without registering it. See {@link #sampling}.
+     */
+    public AutumnMonitor (String name, boolean sampling)
+    {
+        this.name = name;
+        this.sampling = sampling;
+        this.profile = sampling ? new ParseProfile() : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a monitor with the given name and registers it with the platform MBean server.
+     * See {@link #sampling}.
+     *
+     * @throws IllegalStateException if a monitor with the same name is already registered.
+     */
+    public static AutumnMonitor register (String name, boolean sampling)
+    {
+        AutumnMonitor monitor = new AutumnMonitor(name, sampling);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(
+                "norswap.autumn:type=AutumnMonitor,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName))
+                throw new IllegalStateException("monitor already registered: " + objectName);
+            server.registerMBean(monitor, objectName);
+            monitor.objectName = objectName;
+        }
+        catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+        return monitor;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a monitor named after the grammar's class and registers it with the platform MBean
+     * server. See {@link #register(String, boolean)}.
+     */
+    public static AutumnMonitor register (Grammar grammar, boolean sampling) {
+        return register(grammar.getClass().getName(), sampling);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Unregisters this monitor from the platform MBean server, if it was registered.
+     */
+    public synchronized void unregister()
+    {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+        catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The profile used for the monitored parses if {@link #sampling} is true, null otherwise. A new
+     * profile is created when the monitor is reset.
+     */
+    public ParseProfile profile() {
+        return profile;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a monitored parse starts.
+     */
+    void parseStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a monitored parse terminates, whether normally or not.
+     */
+    void parseTerminated() {
+        inFlight.decrementAndGet();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a monitored parse completes, with its result and duration.
+     */
+    void parseCompleted (Parse parse, ParseResult result, long nanos) {
+        completed(parse, result.fullMatch, result.thrown, result.budgetExceeded, nanos);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a monitored stream completes, with its result and duration. The stream counts as
+     * a single parse, which fails if the stream is not {@link StreamResult#complete}.
+     */
+    void streamCompleted (Parse parse, StreamResult result, long nanos) {
+        completed(parse, result.complete, result.thrown, result.budgetExceeded, nanos);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void completed (Parse parse, boolean fullMatch, Throwable thrown,
+            BudgetExceededException budgetExceeded, long nanos)
+    {
+        parses.increment();
+        if (!fullMatch) failures.increment();
+        if (thrown != null) exceptions.increment();
+        if (budgetExceeded != null) budgetsExceeded.increment();
+        input.add(parse.inputLength());
+        latency.add(nanos);
+        maxLatency.accumulateAndGet(nanos, Math::max);
+        memoHits.add(parse.memoHits);
+        memoMisses.add(parse.memoEntries);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public long getParses() {
+        return parses.sum();
+    }
+
+    @Override public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override public long getExceptions() {
+        return exceptions.sum();
+    }
+
+    @Override public long getBudgetsExceeded() {
+        return budgetsExceeded.sum();
+    }
+
+    @Override public long getInputParsed() {
+        return input.sum();
+    }
+
+    @Override public double getParseRate() {
+        return parses.sum() / elapsedSeconds();
+    }
+
+    @Override public double getInputRate() {
+        return input.sum() / elapsedSeconds();
+    }
+
+    @Override public double getAverageLatencyMillis() {
+        long parses = this.parses.sum();
+        return parses == 0 ? 0 : latency.sum() / 1e6 / parses;
+    }
+
+    @Override public double getMaxLatencyMillis() {
+        return maxLatency.get() / 1e6;
+    }
+
+    @Override public long getInFlightParses() {
+        return inFlight.get();
+    }
+
+    @Override public double getMemoHitRate() {
+        long hits = memoHits.sum();
+        long lookups = hits + memoMisses.sum();
+        return lookups == 0 ? Double.NaN : hits / (double) lookups;
+    }
+
+    @Override public int getTopRulesCount() {
+        return topRulesCount;
+    }
+
+    @Override public void setTopRulesCount (int count) {
+        topRulesCount = Math.max(count, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private double elapsedSeconds() {
+        return Math.max(System.nanoTime() - start, 1) / 1e9;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String[] getSlowestRules()
+    {
+        ParseProfile profile = this.profile;
+        if (profile == null) return new String[0];
+
+        List<ParserProfile> profiles = new ArrayList<>(profile.parsers().values());
+        profiles.sort(Comparator.comparingLong((ParserProfile it) -> it.selfSamples).reversed());
+        double samples = Math.max(profile.samples(), 1);
+
+        int count = Math.min(topRulesCount, profiles.size());
+        String[] out = new String[count];
+        for (int i = 0; i < count; ++i) {
+            ParserProfile p = profiles.get(i);
+            String parser = p.parser.toString();
+            if (parser.length() > 80) parser = parser.substring(0, 77) + "...";
+            out[i] = String.format("%s: %.2f%% self, %.2f%% total (est. self time %s)",
+                parser,
+                100 * p.selfSamples / samples,
+                100 * p.totalSamples / samples,
+                Duration.ofNanos(profile.selfTime(p)));
+        }
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void reset()
+    {
+        parses.reset();
+        failures.reset();
+        exceptions.reset();
+        budgetsExceeded.reset();
+        input.reset();
+        latency.reset();
+        maxLatency.set(0);
+        memoHits.reset();
+        memoMisses.reset();
+        if (sampling) profile = new ParseProfile();
+        start = System.nanoTime();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return String.format("AutumnMonitor{name: %s, parses: %,d, failures: %,d, "
+                + "avg latency: %.3f ms, max latency: %.3f ms, in flight: %d}",
+            name, getParses(), getFailures(), getAverageLatencyMillis(), getMaxLatencyMillis(),
+            getInFlightParses());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,53 @@
+package norswap.autumn;
+
+/**
+ * Thrown to abort a parse that exceeds one of the limits of its {@link ParseOptions#budget}, and
+ * reported in {@link ParseResult#budgetExceeded} (the exception never escapes the parse).
+ */
+public final class BudgetExceededException extends RuntimeException
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The limit that was exceeded.
+     */
+    public final ParseBudget.Limit limit;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The innermost rule (parser with a {@link Parser#rule() rule name}) that was running when the
+     * limit was found to be exceeded, or the innermost parser if no rule was running or if the
+     * rules are unknown (in tracing mode without {@link ParseOptions#recordCallStack}).
+     */
+    public final Parser rule;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The input position at which the parse was aborted.
+     */
+    public final int position;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of parser invocations performed before the parse was aborted.
+     */
+    public final long invocations;
+
+    // ---------------------------------------------------------------------------------------------
+
+    BudgetExceededException (ParseBudget.Limit limit, Parser rule, int position, long invocations)
+    {
+        // no stack trace for this exception
+        super(String.format("parse budget exceeded (%s) in %s at position %d after %,d invocations",
+            limit, rule, position, invocations), null, false, false);
+        this.limit = limit;
+        this.rule = rule;
+        this.position = position;
+        this.invocations = invocations;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,60 @@
+package norswap.autumn;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Finds the boundaries at which an input can be cut into chunks that can be parsed independently,
+ * for parallel parsing (see {@link Autumn#parseParallel}).
+ *
+ * <p>A splitter must be cheap compared to parsing, as the input is split sequentially before the
+ * chunks are parsed in parallel. It must only return boundaries that fall between two records of
+ * the input: the parallel parse is only correct if parsing each chunk separately matches the same
+ * thing as parsing the whole input.
+ */
+@FunctionalInterface
+public interface ChunkSplitter
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the (char) offset of the first chunk boundary at or after the char offset {@code
+     * position} in {@code input}, i.e. the offset at which the next chunk starts, or -1 if there
+     * are no more boundaries (in which case the rest of the input is a single chunk).
+     */
+    int boundary (String input, int position);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a splitter that cuts the input after line feeds ({@code '\n'}), suitable for
+     * newline-delimited records (e.g. NDJSON or log files), as long as records can't span multiple
+     * lines.
+     */
+    static ChunkSplitter lines()
+    {
+        return (input, position) -> {
+            int i = input.indexOf('\n', Math.max(position - 1, 0));
+            return i < 0 ? -1 : i + 1;
+        };
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a splitter that cuts the input after the first match of {@code separator} starting at
+     * or after the requested position (e.g. a rule matching a semicolon followed by a line feed).
+     *
+     * <p>The separator is tried at successive positions over a window of the input, which is
+     * extended whenever the separator reaches its end. The separator should therefore be a short
+     * pattern, that is not likely to match inside a record.
+     */
+    static ChunkSplitter of (Grammar.rule separator)
+    {
+        requireNonNull(separator, "Separator rule cannot be null.");
+        separator.grammar().makeRuleNames();
+        Parser parser = separator.getParser();
+        return (input, position) -> Parse.matchEnd(parser, input, position);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,23 @@
+package norswap.autumn;
+
+/**
+ * Thrown when a parser invoked before a cut ({@link Parse#cut()}) fails, which would require
+ * backtracking before the cut position. Caught by {@link Parse#run}, which reports the parse as
+ * failed (the exception never escapes the parse).
+ */
+final class CutException extends RuntimeException
+{
+    // ---------------------------------------------------------------------------------------------
+
+    static final CutException INSTANCE = new CutException();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private CutException()
+    {
+        // no stack trace for this exception
+        super("backtracking before a cut", null, false, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
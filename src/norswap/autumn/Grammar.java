@@ -3,6 +3,7 @@ package norswap.autumn;
 import norswap.autumn.actions.*;
 import norswap.autumn.memo.*;
 import norswap.autumn.parsers.*;
+import norswap.autumn.util.ArrayStack;
 import norswap.utils.NArrays;
 import norswap.utils.data.wrappers.Slot;
 import norswap.utils.reflection.Subtyping;
@@ -10,12 +11,17 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 /**
  * This class is meant to be subclasses to create grammars: a collection of parsers that together
@@ -139,6 +145,19 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Set this to specify a function that extracts an integer kind (e.g. an enum ordinal) from the
+     * objects (typically tokens) of list inputs. Kinds should be small non-negative integers.
+     *
+     * <p>You must specify this if you want to use {@link #kind(int)}. In that case, {@link
+     * #choice(Object...)} also captures the value of this field, and the resulting choices will
+     * dispatch on the kind of the next object, only trying the alternatives that can start with an
+     * object of that kind (see {@link Choice#kindOf}).
+     */
+    public ToIntFunction<Object> token_kind = null;
+
+    // ---------------------------------------------------------------------------------------------
+
     private Parser ws() {
         if (ws == null)
             return empty.getParser();
@@ -158,8 +177,42 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The table used to recognize reserved words, if {@link #id_part} is a {@link CharPredicate}
+     * or a choice between structured {@link CharPredicate} (otherwise null). Created by {@link
+     * #reservedWordsTable()}.
+     */
+    private ReservedWords reservedWordsTable;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the table used to recognize reserved words, or null if {@link #id_part} isn't a
+     * {@link CharPredicate} or a {@link Choice} with a {@link Choice#union}.
+     */
+    private ReservedWords reservedWordsTable()
+    {
+        Parser idPart = id_part.getParser();
+        if (idPart instanceof Choice)
+            idPart = ((Choice) idPart).union;
+        if (!(idPart instanceof CharPredicate))
+            return null;
+        IntPredicate predicate = ((CharPredicate) idPart).predicate;
+        if (reservedWordsTable == null || reservedWordsTable.idPart != predicate)
+            reservedWordsTable = new ReservedWords(reservedWords, predicate);
+        return reservedWordsTable;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * This lazy rule is used by parser returned by {@link #identifier(Object)}.
+     *
+     * <p>If {@link #id_part} is a {@link CharPredicate} (or a choice between structured {@link
+     * CharPredicate}), this is a {@link ReservedWord} parser, which classifies the
+     * identifier-like span at the current position via a perfect hash table of the reserved words.
+     * Otherwise, it is a {@link StringChoice} between the reserved words, followed by {@code
+     * id_part.not()}.
      */
     public rule any_reserved_word = lazy(() -> {
             if (id_part == null)
@@ -167,6 +220,18 @@ public abstract class Grammar
                     "Grammar#id_part, which should match any single character that can occur " +
                     "within identifiers.");
 
+            ReservedWords table = reservedWordsTable();
+            if (table != null) {
+                ReservedWord any = new ReservedWord(table, null);
+                List<String> others = new ArrayList<>();
+                for (String word: reservedWords)
+                    if (!table.accepts(word)) others.add(word);
+                if (others.isEmpty()) return new rule(any);
+                return choice(
+                    seq(new StringChoice(others.toArray(new String[0])), id_part.not()),
+                    any);
+            }
+
             // Reserved words are tried in order. If a a prefix of another reserved word happens
             // before it, this will cause the rule to fail.
             //
@@ -219,6 +284,14 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether ids have already been assigned to the parsers of the grammar (see {@link
+     * #makeRuleNames()}).
+     */
+    private boolean idsAssigned = false;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns the main entry point into the grammar. Used when calling {@link Autumn#parse(Grammar,
      * String, ParseOptions)} as well as its {@link Autumn#parse(Grammar.rule, List, ParseOptions)
@@ -269,20 +342,54 @@ public abstract class Grammar
      * <p>This only does anything if the {@link #makeRuleNames} is true (which it is by default).
      * It also remembers wether the names have been assigned and does not do duplicate work.
      *
+     * <p>This also assigns consecutive ids ({@link Parser#id()}) to all the parsers reachable from
+     * these fields, once, regardless of {@link #makeRuleNames}.
+     *
      * <p>This is called automatically by {@link Autumn#parse} when called with a grammar or with
      * a rule.
      */
     void makeRuleNames()
     {
         if (makeRuleNames && !ruleNamesMade) {
-            Class<?> klass = this.getClass();
-            while (!klass.equals(Grammar.class)) {
-                makeRuleNames(klass.getDeclaredFields());
-                klass = klass.getSuperclass();
-            }
-            makeRuleNames(Grammar.class.getFields());
+            forEachRuleField((name, p) -> {
+                if (p.rule() == null)
+                    p.setRule(name);
+            });
             ruleNamesMade = true;
         }
+
+        if (!idsAssigned) {
+            // Lazy parsers are not forced: they may not be ready yet (they usually refer to rules
+            // stored in fields, which are visited anyway).
+            Set<Parser> parsers = Collections.newSetFromMap(new IdentityHashMap<>());
+            ArrayStack<Parser> stack = new ArrayStack<>();
+            forEachRuleField((name, p) -> stack.push(p));
+            while (!stack.isEmpty()) {
+                Parser parser = stack.pop();
+                if (!parsers.add(parser) || parser instanceof LazyParser) continue;
+                for (Parser child: parser.children())
+                    stack.push(child);
+            }
+            Parser.assignIds(new ArrayList<>(parsers));
+            idsAssigned = true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls {@code f} with the name and the parser of every field of type {@link rule} or {@link
+     * Parser} declared in the class of this object and all of its ancestors (including the {@link
+     * Grammar} class).
+     */
+    private void forEachRuleField (BiConsumer<String, Parser> f)
+    {
+        Class<?> klass = this.getClass();
+        while (!klass.equals(Grammar.class)) {
+            forEachRuleField(klass.getDeclaredFields(), f);
+            klass = klass.getSuperclass();
+        }
+        forEachRuleField(Grammar.class.getFields(), f);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -291,7 +398,7 @@ public abstract class Grammar
     // `f.canAccess(this)`. Language level 8 with a later JDK will yield a warning while we
     // can't use `canAccess` yet.
     @SuppressWarnings({"deprecation", "RedundantSuppression"})
-    private void makeRuleNames (Field[] fields)
+    private void forEachRuleField (Field[] fields, BiConsumer<String, Parser> consumer)
     {
         try {
             for (Field f: fields) {
@@ -301,16 +408,13 @@ public abstract class Grammar
 
                 if (Subtyping.check(f.getType(), rule.class)) {
                     rule w = (rule) f.get(this);
-                    if (w == null) continue;
-                    Parser p = w.getParser();
-                    if (p.rule() == null)
-                        p.setRule(f.getName());
+                    if (w != null)
+                        consumer.accept(f.getName(), w.getParser());
                 }
                 else if (Subtyping.check(f.getType(), Parser.class)) {
                     Parser p = (Parser) f.get(this);
-                    if (p == null) continue;
-                    if (p.rule() == null)
-                        p.setRule(f.getName());
+                    if (p != null)
+                        consumer.accept(f.getName(), p);
                 }
                 if (madeAccessible)
                     f.setAccessible(false);
@@ -412,9 +516,13 @@ public abstract class Grammar
 
     /**
      * Returns a {@link Choice} between the given parsers.
+     *
+     * <p>If all the parsers are structured {@link CharPredicate} (as built by {@link #set},
+     * {@link #range}, {@link #character}, {@link #category} and the predefined character parsers),
+     * the choice matches their union with a single table lookup (see {@link Choice#union}).
      */
     public rule choice (Object... parsers) {
-        return new rule(new Choice(NArrays.map(parsers, new Parser[0], this::compile)));
+        return new rule(new Choice(token_kind, NArrays.map(parsers, new Parser[0], this::compile)));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -447,6 +555,27 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns a {@link StringChoice} parser that matches the longest of the given strings that
+     * can be matched at the current position, and pushes it on the value stack.
+     */
+    public rule str_choice (String... strings) {
+        return new rule(new StringChoice(false, true, strings));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a {@link StringChoice} parser that matches the longest of the given strings that
+     * can be matched at the current position, ignoring case, and pushes it (as it appears in
+     * {@code strings}) on the value stack.
+     */
+    public rule str_choice_ci (String... strings) {
+        return new rule(new StringChoice(true, true, strings));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a parser for a reserved word in the language, which is equivalent to
      * {@code seq(string, id_part.not()).word()} and additionally registers the reserved word in
@@ -461,7 +590,10 @@ public abstract class Grammar
                 "Grammar#id_part, which should match any single character that can occur " +
                 "within identifiers.");
         reservedWords.add(string);
-        return seq(string, id_part.not()).word();
+        ReservedWords table = reservedWordsTable();
+        return table != null && table.accepts(string)
+            ? new rule(new ReservedWord(table, string)).word()
+            : seq(string, id_part.not()).word();
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -523,6 +655,16 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns a {@link CharPredicate} parser that matches characters whose Unicode general category
+     * (as returned by {@link Character#getType(int)}) is one of {@code types}.
+     */
+    public rule category (int... types) {
+        return new rule(CharPredicate.category(types));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a {@link CharPredicate} parser with name "cpred".
      */
@@ -532,6 +674,20 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns an {@link ObjectPredicate} parser that matches an object whose kind (as determined by
+     * {@link #token_kind}) is {@code kind}.
+     */
+    public rule kind (int kind)
+    {
+        if (token_kind == null)
+            throw new Error("Trying to create a kind test without having defined " +
+                "Grammar#token_kind, which should extract the kind of the input objects.");
+        return new rule(new ObjectPredicate("<kind " + kind + ">", token_kind, kind));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns an {@link ObjectPredicate} parser with name "opred".
      */
@@ -581,6 +737,18 @@ public abstract class Grammar
         return new rule(new Optional(compile(parser)));
     }
 
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a {@link Cut} parser, which always succeeds and declares the current input position
+     * final: the parse can't backtrack before it anymore.
+     *
+     * <p>Prefer using {@link rule#cut()} to cut after a parser of type {@link rule}.
+     */
+    public rule cut() {
+        return new rule(new Cut());
+    }
+
     // endregion
     // =============================================================================================
     // region [Expression Parsers]
@@ -603,6 +771,16 @@ public abstract class Grammar
         return new RightExpressionBuilder();
     }
 
+    // -----------------------------------------------------------------------------------------
+
+    /**
+     * Returns a {@link OperatorTableBuilder} that helps build a {@link OperatorTable} parser, which
+     * can handle operators with many precedence levels in a single parser.
+     */
+    public OperatorTableBuilder operator_table() {
+        return new OperatorTableBuilder();
+    }
+
     // endregion
     // =============================================================================================
     // region [Lazy, Recursive and Associative Parsers]
@@ -738,6 +916,19 @@ public abstract class Grammar
 
         // -----------------------------------------------------------------------------------------
 
+        /**
+         * Returns a sequence of the parser followed by a {@link Cut}: once the parser succeeds, the
+         * parse can't backtrack before the end of its match.
+         *
+         * <p>Use this on rules that, once matched, are never backtracked over — typically the items
+         * of a long list of independent items — to bound the memory used by the parse.
+         */
+        public rule cut() {
+            return new rule(new Sequence(getParser(), new Cut()));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
         /**
          * Returns a repetition ({@link Repeat}) of exactly {@code n} times the parser.
          */
@@ -1345,6 +1536,220 @@ public abstract class Grammar
         }
     }
 
+    // endregion
+    // =============================================================================================
+    // region [class OperatorTableBuilder]
+
+    /**
+     * Helps build a {@link OperatorTable} parser.
+     *
+     * <p>Higher precedence values bind tighter. Operators of the same kind are tried in the order
+     * in which they are defined.
+     */
+    public final class OperatorTableBuilder extends rule
+    {
+        // -----------------------------------------------------------------------------------------
+
+        private final Parser operand;
+        private final Parser[] prefixes, infixes, suffixes;
+        private final int[] prefixPrecedences, infixPrecedences, suffixPrecedences;
+        private final boolean[] infixLeftAssociative;
+        private final StackAction[] prefixSteps, infixSteps, suffixSteps;
+
+        // -----------------------------------------------------------------------------------------
+
+        OperatorTableBuilder ()
+        {
+            this(null,
+                new Parser[0], new int[0], new StackAction[0],
+                new Parser[0], new int[0], new boolean[0], new StackAction[0],
+                new Parser[0], new int[0], new StackAction[0]);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private OperatorTableBuilder (
+            Parser operand,
+            Parser[] prefixes, int[] prefixPrecedences, StackAction[] prefixSteps,
+            Parser[] infixes, int[] infixPrecedences, boolean[] infixLeftAssociative,
+            StackAction[] infixSteps,
+            Parser[] suffixes, int[] suffixPrecedences, StackAction[] suffixSteps)
+        {
+            super(null);
+            this.operand = operand;
+            this.prefixes = prefixes;
+            this.prefixPrecedences = prefixPrecedences;
+            this.prefixSteps = prefixSteps;
+            this.infixes = infixes;
+            this.infixPrecedences = infixPrecedences;
+            this.infixLeftAssociative = infixLeftAssociative;
+            this.infixSteps = infixSteps;
+            this.suffixes = suffixes;
+            this.suffixPrecedences = suffixPrecedences;
+            this.suffixSteps = suffixSteps;
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private int[] append (int[] array, int item)
+        {
+            int[] out = Arrays.copyOf(array, array.length + 1);
+            out[array.length] = item;
+            return out;
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define the operand.
+         */
+        public OperatorTableBuilder operand (Object operand)
+        {
+            if (this.operand != null)
+                throw new IllegalStateException("Trying to redefine the operand.");
+
+            return new OperatorTableBuilder(compile(operand),
+                prefixes, prefixPrecedences, prefixSteps,
+                infixes, infixPrecedences, infixLeftAssociative, infixSteps,
+                suffixes, suffixPrecedences, suffixSteps);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private OperatorTableBuilder _prefix (Object op, int precedence, StackAction step)
+        {
+            return new OperatorTableBuilder(operand,
+                NArrays.append(prefixes, compile(op)),
+                append(prefixPrecedences, precedence),
+                NArrays.append(prefixSteps, step),
+                infixes, infixPrecedences, infixLeftAssociative, infixSteps,
+                suffixes, suffixPrecedences, suffixSteps);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a prefix operator with the given precedence, along with the corresponding step
+         * action.
+         */
+        public OperatorTableBuilder prefix (Object op, int precedence, StackPush step) {
+            return _prefix(op, precedence, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a prefix operator with the given precedence, which leaves the stack untouched.
+         */
+        public OperatorTableBuilder prefix (Object op, int precedence) {
+            return _prefix(op, precedence, PUSHBACK);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private OperatorTableBuilder _infix
+            (Object op, int precedence, boolean leftAssociative, StackAction step)
+        {
+            boolean[] assoc = Arrays.copyOf(infixLeftAssociative, infixLeftAssociative.length + 1);
+            assoc[infixLeftAssociative.length] = leftAssociative;
+
+            return new OperatorTableBuilder(operand,
+                prefixes, prefixPrecedences, prefixSteps,
+                NArrays.append(infixes, compile(op)),
+                append(infixPrecedences, precedence),
+                assoc,
+                NArrays.append(infixSteps, step),
+                suffixes, suffixPrecedences, suffixSteps);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a left-associative infix operator with the given precedence, along with the
+         * corresponding step action.
+         */
+        public OperatorTableBuilder infix (Object op, int precedence, StackPush step) {
+            return _infix(op, precedence, true, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a left-associative infix operator with the given precedence, which leaves the
+         * stack untouched.
+         */
+        public OperatorTableBuilder infix (Object op, int precedence) {
+            return _infix(op, precedence, true, PUSHBACK);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a right-associative infix operator with the given precedence, along with the
+         * corresponding step action.
+         */
+        public OperatorTableBuilder infixRight (Object op, int precedence, StackPush step) {
+            return _infix(op, precedence, false, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a right-associative infix operator with the given precedence, which leaves the
+         * stack untouched.
+         */
+        public OperatorTableBuilder infixRight (Object op, int precedence) {
+            return _infix(op, precedence, false, PUSHBACK);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private OperatorTableBuilder _suffix (Object op, int precedence, StackAction step)
+        {
+            return new OperatorTableBuilder(operand,
+                prefixes, prefixPrecedences, prefixSteps,
+                infixes, infixPrecedences, infixLeftAssociative, infixSteps,
+                NArrays.append(suffixes, compile(op)),
+                append(suffixPrecedences, precedence),
+                NArrays.append(suffixSteps, step));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a suffix operator with the given precedence, along with the corresponding step
+         * action.
+         */
+        public OperatorTableBuilder suffix (Object op, int precedence, StackPush step) {
+            return _suffix(op, precedence, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a suffix operator with the given precedence, which leaves the stack untouched.
+         */
+        public OperatorTableBuilder suffix (Object op, int precedence) {
+            return _suffix(op, precedence, PUSHBACK);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        @Override public Parser getParser ()
+        {
+            if (parser != null)
+                return parser; // get() was called before
+
+            if (operand == null)
+                throw new IllegalStateException("No operand specified for an operator table.");
+
+            return parser = new OperatorTable(operand,
+                prefixes, prefixPrecedences, prefixSteps,
+                infixes, infixPrecedences, infixLeftAssociative, infixSteps,
+                suffixes, suffixPrecedences, suffixSteps);
+        }
+    }
+
     // endregion
     // =============================================================================================
     // region [class BoundedParserBuilder]
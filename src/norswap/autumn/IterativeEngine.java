@@ -0,0 +1,297 @@
+package norswap.autumn;
+
+import java.util.Arrays;
+
+/**
+ * The execution engine used when {@link ParseOptions#iterative} is set: runs the parsers that
+ * implement {@link IterativeParser} without using the Java stack, by keeping the frames of their
+ * invocations on a heap-allocated stack, encoded in two arrays (one for primitive values and one
+ * for references).
+ *
+ * <p>Each frame holds the state saved by the bookkeeping of {@link Parser#parse} (input position,
+ * log size, furthest error, depth) as well as {@link #INT_SLOTS} int slots and {@link
+ * #OBJECT_SLOTS} object slots for the state of the invocation, accessed by the parser through
+ * {@link #getInt(int)}, {@link #setInt(int, int)}, {@link #getObject(int)} and {@link
+ * #setObject(int, Object)}. These methods always access the frame of the innermost invocation.
+ *
+ * <p>Parsers that do not implement {@link IterativeParser} are run recursively. The sub-parsers
+ * they invoke are run by a nested call to {@link #run(Parser)}, which uses the same stack.
+ *
+ * <p>There is one engine per {@link Parse} (cf. {@link Parse#engine}).
+ */
+public final class IterativeEngine
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of int slots available to parsers in each frame. */
+    public static final int INT_SLOTS = 5;
+
+    /** Number of object slots available to parsers in each frame. */
+    public static final int OBJECT_SLOTS = 2;
+
+    // ---------------------------------------------------------------------------------------------
+
+    // layout of a frame in `ints`
+    private static final int POS0   = 0;
+    private static final int LOG0   = 1;
+    private static final int ERR0   = 2;
+    private static final int DEPTH0 = 3;
+    private static final int INT0   = 4; // first int slot
+    private static final int INTS   = INT0 + INT_SLOTS;
+
+    // layout of a frame in `objects`
+    private static final int PARSER  = 0;
+    private static final int ERRMSG0 = 1;
+    private static final int STK0    = 2;
+    private static final int OBJECT0 = 3; // first object slot
+    private static final int OBJECTS = OBJECT0 + OBJECT_SLOTS;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Parse parse;
+
+    /** The maximum depth allowed by the budget of the parse ({@link ParseBudget#maxDepth}). */
+    private final int maxDepth;
+
+    private int[] ints = new int[64 * INTS];
+    private Object[] objects = new Object[64 * OBJECTS];
+
+    /** Number of frames on the stack. */
+    private int top = 0;
+
+    /** Result of the innermost invocation, set by {@link #done(boolean)}. */
+    private boolean result;
+
+    // ---------------------------------------------------------------------------------------------
+
+    IterativeEngine (Parse parse)
+    {
+        this.parse = parse;
+        this.maxDepth = parse.budget != null ? parse.budget.maxDepth : Integer.MAX_VALUE;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Invokes {@code parser}, with the same semantics as {@link Parser#parse(Parse)}.
+     */
+    boolean run (Parser parser)
+    {
+        int base = top;
+        try {
+            Parser next = parser;
+            while (true) {
+                boolean success;
+
+                if (next.iterative) {
+                    push(next);
+                    next = ((IterativeParser) next).start(parse, this);
+                    if (next != null) continue;
+                    success = pop();
+                }
+                else {
+                    success = next.recursiveParse(parse);
+                }
+
+                // Feed the result to the enclosing invocations, until one of them invokes a new
+                // sub-parser.
+                while (true) {
+                    if (top == base) return success;
+                    IterativeParser current = (IterativeParser) objects[(top - 1) * OBJECTS];
+                    next = current.resume(parse, this, success);
+                    if (next != null) break;
+                    success = pop();
+                }
+            }
+        }
+        catch (Throwable t) {
+            // The frames of the aborted invocations are discarded. Java 7+ rethrows with the
+            // precise (unchecked) type.
+            Arrays.fill(objects, base * OBJECTS, top * OBJECTS, null);
+            top = base;
+            throw t;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes a frame for an invocation of {@code parser}: mirrors the bookkeeping performed by
+     * {@link Parser#recursiveParse} before calling {@link Parser#doparse}.
+     */
+    private void push (Parser parser)
+    {
+        if (parse.heatmap != null)
+            parse.heatmap.record(parser, parse.pos);
+
+        int depth0 = parse.depth;
+        parse.depth = depth0 + 1;
+        if (depth0 == parse.maxDepth)
+            parse.maxDepth = depth0 + 1;
+
+        if (parse.profileStack != null)
+            parser.profilePush(parse, depth0);
+
+        if (parse.budget != null) {
+            if (--parse.budgetCountdown == 0)
+                parse.checkBudget(parser);
+            if (depth0 >= maxDepth)
+                throw parse.depthExceeded(parser);
+        }
+
+        if ((top + 1) * INTS > ints.length) {
+            ints = Arrays.copyOf(ints, ints.length * 2);
+            objects = Arrays.copyOf(objects, objects.length * 2);
+        }
+
+        int i = top * INTS;
+        ints[i + POS0]   = parse.pos;
+        ints[i + LOG0]   = parse.log.size();
+        ints[i + ERR0]   = parse.error;
+        ints[i + DEPTH0] = depth0;
+        Arrays.fill(ints, i + INT0, i + INTS, 0);
+
+        int o = top * OBJECTS;
+        objects[o + PARSER]  = parser;
+        objects[o + ERRMSG0] = parse.errorMessage;
+        objects[o + STK0]    = parse.errorCallStack;
+
+        ++ top;
+
+        if (parse.options.recordCallStack)
+            parse.callStack.push(parser, parse.pos);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pops the frame of the innermost invocation, which just completed with {@link #result}, and
+     * returns this result: mirrors the bookkeeping performed by {@link Parser#recursiveParse} after
+     * calling {@link Parser#doparse}.
+     */
+    private boolean pop()
+    {
+        -- top;
+        int i = top * INTS;
+        int o = top * OBJECTS;
+
+        Parser parser = (Parser) objects[o + PARSER];
+        int pos0 = ints[i + POS0];
+        int log0 = ints[i + LOG0];
+        String errmsg0 = (String) objects[o + ERRMSG0];
+        ParserCallStack stk0 = (ParserCallStack) objects[o + STK0];
+        objects[o + PARSER]  = null;
+        objects[o + ERRMSG0] = null;
+        objects[o + STK0]    = null;
+        objects[o + OBJECT0]     = null;
+        objects[o + OBJECT0 + 1] = null;
+
+        if (parser.excludeErrors) {
+            parse.error = ints[i + ERR0];
+            parse.errorMessage = errmsg0;
+            parse.errorCallStack = stk0;
+        }
+
+        parse.depth = ints[i + DEPTH0];
+
+        if (result) {
+            if (parse.options.recordCallStack)
+                parse.callStack.pop();
+            return true;
+        }
+
+        if (!parser.excludeErrors && parse.error <= pos0) {
+            parse.error = pos0;
+            //noinspection StringEquality
+            if (parse.errorMessage == errmsg0)
+                parse.errorMessage = null;
+            if (parse.options.recordCallStack)
+                parse.errorCallStack = parse.callStack.clone();
+        }
+
+        if (parse.options.recordCallStack)
+            parse.callStack.pop();
+
+        if (pos0 < parse.cutPosition || log0 < parse.log.committed())
+            throw CutException.INSTANCE;
+
+        parse.pos = pos0;
+
+        if (parse.log.size() > log0)
+            parse.log.rollback(log0);
+
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Completes the innermost invocation with the given result. Must be returned by {@link
+     * IterativeParser#start} or {@link IterativeParser#resume} (it always returns null).
+     */
+    public Parser done (boolean result)
+    {
+        this.result = result;
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the input position at the start of the innermost invocation.
+     */
+    public int startPosition() {
+        return ints[(top - 1) * INTS + POS0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the size of the log ({@link Log#size()}) at the start of the innermost invocation.
+     */
+    public int startLogSize() {
+        return ints[(top - 1) * INTS + LOG0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the value of the given int slot ({@code 0 <= slot <} {@link #INT_SLOTS}) of the
+     * innermost invocation. Slots are initially 0.
+     */
+    public int getInt (int slot) {
+        return ints[(top - 1) * INTS + INT0 + slot];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the value of the given int slot ({@code 0 <= slot <} {@link #INT_SLOTS}) of the
+     * innermost invocation.
+     */
+    public void setInt (int slot, int value) {
+        ints[(top - 1) * INTS + INT0 + slot] = value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the value of the given object slot ({@code 0 <= slot <} {@link #OBJECT_SLOTS}) of
+     * the innermost invocation. Slots are initially null.
+     */
+    public Object getObject (int slot) {
+        return objects[(top - 1) * OBJECTS + OBJECT0 + slot];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the value of the given object slot ({@code 0 <= slot <} {@link #OBJECT_SLOTS}) of the
+     * innermost invocation.
+     */
+    public void setObject (int slot, Object value) {
+        objects[(top - 1) * OBJECTS + OBJECT0 + slot] = value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,43 @@
+package norswap.autumn;
+
+/**
+ * Implemented by parsers that can be run by the iterative engine ({@link
+ * ParseOptions#iterative}), which keeps the continuations of their invocations on a heap-allocated
+ * stack ({@link IterativeEngine}) instead of the Java stack.
+ *
+ * <p>An invocation is run as a state machine: {@link #start} is called first, then {@link #resume}
+ * is called each time a sub-parser returned by the previous call completes, until one of these
+ * calls returns {@link IterativeEngine#done(boolean)}. The state of the invocation must be stored
+ * in the slots of its frame ({@link IterativeEngine#getInt(int)}, {@link
+ * IterativeEngine#getObject(int)}), never in the parser itself.
+ *
+ * <p>The engine performs the bookkeeping of {@link Parser#parse} around the invocation: the logic
+ * must be identical to that of {@link Parser#doparse}, which is still used outside of the iterative
+ * engine.
+ *
+ * <p>Parsers that do not implement this interface are run recursively by the engine (which also
+ * handles the sub-parsers they invoke).
+ */
+public interface IterativeParser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Starts an invocation of this parser, returning the first sub-parser to invoke, or the result
+     * of {@link IterativeEngine#done(boolean)} if the invocation completes without invoking any
+     * sub-parser.
+     */
+    Parser start (Parse parse, IterativeEngine engine);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Resumes an invocation of this parser after the completion (with the given result) of the
+     * sub-parser returned by the previous call to {@link #start} or {@code resume}. Returns the
+     * next sub-parser to invoke, or the result of {@link IterativeEngine#done(boolean)} if the
+     * invocation completes.
+     */
+    Parser resume (Parse parse, IterativeEngine engine, boolean result);
+
+    // ---------------------------------------------------------------------------------------------
+}
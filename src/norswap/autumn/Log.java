@@ -1,8 +1,7 @@
 package norswap.autumn;
 
-import norswap.autumn.util.ArrayStack;
-import norswap.utils.Vanilla;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -13,8 +12,13 @@ import java.util.List;
  * <p>Usually, this is only modified through the {@link #apply} methods. Parsers automatically
  * undo side-effects on failure through {@link #rollback}. A list of recently applied
  * side-effects can be acquired through {@link #delta}.
+ *
+ * <p>Side-effects are identified by their index in the log. When the parse is cut ({@link
+ * Parse#cut()}), all the side-effects applied so far are committed: they can no longer be undone,
+ * and the log drops them (but keeps counting them in its {@link #size()}, so that indices remain
+ * valid).
  */
-public final class Log extends ArrayStack<SideEffect.Applied>
+public final class Log
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -22,12 +26,55 @@ public final class Log extends ArrayStack<SideEffect.Applied>
 
     // ---------------------------------------------------------------------------------------------
 
+    /** The uncommitted side-effects, the first one having index {@link #committed}. */
+    private SideEffect.Applied[] entries = new SideEffect.Applied[64];
+
+    private int size;
+    private int committed;
+    private int peakSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of side-effects in the log, including the committed ones.
+     */
+    public int size() {
+        return size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of committed side-effects (see {@link #commit()}), which are the first
+     * side-effects of the log.
+     */
+    public int committed() {
+        return committed;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Applies the given side-effect and adds it to the log of applied side effects.
      */
     public void apply (SideEffect effect)
     {
-        add(effect.apply());
+        int i = size - committed;
+        if (i == entries.length)
+            entries = Arrays.copyOf(entries, i * 2);
+        entries[i] = effect.apply();
+        ++ size;
+        if (i + 1 > peakSize) peakSize = i + 1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the maximum number of uncommitted side-effects held by the log (which is the maximum
+     * size reached by the log if the parse is never cut).
+     */
+    public int peakSize() {
+        return peakSize;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -46,25 +93,58 @@ public final class Log extends ArrayStack<SideEffect.Applied>
     /**
      * Rollback logged side effects in reverse order of application until the log size is {@code
      * logTargetSize}.
+     *
+     * @throws IllegalStateException if this would undo committed side effects.
      */
     public void rollback (int logTargetSize)
     {
-        for (int i = size(); i > logTargetSize; --i)
-            pop().undo.run();
+        checkUncommitted(logTargetSize);
+        while (size > logTargetSize) {
+            int i = --size - committed;
+            SideEffect.Applied applied = entries[i];
+            entries[i] = null;
+            applied.undo.run();
+        }
     }
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Commits all the side effects in the log: they can no longer be undone, and the log stops
+     * holding them. Called by {@link Parse#cut()}.
+     */
+    void commit()
+    {
+        Arrays.fill(entries, 0, size - committed, null);
+        committed = size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void checkUncommitted (int index)
+    {
+        if (index < committed)
+            throw new IllegalStateException(String.format(
+                "log index %d precedes the committed side effects (%d)", index, committed));
+    }
+
+    // ---------------------------------------------------------------------------------------------
 
     /**
      * Returns a list of side effects (without undo functions!) whose index {@code i} are such that
      * {@code logStartIndex <= i < log.size()}, in increasing index order.
+     *
+     * @throws IllegalStateException if this includes committed side effects.
      */
     public List<SideEffect> delta (int logStartIndex)
     {
-        return logStartIndex == size()
-            ? Collections.emptyList()
-            : Vanilla.map(from(logStartIndex), it -> it.effect);
+        checkUncommitted(logStartIndex);
+        if (logStartIndex == size)
+            return Collections.emptyList();
+        ArrayList<SideEffect> out = new ArrayList<>(size - logStartIndex);
+        for (int i = logStartIndex - committed; i < size - committed; ++i)
+            out.add(entries[i].effect);
+        return out;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -72,10 +152,14 @@ public final class Log extends ArrayStack<SideEffect.Applied>
     /**
      * Returns a list of applied side effects (with undo function) whose index {@code i} are such
      * that {@code logStartIndex <= i < log.size()}, in increasing index order.
+     *
+     * @throws IllegalStateException if this includes committed side effects.
      */
     public List<SideEffect.Applied> deltaApplied (int logStartIndex)
     {
-        return new ArrayList<>(from(logStartIndex));
+        checkUncommitted(logStartIndex);
+        return new ArrayList<>(Arrays.asList(entries)
+            .subList(logStartIndex - committed, size - committed));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -0,0 +1,346 @@
+package norswap.autumn;
+
+import norswap.autumn.util.StringsUtil;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable copy of the trace metrics in a {@link ParseMetrics} (see {@link
+ * ParseMetrics#snapshot()}), keyed by parser name instead of parser objects.
+ *
+ * <p>The name of a parser is its {@code toString()} representation, i.e. its rule name (see {@link
+ * Parser#rule()}) if it has one. Rule names are stable across runs (and across JVMs), which makes
+ * it possible to save a snapshot ({@link #toCsv()}, {@link #toJson()}), read it back later ({@link
+ * #fromCsv(String)}) and compare it with a newer snapshot ({@link #diff(MetricsSnapshot)}, {@link
+ * #diffReport(MetricsSnapshot, int)}). If multiple parsers have the same name, their metrics are
+ * summed.
+ */
+public final class MetricsSnapshot
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The metrics of a parser (or of all parsers with the same name).
+     */
+    public static final class Row
+    {
+        public final String name;
+        public final long invocations;
+        public final long selfTime;
+        public final long totalTime;
+        public final long selfAllocated;
+        public final long totalAllocated;
+        public final long rolledBackSuccesses;
+        public final long wastedInput;
+        public final long undoneLogEntries;
+        public final long revisits;
+
+        public Row (String name, long invocations, long selfTime, long totalTime,
+                    long selfAllocated, long totalAllocated, long rolledBackSuccesses,
+                    long wastedInput, long undoneLogEntries, long revisits)
+        {
+            this.name = name;
+            this.invocations = invocations;
+            this.selfTime = selfTime;
+            this.totalTime = totalTime;
+            this.selfAllocated = selfAllocated;
+            this.totalAllocated = totalAllocated;
+            this.rolledBackSuccesses = rolledBackSuccesses;
+            this.wastedInput = wastedInput;
+            this.undoneLogEntries = undoneLogEntries;
+            this.revisits = revisits;
+        }
+
+        private long[] values() {
+            return new long[] { invocations, selfTime, totalTime, selfAllocated, totalAllocated,
+                rolledBackSuccesses, wastedInput, undoneLogEntries, revisits };
+        }
+
+        private static Row of (String name, long[] v) {
+            return new Row(name, v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7], v[8]);
+        }
+
+        @Override public String toString() {
+            return "Row{" +
+                "name: " + name +
+                ", self: "  + Duration.ofNanos(selfTime) +
+                ", total: " + Duration.ofNanos(totalTime) +
+                ", invocs:" + String.format("%,d", invocations) +
+                '}';
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Names of the columns of {@link #toCsv()} (after the {@code name} column), in order. These
+     * are also the keys used by {@link #toJson()}. Times are in nanoseconds, allocations in bytes.
+     */
+    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(
+        "invocations", "self_time_ns", "total_time_ns", "self_allocated_bytes",
+        "total_allocated_bytes", "rolled_back_successes", "wasted_input", "undone_log_entries",
+        "revisits"));
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parses whose metrics are included in the snapshot.
+     */
+    public final long parses;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Per-parser metrics, keyed and sorted by name.
+     */
+    public final Map<String, Row> rows;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public MetricsSnapshot (long parses, Map<String, Row> rows)
+    {
+        this.parses = parses;
+        this.rows = Collections.unmodifiableMap(new TreeMap<>(rows));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called by {@link ParseMetrics#snapshot()}, which holds its lock.
+     */
+    static MetricsSnapshot of (ParseMetrics metrics)
+    {
+        TreeMap<String, long[]> values = new TreeMap<>();
+        for (ParserMetrics m: metrics.metrics().values())
+            add(values, m.parser.toString(), new long[] { m.invocations, m.selfTime, m.totalTime,
+                m.selfAllocated, m.totalAllocated, m.rolledBackSuccesses, m.wastedInput,
+                m.undoneLogEntries, m.revisits });
+        return new MetricsSnapshot(metrics.parses, toRows(values));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void add (Map<String, long[]> values, String name, long[] v)
+    {
+        long[] sum = values.computeIfAbsent(name, k -> new long[COLUMNS.size()]);
+        for (int i = 0; i < v.length; ++i)
+            sum[i] += v[i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Map<String, Row> toRows (Map<String, long[]> values)
+    {
+        TreeMap<String, Row> rows = new TreeMap<>();
+        values.forEach((k, v) -> rows.put(k, Row.of(k, v)));
+        return rows;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a snapshot whose metrics are the difference between the metrics of this snapshot and
+     * those of {@code before} (an older snapshot), including parsers that only appear in one of
+     * them. Rows whose metrics are all unchanged are omitted.
+     */
+    public MetricsSnapshot diff (MetricsSnapshot before)
+    {
+        TreeMap<String, long[]> values = new TreeMap<>();
+        rows.forEach((k, v) -> add(values, k, v.values()));
+        before.rows.forEach((k, v) -> {
+            long[] negated = v.values();
+            for (int i = 0; i < negated.length; ++i) negated[i] = -negated[i];
+            add(values, k, negated);
+        });
+        values.values().removeIf(v -> {
+            for (long x: v) if (x != 0) return false;
+            return true;
+        });
+        return new MetricsSnapshot(parses - before.parses, toRows(values));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a table comparing the (at most) {@code n} parsers whose self time changed the most
+     * (in absolute value) between {@code before} (an older snapshot) and this snapshot.
+     *
+     * <p>To make the comparison meaningful when the snapshots do not cover the same number of
+     * parses, times and invocation counts are divided by the number of parses of their snapshot.
+     */
+    public String diffReport (MetricsSnapshot before, int n)
+    {
+        double parses0 = Math.max(before.parses, 1);
+        double parses1 = Math.max(parses, 1);
+        Row zero = new Row("", 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        List<String> names = new ArrayList<>(rows.keySet());
+        for (String name: before.rows.keySet())
+            if (!rows.containsKey(name)) names.add(name);
+
+        names.sort(Comparator.comparingDouble((String name) -> Math.abs(
+            rows.getOrDefault(name, zero).selfTime / parses1
+                - before.rows.getOrDefault(name, zero).selfTime / parses0)).reversed());
+
+        StringBuilder b = new StringBuilder(String.format(Locale.ROOT,
+            "%,d parses before, %,d parses after (values per parse)\n", before.parses, parses));
+        b.append(String.format("%40s | %-14s | %-14s | %-9s | %-14s | %s\n",
+            "PARSER", "SELF BEFORE", "SELF AFTER", "SELF DIFF", "INVOCS BEFORE", "INVOCS AFTER"));
+
+        for (String name: names.subList(0, Math.min(n, names.size())))
+        {
+            Row r0 = before.rows.getOrDefault(name, zero);
+            Row r1 = rows.getOrDefault(name, zero);
+            double self0 = r0.selfTime / parses0;
+            double self1 = r1.selfTime / parses1;
+            String change = self0 == 0
+                ? "new"
+                : String.format(Locale.ROOT, "%+.1f%%", 100 * (self1 - self0) / self0);
+            b.append(String.format(Locale.ROOT, "%40s | %-14s | %-14s | %9s | %,14.1f | %,.1f\n",
+                name,
+                Duration.ofNanos((long) self0),
+                Duration.ofNanos((long) self1),
+                change,
+                r0.invocations / parses0,
+                r1.invocations / parses1));
+        }
+
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the metrics as CSV: a header line, a line with the number of parses (with name {@code
+     * #parses}, in the {@code invocations} column) and a line per parser, sorted by name (see
+     * {@link #COLUMNS}). Names are always quoted.
+     */
+    public String toCsv()
+    {
+        StringBuilder b = new StringBuilder("name,").append(String.join(",", COLUMNS)).append('\n');
+        b.append("\"#parses\",").append(parses);
+        for (int i = 1; i < COLUMNS.size(); ++i) b.append(",0");
+        b.append('\n');
+
+        for (Row row: rows.values()) {
+            b.append('"').append(row.name.replace("\"", "\"\"")).append('"');
+            for (long v: row.values()) b.append(',').append(v);
+            b.append('\n');
+        }
+
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Reads back the output of {@link #toCsv()}.
+     *
+     * <p>Names may contain any character (including line breaks), as long as they are quoted.
+     *
+     * @throws IllegalArgumentException if the input is not in the expected format
+     */
+    public static MetricsSnapshot fromCsv (String csv)
+    {
+        String header = "name," + String.join(",", COLUMNS);
+        if (!csv.startsWith(header))
+            throw new IllegalArgumentException("expected CSV header: " + header);
+
+        long parses = 0;
+        TreeMap<String, long[]> values = new TreeMap<>();
+        int i = header.length();
+        int line = 1;
+
+        while (true)
+        {
+            // skip line break(s)
+            while (i < csv.length() && (csv.charAt(i) == '\r' || csv.charAt(i) == '\n')) {
+                if (csv.charAt(i) == '\n') ++ line;
+                ++ i;
+            }
+            if (i == csv.length()) break;
+
+            if (csv.charAt(i) != '"')
+                throw new IllegalArgumentException("unquoted name at line " + line);
+
+            // Read the name, unescaping doubled quotes.
+            StringBuilder name = new StringBuilder();
+            ++ i;
+            while (true) {
+                if (i == csv.length())
+                    throw new IllegalArgumentException("unterminated name at line " + line);
+                char c = csv.charAt(i++);
+                if (c == '"') {
+                    if (i < csv.length() && csv.charAt(i) == '"') ++ i;
+                    else break;
+                }
+                if (c == '\n') ++ line;
+                name.append(c);
+            }
+
+            int end = csv.indexOf('\n', i);
+            if (end < 0) end = csv.length();
+            String[] fields = csv.substring(i, end).trim().split(",", -1);
+            i = end;
+
+            if (fields.length != COLUMNS.size() + 1 || !fields[0].isEmpty())
+                throw new IllegalArgumentException("wrong number of columns at line " + line);
+
+            long[] v = new long[COLUMNS.size()];
+            try {
+                for (int j = 0; j < v.length; ++j)
+                    v[j] = Long.parseLong(fields[j + 1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid number at line " + line, e);
+            }
+
+            if (name.toString().equals("#parses")) parses = v[0];
+            else add(values, name.toString(), v);
+        }
+
+        return new MetricsSnapshot(parses, toRows(values));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the metrics as a JSON object, with a {@code "parses"} key and a {@code "parsers"}
+     * key, whose value is an object mapping parser names to an object with the metrics (see {@link
+     * #COLUMNS}).
+     */
+    public String toJson()
+    {
+        StringBuilder b = new StringBuilder("{\n  \"parses\": ").append(parses)
+            .append(",\n  \"parsers\": {");
+        boolean first = true;
+        for (Row row: rows.values())
+        {
+            b.append(first ? "\n    " : ",\n    ");
+            first = false;
+            b.append('"').append(StringsUtil.escape(row.name)).append("\": {");
+            long[] v = row.values();
+            for (int i = 0; i < v.length; ++i)
+                b   .append(i == 0 ? " \"" : ", \"")
+                    .append(COLUMNS.get(i))
+                    .append("\": ")
+                    .append(v[i]);
+            b.append(" }");
+        }
+        return b.append(first ? "}\n}\n" : "\n  }\n}\n").toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString() {
+        return toCsv();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,124 @@
+package norswap.autumn;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of a parallel parse, returned by one of the {@link Autumn} {@code parseParallel}
+ * methods.
+ *
+ * <p>The input was split into chunks, each of which was parsed separately. The results of the
+ * individual chunks are available in {@link #chunks}, with positions relative to the start of the
+ * chunk (whose input position is given by {@link #chunkStart(int)}). The other fields combine these
+ * results, with positions relative to the start of the input.
+ */
+public final class ParallelParseResult
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether every chunk was fully matched.
+     */
+    public final boolean fullMatch;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The results of the parse of each chunk, in input order.
+     */
+    public final List<ParseResult> chunks;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Input position (in code points) at which each chunk starts.
+     */
+    private final int[] chunkStarts;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The concatenation of the value stacks of all chunks, in input order. Positions held in the
+     * values (e.g. {@link norswap.autumn.positions.Span}s) are relative to the start of their
+     * chunk.
+     */
+    public final List<Object> values;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Index of the first chunk that wasn't fully matched, or -1 if {@link #fullMatch}.
+     */
+    public final int failedChunk;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The {@link ParseResult#errorOffset} of the first chunk that wasn't fully matched, converted
+     * to an input position, or -1 if {@link #fullMatch}.
+     */
+    public final int errorOffset;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The {@link ParseResult#errorMessage} of the first chunk that wasn't fully matched, or null.
+     */
+    public final String errorMessage;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The {@link ParseResult#thrown} of the first chunk that wasn't fully matched, or null.
+     */
+    public final Throwable thrown;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The {@link ParseResult#budgetExceeded} of the first chunk that wasn't fully matched, or null.
+     * The budget applies to each chunk separately.
+     */
+    public final BudgetExceededException budgetExceeded;
+
+    // ---------------------------------------------------------------------------------------------
+
+    ParallelParseResult (List<ParseResult> chunks, int[] chunkStarts, List<Object> values)
+    {
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.chunkStarts = chunkStarts;
+        this.values = Collections.unmodifiableList(values);
+
+        int failed = -1;
+        for (int i = 0; i < chunks.size() && failed < 0; ++i)
+            if (!chunks.get(i).fullMatch) failed = i;
+
+        ParseResult failure = failed < 0 ? null : chunks.get(failed);
+        this.fullMatch      = failure == null;
+        this.failedChunk    = failed;
+        this.errorOffset    = failure == null ? -1 : chunkStarts[failed] + failure.errorOffset;
+        this.errorMessage   = failure == null ? null : failure.errorMessage;
+        this.thrown         = failure == null ? null : failure.thrown;
+        this.budgetExceeded = failure == null ? null : failure.budgetExceeded;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the input position (in code points) at which the given chunk starts. Add it to a
+     * position of the chunk's result to get an input position.
+     */
+    public int chunkStart (int chunk) {
+        return chunkStarts[chunk];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return String.format("ParallelParseResult{full match: %b, chunks: %d%s}",
+            fullMatch, chunks.size(), fullMatch ? "" : ", error at: " + errorOffset);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -3,6 +3,9 @@ package norswap.autumn;
 import norswap.autumn.actions.ActionContext;
 import norswap.autumn.actions.StackAction;
 import norswap.autumn.parsers.Bounded;
+import norswap.autumn.memo.MemoEntry;
+import norswap.autumn.memo.Memoizer;
+import norswap.autumn.parsers.Memo;
 import norswap.autumn.parsers.Not;
 import norswap.autumn.parsers.RightExpression;
 import norswap.autumn.parsers.StringMatch;
@@ -16,6 +19,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 /**
  * The context associated with <i>a parse</i>, which is the the invocation of a (root) parser on
@@ -47,6 +53,13 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Position of the last cut (see {@link #cut()}), before which the parse can't backtrack.
+     */
+    int cutPosition = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Start of the last parsed whitespace segment for {@link Span} creation. Must be modified via
      * side effects.
@@ -128,6 +141,45 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Number of memo entries created during this parse. Incremented by {@link
+     * #recordMemoEntry(Parser, MemoEntry)}.
+     */
+    public int memoEntries = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of memo lookups that found a memo entry (which was then reused) during this parse.
+     */
+    public int memoHits = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * For each memoizing parser, the number of memo entries it created during the parse and their
+     * estimated size in bytes (see {@link ParseFootprint}).
+     */
+    private final HashMap<Parser, long[]> memoFootprints = new HashMap<>();
+
+    /** The last memoizing parser looked up in {@link #memoFootprints}, and its counters. */
+    private Parser lastMemo;
+    private long[] lastMemoFootprint;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parsers currently running (the current recursion depth).
+     */
+    int depth = 0;
+
+    /**
+     * Maximum value reached by {@link #depth} during the parse.
+     */
+    int maxDepth = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Use this map to store custom parsing state data. If state changes must be undone when
      * backtracking (as is usual), the state data should usually be modified exclusively through a
@@ -179,12 +231,154 @@ public final class Parse
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Maps parser names to a set of parser metrics.
-     *
-     * <p>Can be reused accross parses using {@link ParseOptions#metrics}.
+     * If {@link ParseOptions#traceAllocations} is set (and supported), a stack used to record the
+     * allocations of completed parser invocations, like {@link #traceTimings} for time. Null
+     * otherwise.
+     */
+    final ArrayListLong traceAllocations;
+
+    /**
+     * If {@link #traceAllocations} is non-null, the id of the thread running the parse.
+     */
+    private final long threadId;
+
+    /**
+     * If {@link #traceAllocations} is non-null, the number of bytes allocated by each reading of
+     * the allocation counter (see {@link AllocationCounter#readSize}).
+     */
+    final long allocationReadSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, the metrics collected during this parse, which are merged into {@link
+     * #sharedMetrics} at the end of the parse.
      */
     final ParseMetrics parseMetrics;
 
+    /**
+     * In tracing mode, the metrics object returned by {@link ParseOptions#metrics}, which can be
+     * shared across (possibly concurrent) parses.
+     */
+    final ParseMetrics sharedMetrics;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, the indices in {@link #parseMetrics} (see {@link ParseMetrics#register})
+     * of the parsers whose invocations succeeded but could still be rolled back by the failure of
+     * an ancestor, the first one having index {@link #traceSuccessCommitted}.
+     *
+     * <p>Invocations can no longer be rolled back once the parse is cut ({@link #cut()}) or once
+     * the root parser succeeds, which drops them: the memory used is bounded like that of the
+     * {@link #log}.
+     */
+    private int[] traceSuccesses;
+
+    /**
+     * In tracing mode, the size of the input consumed by the invocations in {@link
+     * #traceSuccesses}.
+     */
+    private int[] traceSuccessSizes;
+
+    /**
+     * In tracing mode, the number of invocations recorded by {@link #traceSuccess}, including the
+     * dropped ones (see {@link #traceSuccesses}).
+     */
+    int traceSuccessCount = 0;
+
+    /**
+     * In tracing mode, the number of invocations dropped from {@link #traceSuccesses}.
+     */
+    private int traceSuccessCommitted = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, the recorded rule spans if {@link ParseOptions#spanDepth} is set, null
+     * otherwise.
+     */
+    final ParseTrace trace;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The heatmap counting invocations per position if {@link ParseOptions#heatmap} is set, null
+     * otherwise.
+     */
+    final ParseHeatmap heatmap;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The profile receiving samples if {@link ParseOptions#profile} is set (and {@link
+     * ParseOptions#trace} isn't), null otherwise.
+     */
+    final ParseProfile profile;
+
+    /**
+     * In profiling mode (or if {@link ParseOptions#jfr} or {@link ParseOptions#budget} is set), the
+     * stack of running parsers (up to {@link #depth}), null otherwise.
+     */
+    Parser[] profileStack;
+
+    /**
+     * In profiling mode, the number of parser invocations until the next sample.
+     */
+    int profileCountdown;
+
+    /**
+     * In profiling mode, the earliest time ({@code System.nanoTime()}) at which the next sample may
+     * be taken, if {@link ParseProfile#minDelayNanos} is set.
+     */
+    long profileNextSample = Long.MIN_VALUE;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the invocations of individual parsers are observed (traced, recorded on the call
+     * stack, counted in the heatmap or sampled). If so, parsers must not take shortcuts that skip
+     * the invocation of their children (e.g. {@link norswap.autumn.parsers.Choice#union}).
+     */
+    public final boolean observed;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The value of {@link ParseOptions#budget}.
+     */
+    final ParseBudget budget;
+
+    /**
+     * If {@link #budget} is set, the number of parser invocations until the next check of the
+     * budget ({@link #checkBudget(Parser)}).
+     */
+    int budgetCountdown;
+
+    /**
+     * If {@link #budget} is set, the value {@link #budgetCountdown} was set to at the last check.
+     */
+    private int budgetChunk;
+
+    /**
+     * If {@link #budget} is set, the number of parser invocations up to the last check.
+     */
+    private long budgetInvocations = 0;
+
+    /**
+     * If {@link #budget} is set, the time at which the parse started (or at which the parse it
+     * replays started, see {@link #chargeBudget(Parse)}).
+     */
+    private long budgetStart;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The engine running the parsers if {@link ParseOptions#iterative} is set (and {@link
+     * ParseOptions#trace} isn't), null otherwise.
+     */
+    final IterativeEngine engine;
+
     // ---------------------------------------------------------------------------------------------
 
     private Parse (String string, List<?> list, ParseOptions options)
@@ -199,55 +393,372 @@ public final class Parse
         this.options = options;
         this.callStack = options.recordCallStack ? new ParserCallStack() : null;
         this.traceTimings = options.trace ? new ArrayListLong(256) : null;
-        this.parseMetrics = options.trace ? options.metrics.get() : null;
+        this.parseMetrics = options.trace ? new ParseMetrics() : null;
+        boolean allocations = options.trace && options.traceAllocations
+            && AllocationCounter.SUPPORTED;
+        this.traceAllocations = allocations ? new ArrayListLong(256) : null;
+        this.threadId = Thread.currentThread().getId();
+        this.allocationReadSize = allocations ? AllocationCounter.readSize(threadId) : 0;
+        this.sharedMetrics = options.trace ? options.metrics.get() : null;
+        this.traceSuccesses = options.trace ? new int[256] : null;
+        this.traceSuccessSizes = options.trace ? new int[256] : null;
+        this.trace = options.trace && options.spanDepth > 0
+            ? new ParseTrace(options.spanDepth)
+            : null;
+        this.heatmap = options.heatmap ? new ParseHeatmap(this) : null;
+        this.profile = !options.trace && options.profile != null ? options.profile.get() : null;
+        boolean sampling = profile != null || options.jfr && ParseEvents.available()
+            || options.budget != null;
+        this.profileStack = sampling ? new Parser[64] : null;
+        this.observed = options.trace || options.recordCallStack || heatmap != null
+            || profile != null || options.jfr && ParseEvents.available();
+        this.profileCountdown = sampling ? countdown() : 0;
+        this.budget = options.budget;
+        this.budgetChunk = budget != null ? budgetChunk() : 0;
+        this.budgetCountdown = budgetChunk;
+        this.budgetStart = budget != null ? System.nanoTime() : 0;
+        this.engine = options.iterative && !options.trace ? new IterativeEngine(this) : null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * @see Autumn#parse
+     * If {@link #traceAllocations} is non-null, returns the number of bytes allocated so far by
+     * the thread running the parse.
+     */
+    long allocatedBytes() {
+        return AllocationCounter.bytes(threadId);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If {@link #traceAllocations} is non-null, called at the end of a parser invocation to
+     * record its allocations into {@link #parseMetrics}, for the parser whose index in it is
+     * {@code index}.
+     * {@code total} is the number of bytes allocated by the invocation's {@link Parser#doparse}
+     * (including the tracing overhead of its children), {@code alloc0} the reading of the
+     * allocation counter at the start of the invocation, and {@code trace0} the size of {@link
+     * #traceAllocations} at that time.
+     *
+     * <p>This mirrors the way execution time is computed: the children's allocations and
+     * tracing overheads are popped from {@link #traceAllocations}, and those of this invocation
+     * are pushed on it. Each reading of the allocation counter allocates {@link
+     * #allocationReadSize} bytes, which is subtracted from the measures.
      */
-    static ParseResult run (Parser parser, String string, List<?> list, ParseOptions options)
+    void traceAllocation (int index, long total, long alloc0, int trace0)
     {
-        if (options.wellFormednessCheck)
-        {
-            WellFormednessChecker checker = new WellFormednessChecker();
+        long overheads = 0; // cumulative overheads allocations in children
+        long children = 0;  // total allocations in children (including overheads)
+        int size = traceAllocations.size();
 
-            if (!checker.wellFormed(parser))
-            {
-                StringBuilder b = new StringBuilder();
+        for (int i = trace0; i < size; i += 2) {
+            children  += traceAllocations.pop();
+            overheads += traceAllocations.pop();
+        }
 
-                for (Parser p: checker.leftRecursives) {
-                    b.append("\n- Left-recursive parser cycle detected, passing through parser: ");
+        parseMetrics.selfAllocated[index] += total - children;
 
-                    try { b.append(p); }
-                    catch(StackOverflowError e) {
-                        // Rules names weren't used and getting the parser name recurses infinitely.
-                        b.append(parser.getClass());
-                        b.append(" (infinite recursion in toString)");
-                    }
-                }
+        if (parseMetrics.recursiveInvocations[index] == 0)
+            parseMetrics.totalAllocated[index] += total - overheads;
+
+        // everything allocated between the start of the first and the end of the last reading
+        long footprint = allocatedBytes() - alloc0 + allocationReadSize;
+        overheads += footprint - total;
+        traceAllocations.push(overheads);
+        traceAllocations.push(footprint);
+    }
+
+    // ---------------------------------------------------------------------------------------------
 
-                for (Parser p: checker.nullableRepetitions)
-                    b   .append("\n- Nullable repetition detected: ")
-                        .append(p);
+    /**
+     * Must be called by {@link Memo} (and by custom parsers that create memo entries) whenever
+     * {@code parser} creates the memo entry {@code entry}. Updates {@link #memoEntries} and the
+     * per-parser statistics reported in {@link ParseResult#footprint}.
+     */
+    public void recordMemoEntry (Parser parser, MemoEntry entry)
+    {
+        ++ memoEntries;
+        if (parser != lastMemo) {
+            lastMemo = parser;
+            lastMemoFootprint = memoFootprints.computeIfAbsent(parser, k -> new long[2]);
+        }
+        ++ lastMemoFootprint[0];
+        lastMemoFootprint[1] += ParseFootprint.memoEntryBytes(entry);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, records that an invocation of the parser whose index in {@link
+     * #parseMetrics} is {@code index} succeeded, consuming {@code size} input items.
+     */
+    void traceSuccess (int index, int size)
+    {
+        if (depth == 0) { // the root parser can't be rolled back
+            traceCommit();
+            return;
+        }
+        int i = traceSuccessCount - traceSuccessCommitted;
+        if (i == traceSuccesses.length) {
+            traceSuccesses = Arrays.copyOf(traceSuccesses, i * 2);
+            traceSuccessSizes = Arrays.copyOf(traceSuccessSizes, i * 2);
+        }
+        traceSuccesses[i] = index;
+        traceSuccessSizes[i] = size;
+        ++ traceSuccessCount;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, drops the successful invocations recorded so far, which can no longer be
+     * rolled back.
+     */
+    private void traceCommit()
+    {
+        traceSuccessCommitted = traceSuccessCount;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, records that the successful invocations recorded by {@link #traceSuccess}
+     * since {@link #traceSuccessCount} was equal to {@code count} have been rolled back.
+     */
+    void traceRollback (int count)
+    {
+        // Invocations dropped by a cut aren't counted: the parse is aborted (see CutException).
+        for (int i = Math.max(count, traceSuccessCommitted); i < traceSuccessCount; ++i) {
+            int index = traceSuccesses[i - traceSuccessCommitted];
+            ++ parseMetrics.rolledBackSuccesses[index];
+            parseMetrics.wastedInput[index] += traceSuccessSizes[i - traceSuccessCommitted];
+        }
+        traceSuccessCount = Math.max(count, traceSuccessCommitted);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int countdown()
+    {
+        return profile != null
+            ? profile.countdown()
+            : ParseProfile.countdown(ParseProfile.DEFAULT_INTERVAL);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called by {@link Parser#parse} when {@link #profileCountdown} reaches zero: takes a sample
+     * of {@link #profileStack} for the profile and/or as a JFR event, and returns the new value of
+     * the countdown.
+     */
+    int sample()
+    {
+        boolean sampled = profile == null || profile.sample(this);
+        if (sampled && options.jfr)
+            ParseEvents.ruleSample(this);
+        return countdown();
+    }
+
+    // ---------------------------------------------------------------------------------------------
 
-                throw new MalformedGrammarError(b.toString(), checker);
+    /**
+     * Returns the number of invocations until the next check of the budget: the check interval,
+     * unless fewer invocations remain before exceeding {@link ParseBudget#maxInvocations}, so that
+     * this limit is enforced exactly.
+     */
+    private int budgetChunk()
+    {
+        long remaining = budget.maxInvocations - budgetInvocations;
+        return (int) Math.min(budget.checkInterval - 1, remaining) + 1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Charges the budget of this parse, which replays {@code previous} (see {@link
+     * ParseOptions#replayCallStack}), with the invocations performed and the time used by {@code
+     * previous}.
+     */
+    private void chargeBudget (Parse previous)
+    {
+        budgetStart = previous.budgetStart;
+        budgetInvocations = previous.budgetInvocations + previous.budgetChunk
+            - previous.budgetCountdown;
+        budgetChunk = budgetChunk();
+        budgetCountdown = budgetChunk;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called by {@link Parser#parse} when {@link #budgetCountdown} reaches zero, with the parser
+     * being invoked: throws a {@link BudgetExceededException} if one of the limits of the budget is
+     * exceeded, otherwise resets the countdown.
+     */
+    void checkBudget (Parser parser)
+    {
+        budgetInvocations += budgetChunk;
+        ParseBudget.Limit limit
+            = budgetInvocations > budget.maxInvocations
+                ? ParseBudget.Limit.INVOCATIONS
+            : System.nanoTime() - budgetStart > budget.maxTimeNanos
+                ? ParseBudget.Limit.TIME
+            : log.size() > budget.maxLogSize
+                ? ParseBudget.Limit.LOG_SIZE
+            : stack.size() > budget.maxStackSize
+                ? ParseBudget.Limit.STACK_SIZE
+            : memoEntries > budget.maxMemoEntries
+                ? ParseBudget.Limit.MEMO_ENTRIES
+            : depth > budget.maxDepth
+                ? ParseBudget.Limit.DEPTH
+            : budget.cancelled != null && budget.cancelled.getAsBoolean()
+                ? ParseBudget.Limit.CANCELLED
+                : null;
+
+        if (limit != null)
+            throw new BudgetExceededException(limit, budgetRule(parser), pos, budgetInvocations);
+
+        budgetChunk = budgetChunk();
+        budgetCountdown = budgetChunk;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called by the iterative engine when invoking {@code parser} would exceed {@link
+     * ParseBudget#maxDepth}: returns the exception to throw.
+     */
+    BudgetExceededException depthExceeded (Parser parser)
+    {
+        return new BudgetExceededException(ParseBudget.Limit.DEPTH, budgetRule(parser), pos,
+            budgetInvocations + budgetChunk - budgetCountdown);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the innermost running rule, given the parser being invoked, as reported by {@link
+     * BudgetExceededException#rule}.
+     */
+    private Parser budgetRule (Parser parser)
+    {
+        if (parser.rule() != null)
+            return parser;
+
+        if (!options.trace) {
+            for (int i = depth - 1; i >= 0; --i)
+                if (profileStack[i].rule() != null)
+                    return profileStack[i];
+        }
+        else if (callStack != null) {
+            for (int i = callStack.size() - 1; i >= 0; --i)
+                if (callStack.get(i).parser.rule() != null)
+                    return callStack.get(i).parser;
+        }
+
+        return parser;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Throws a {@link MalformedGrammarError} if the grammar rooted at {@code parser} is not
+     * well-formed. See {@link ParseOptions#wellFormednessCheck}.
+     */
+    private static void checkWellFormed (Parser parser)
+    {
+        WellFormednessChecker checker = new WellFormednessChecker();
+
+        if (!checker.wellFormed(parser))
+        {
+            StringBuilder b = new StringBuilder();
+
+            for (Parser p: checker.leftRecursives) {
+                b.append("\n- Left-recursive parser cycle detected, passing through parser: ");
+
+                try { b.append(p); }
+                catch(StackOverflowError e) {
+                    // Rules names weren't used and getting the parser name recurses infinitely.
+                    b.append(parser.getClass());
+                    b.append(" (infinite recursion in toString)");
+                }
             }
+
+            for (Parser p: checker.nullableRepetitions)
+                b   .append("\n- Nullable repetition detected: ")
+                    .append(p);
+
+            for (Parser p: checker.backtrackedCuts)
+                b   .append("\n- Cut within a parser that backtracks over it: ")
+                    .append(p);
+
+            throw new MalformedGrammarError(b.toString(), checker);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Performs the bookkeeping required when the parse terminates, whether normally or not,
+     * {@code time0} being the time at which it started if it is profiled or monitored.
+     */
+    private void terminate (long time0)
+    {
+        if (options.monitor != null)
+            options.monitor.parseTerminated();
+        for (ParseState<?> state: parseStates)
+            state.discardCache(this);
+        if (profile != null)
+            profile.recordParse(System.nanoTime() - time0);
+        if (trace != null)
+            trace.finish(System.nanoTime());
+        if (parseMetrics != null) {
+            parseMetrics.parses = 1;
+            sharedMetrics.merge(parseMetrics);
         }
+    }
 
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @see Autumn#parse
+     */
+    static ParseResult run (Parser parser, String string, List<?> list, ParseOptions options) {
+        return run(parser, string, list, options, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Implements {@link #run(Parser, String, List, ParseOptions)}. If {@code replayed} is non-null,
+     * this parse replays it, and is charged with the budget it used.
+     */
+    private static ParseResult run (
+            Parser parser, String string, List<?> list, ParseOptions options, Parse replayed)
+    {
+        if (options.wellFormednessCheck)
+            checkWellFormed(parser);
+
+        Object event = options.jfr ? ParseEvents.parseStart() : null;
         Parse parse = new Parse(string, list, options);
+        if (replayed != null && parse.budget != null)
+            parse.chargeBudget(replayed);
         Throwable thrown = null;
         boolean success = false;
+        AutumnMonitor monitor = options.monitor;
+        if (monitor != null) monitor.parseStarted();
+        long time0 = parse.profile != null || monitor != null ? System.nanoTime() : 0;
         try { success = parser.parse(parse); }
         catch (StackOverflowError e) { throw e; } // (1)
+        catch (CutException e) { parse.log.rollback(parse.log.committed()); } // (2)
         catch (Throwable t) { thrown = t; }
-        finally {
-            for (ParseState<?> state: parse.parseStates)
-                state.discardCache(parse);
-        }
+        finally { parse.terminate(time0); }
 
         // (1) wrapped in PotentiallyMalformedGrammarError in Autumn#parse
+        // (2) backtracking before a cut: the parse fails at its furthest error, but the committed
+        //     side effects can't be undone
 
         boolean fullMatch
             = success && parse.pos == parse.inputLength();
@@ -269,6 +780,14 @@ public final class Parse
                     ? thrown.getMessage()
                     : parse.errorMessage;
 
+        BudgetExceededException budgetExceeded = thrown instanceof BudgetExceededException
+            ? (BudgetExceededException) thrown
+            : null;
+
+        // An aborted parse failed: undo its side effects (in particular, empty the value stack).
+        if (budgetExceeded != null)
+            parse.log.rollback(parse.log.committed());
+
         ParserCallStack errorCallStack
             = thrown != null
                 ? parse.callStack
@@ -276,11 +795,19 @@ public final class Parse
                     ? null
                     : parse.errorCallStack;
 
-        return new ParseResult(
+        if (!fullMatch && options.replayCallStack && !options.recordCallStack
+                && budgetExceeded == null) {
+            ParseResult replay = run(parser, string, list, options.replayOptions(), parse);
+            if (replay.budgetExceeded == null)
+                errorCallStack = replay.errorCallStack;
+        }
+
+        ParseResult result = new ParseResult(
             success,
             fullMatch,
             matchSize,
-            thrown,
+            budgetExceeded != null ? null : thrown,
+            budgetExceeded,
             parser,
             options,
             errorPosition,
@@ -288,7 +815,296 @@ public final class Parse
             parse.stack,
             parse.stateData,
             errorCallStack,
-            parse.parseMetrics);
+            parse.sharedMetrics,
+            parse.profile,
+            parse.heatmap,
+            parse.trace,
+            new ParseFootprint(
+                parse.string != null ? ParseFootprint.arrayBytes(4, parse.string.length) : 0,
+                parse.log.peakSize(),
+                parse.stack.peakSize(),
+                parse.memoEntries,
+                parse.memoFootprints,
+                parse.stateData.size(),
+                parse.maxDepth),
+            parse.log.size(),
+            parse.log.peakSize(),
+            parse.stack.peakSize(),
+            parse.memoEntries);
+
+        if (event != null)
+            ParseEvents.parseEnd(event, parse, result);
+
+        if (monitor != null)
+            monitor.parseCompleted(parse, result, System.nanoTime() - time0);
+
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @see Autumn#stream
+     */
+    static StreamResult stream (Parser record, Parser resync, String string, List<?> list,
+            ParseOptions options, Consumer<Object> consumer, Consumer<RecordError> onError)
+    {
+        if (options.wellFormednessCheck) {
+            checkWellFormed(record);
+            if (resync != null) checkWellFormed(resync);
+        }
+
+        Object event = options.jfr ? ParseEvents.parseStart() : null;
+        Parse parse = new Parse(string, list, options);
+        int records = 0;
+        int errors = 0;
+        RecordError error = null;
+        Throwable thrown = null;
+        AutumnMonitor monitor = options.monitor;
+        if (monitor != null) monitor.parseStarted();
+        long time0 = parse.profile != null || monitor != null ? System.nanoTime() : 0;
+
+        try {
+            while (parse.pos < parse.endOfInput)
+            {
+                int start = parse.pos;
+                parse.error = -1;
+                parse.errorMessage = null;
+                parse.errorCallStack = null;
+
+                boolean success;
+                try { success = parse.streamRecord(record) && parse.pos > start; }
+                catch (StackOverflowError e) { throw e; } // (1)
+                catch (CutException e) { success = false; }
+                catch (Throwable t) { thrown = t; break; }
+
+                if (success) {
+                    // Values are delivered after the cut, which guarantees they can't be undone
+                    // (and allows clearing the stack without logging the side effects).
+                    parse.cut();
+                    Object[] values = parse.stack.toArray();
+                    parse.stack.clear();
+                    ++ records;
+                    for (Object value: values)
+                        consumer.accept(value);
+                    continue;
+                }
+
+                int errorOffset = Math.max(parse.error, start);
+                String errorMessage = parse.errorMessage;
+                ParserCallStack errorCallStack = parse.errorCallStack;
+                parse.abandonRecord(start);
+                ++ errors;
+
+                boolean resumed = false;
+                if (resync != null) {
+                    try { resumed = parse.streamRecord(resync) && parse.pos > start; }
+                    catch (StackOverflowError e) { throw e; } // (1)
+                    catch (CutException e) { resumed = false; }
+                    catch (Throwable t) { thrown = t; }
+                    if (resumed) {
+                        parse.cut();
+                        parse.stack.clear();
+                    }
+                    else
+                        parse.abandonRecord(start);
+                }
+
+                RecordError recordError = new RecordError(
+                    start, errorOffset, errorMessage, errorCallStack, resumed ? parse.pos : -1);
+                if (onError != null)
+                    onError.accept(recordError);
+                if (!resumed) {
+                    error = recordError;
+                    break;
+                }
+            }
+        }
+        finally { parse.terminate(time0); }
+
+        // (1) wrapped in PotentiallyMalformedGrammarError in Autumn#stream
+
+        BudgetExceededException budgetExceeded = thrown instanceof BudgetExceededException
+            ? (BudgetExceededException) thrown
+            : null;
+
+        StreamResult result = new StreamResult(
+            error == null && thrown == null,
+            parse.pos,
+            records,
+            errors,
+            error,
+            budgetExceeded != null ? null : thrown,
+            budgetExceeded,
+            parse.log.peakSize(),
+            parse.stack.peakSize(),
+            options);
+
+        if (event != null)
+            ParseEvents.streamEnd(event, parse, record, result);
+
+        if (monitor != null)
+            monitor.streamCompleted(parse, result, System.nanoTime() - time0);
+
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @see Autumn#parseParallel
+     */
+    static ParallelParseResult runParallel (Parser parser, String string, ChunkSplitter splitter,
+            int chunkSize, ParseOptions options, ForkJoinPool pool)
+    {
+        if (options.wellFormednessCheck)
+            checkWellFormed(parser);
+
+        ParseOptions chunkOptions = options.chunkOptions();
+        List<ForkJoinTask<ParseResult>> tasks = new ArrayList<>();
+        List<int[]> sizes = new ArrayList<>(); // size of each chunk in code points
+        int start = 0;
+
+        // Split the input sequentially, submitting each chunk as soon as it is known. The chunk is
+        // only copied out of the input by its task, so that queued tasks don't hold a copy.
+        do {
+            int chunkStart = start;
+            int end = chunkEnd(string, start, chunkSize, splitter);
+            int[] size = new int[1];
+            sizes.add(size);
+            tasks.add(pool.submit(() -> {
+                size[0] = string.codePointCount(chunkStart, end);
+                return run(parser, string.substring(chunkStart, end), null, chunkOptions);
+            }));
+            start = end;
+        }
+        while (start < string.length());
+
+        List<ParseResult> chunks = new ArrayList<>(tasks.size());
+        List<Object> values = new ArrayList<>();
+        int[] chunkStarts = new int[tasks.size()];
+
+        for (int i = 0; i < tasks.size(); ++i) {
+            ParseResult result = tasks.get(i).join();
+            chunks.add(result);
+            values.addAll(result.valueStack);
+            if (i + 1 < chunkStarts.length)
+                chunkStarts[i + 1] = chunkStarts[i] + sizes.get(i)[0]; // visible after join()
+        }
+
+        return new ParallelParseResult(chunks, chunkStarts, values);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the (char) offset at which the chunk starting at {@code start} ends: the first
+     * boundary returned by {@code splitter} after {@code start + chunkSize}, or the end of the
+     * input.
+     */
+    private static int chunkEnd (String string, int start, int chunkSize, ChunkSplitter splitter)
+    {
+        int length = string.length();
+        if (length - start <= chunkSize)
+            return length;
+
+        int end = splitter.boundary(string, start + chunkSize);
+        if (end < 0 || end >= length)
+            return length;
+        if (end < start + chunkSize)
+            throw new IllegalStateException(String.format(
+                "chunk boundary %d precedes the requested position %d", end, start + chunkSize));
+        if (Character.isLowSurrogate(string.charAt(end))
+                && Character.isHighSurrogate(string.charAt(end - 1)))
+            throw new IllegalStateException(
+                "chunk boundary " + end + " splits a surrogate pair");
+        return end;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Implements {@link ChunkSplitter#of}: returns the (char) offset at which ends the first match
+     * of {@code parser} starting at or after the char offset {@code from} in {@code input}, or -1
+     * if there is none.
+     *
+     * <p>The parser is run over windows of the input. A window is doubled if an attempt reaches its
+     * end (as it might have succeeded, or matched more, over a larger window).
+     */
+    static int matchEnd (Parser parser, String input, int from)
+    {
+        int window = 4096;
+        while (from < input.length())
+        {
+            int end = (int) Math.min(input.length(), (long) from + window);
+            if (end < input.length() && Character.isHighSurrogate(input.charAt(end - 1)))
+                ++ end; // don't split a surrogate pair
+            boolean last = end == input.length();
+            String string = input.substring(from, end);
+            Parse parse = new Parse(string, null, ParseOptions.get());
+            boolean truncated = false;
+
+            try {
+                for (int p = 0; p < parse.endOfInput; ++p) {
+                    parse.pos = p;
+                    parse.error = -1;
+                    boolean success = parser.parse(parse);
+                    parse.log.rollback(0);
+                    int length = parse.endOfInput;
+                    if (!last && (parse.error >= length || parse.pos == length)) {
+                        truncated = true;
+                        break;
+                    }
+                    if (success)
+                        return from + string.offsetByCodePoints(0, parse.pos);
+                }
+            }
+            finally {
+                // release the parse state caches held by the window's parse
+                parse.terminate(0);
+            }
+
+            if (truncated)
+                window *= 2;
+            else
+                from = end;
+        }
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Invokes {@code parser} as the root parser of a record of a stream. If it throws, the
+     * position and uncommitted side effects are left as they were.
+     */
+    private boolean streamRecord (Parser parser)
+    {
+        depth = 0;
+        if (callStack != null) callStack.clear();
+        // The entries of the previous record's root invocation are never popped.
+        if (traceTimings != null) clear(traceTimings);
+        if (traceAllocations != null) clear(traceAllocations);
+        return parser.parse(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void clear (ArrayListLong list)
+    {
+        while (list.size() > 0)
+            list.pop();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Undoes the effects of a record of a stream that failed to parse at {@code start}.
+     */
+    private void abandonRecord (int start)
+    {
+        pos = start;
+        log.rollback(log.committed());
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -456,4 +1272,41 @@ public final class Parse
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Declares the current input position final: the parse will not backtrack before it. This is
+     * normally called by the {@link norswap.autumn.parsers.Cut} parser.
+     *
+     * <p>All the side effects applied so far are committed ({@link Log#committed()}), and the
+     * memoizers registered in {@link #stateData} evict their entries that start before the cut
+     * ({@link Memoizer#evictBefore(int)}). This keeps the memory used by the parse bounded when
+     * parsing a long sequence of independent items.
+     *
+     * <p>If a parser invoked before the cut fails afterwards, the parse is aborted and fails with
+     * the furthest error encountered. The committed side effects are not undone: the value stack
+     * of the result retains the values pushed before the cut.
+     */
+    public void cut()
+    {
+        cutPosition = pos;
+        log.commit();
+        if (traceSuccesses != null)
+            traceSuccessCommitted = traceSuccessCount;
+        if (parseMetrics != null)
+            parseMetrics.visitFloor = pos;
+        for (Object data: stateData.values())
+            if (data instanceof Memoizer)
+                ((Memoizer) data).evictBefore(pos);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the position of the last cut (see {@link #cut()}), or 0 if there were none.
+     */
+    public int cutPosition() {
+        return cutPosition;
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
@@ -0,0 +1,255 @@
+package norswap.autumn;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits on the work a parse may perform, set via {@link ParseOptions#budget}. When a limit is
+ * exceeded, the parse is aborted and its result reports the exceeded limit in {@link
+ * ParseResult#budgetExceeded}.
+ *
+ * <p>Use budgets to bound the worst-case latency of parses on untrusted input, which may trigger
+ * exponential backtracking in PEG grammars.
+ *
+ * <p>Except for the number of invocations, which is enforced exactly, the limits are checked
+ * every {@link #checkInterval} parser invocations, so they may be exceeded by the amount of work
+ * performed in that many invocations.
+ *
+ * <p>Use {@link #builder()} to create a budget. All limits are unbounded by default.
+ */
+public final class ParseBudget
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The kind of limit that was exceeded, reported by {@link BudgetExceededException#limit}.
+     */
+    public enum Limit
+    {
+        /** See {@link #maxInvocations}. */
+        INVOCATIONS,
+        /** See {@link #maxTimeNanos}. */
+        TIME,
+        /** See {@link #maxLogSize}. */
+        LOG_SIZE,
+        /** See {@link #maxStackSize}. */
+        STACK_SIZE,
+        /** See {@link #maxMemoEntries}. */
+        MEMO_ENTRIES,
+        /** See {@link #maxDepth}. */
+        DEPTH,
+        /** See {@link #cancelled}. */
+        CANCELLED
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum number of parser invocations.
+     */
+    public final long maxInvocations;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum duration of the parse, in nanoseconds.
+     */
+    public final long maxTimeNanos;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum size of the side-effect log ({@link Parse#log}).
+     */
+    public final int maxLogSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum size of the value stack ({@link Parse#stack}).
+     */
+    public final int maxStackSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum number of memo entries created during the parse ({@link Parse#memoEntries}).
+     */
+    public final int maxMemoEntries;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum nesting depth of parser invocations. This is enforced exactly for the parsers run by
+     * the iterative engine ({@link ParseOptions#iterative}), where it replaces the limit imposed by
+     * the size of the Java stack. Otherwise, it is checked like the other limits.
+     */
+    public final int maxDepth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, a cooperative cancellation token: the parse is aborted as soon as it returns
+     * true. It is called from the parsing thread, so it must be thread-safe if it depends on
+     * state set by other threads (e.g. reads a volatile field or an {@code AtomicBoolean}).
+     */
+    public final BooleanSupplier cancelled;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parser invocations between two checks of the limits. 1024 by default, which
+     * makes the overhead of the checks negligible.
+     */
+    public final int checkInterval;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseBudget (long maxInvocations, long maxTimeNanos, int maxLogSize, int maxStackSize,
+                         int maxMemoEntries, int maxDepth, BooleanSupplier cancelled,
+                         int checkInterval)
+    {
+        this.maxInvocations = maxInvocations;
+        this.maxTimeNanos = maxTimeNanos;
+        this.maxLogSize = maxLogSize;
+        this.maxStackSize = maxStackSize;
+        this.maxMemoEntries = maxMemoEntries;
+        this.maxDepth = maxDepth;
+        this.cancelled = cancelled;
+        this.checkInterval = checkInterval;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a builder for a budget whose limits are all unbounded.
+     */
+    public static ParseBudgetBuilder builder() {
+        return new ParseBudgetBuilder();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return "ParseBudget{" +
+            "max invocations: " + maxInvocations +
+            ", max time: " + Duration.ofNanos(maxTimeNanos) +
+            ", max log size: " + maxLogSize +
+            ", max stack size: " + maxStackSize +
+            ", max memo entries: " + maxMemoEntries +
+            ", max depth: " + maxDepth +
+            ", cancellable: " + (cancelled != null) +
+            ", check interval: " + checkInterval +
+            '}';
+    }
+
+    // =============================================================================================
+
+    /**
+     * See {@link ParseBudget}.
+     */
+    public static final class ParseBudgetBuilder
+    {
+        private long maxInvocations = Long.MAX_VALUE;
+        private long maxTimeNanos = Long.MAX_VALUE;
+        private int maxLogSize = Integer.MAX_VALUE;
+        private int maxStackSize = Integer.MAX_VALUE;
+        private int maxMemoEntries = Integer.MAX_VALUE;
+        private int maxDepth = Integer.MAX_VALUE;
+        private BooleanSupplier cancelled = null;
+        private int checkInterval = 1024;
+
+        private ParseBudgetBuilder() {}
+
+        /**
+         * Sets {@link ParseBudget#maxInvocations}.
+         */
+        public ParseBudgetBuilder maxInvocations (long max)
+        {
+            if (max < 0) throw new IllegalArgumentException("negative limit: " + max);
+            maxInvocations = max;
+            return this;
+        }
+
+        /**
+         * Sets {@link ParseBudget#maxTimeNanos}.
+         */
+        public ParseBudgetBuilder maxTime (Duration max)
+        {
+            if (max.isNegative()) throw new IllegalArgumentException("negative limit: " + max);
+            maxTimeNanos = max.toNanos();
+            return this;
+        }
+
+        /**
+         * Sets {@link ParseBudget#maxLogSize}.
+         */
+        public ParseBudgetBuilder maxLogSize (int max)
+        {
+            if (max < 0) throw new IllegalArgumentException("negative limit: " + max);
+            maxLogSize = max;
+            return this;
+        }
+
+        /**
+         * Sets {@link ParseBudget#maxStackSize}.
+         */
+        public ParseBudgetBuilder maxStackSize (int max)
+        {
+            if (max < 0) throw new IllegalArgumentException("negative limit: " + max);
+            maxStackSize = max;
+            return this;
+        }
+
+        /**
+         * Sets {@link ParseBudget#maxMemoEntries}.
+         */
+        public ParseBudgetBuilder maxMemoEntries (int max)
+        {
+            if (max < 0) throw new IllegalArgumentException("negative limit: " + max);
+            maxMemoEntries = max;
+            return this;
+        }
+
+        /**
+         * Sets {@link ParseBudget#maxDepth}.
+         */
+        public ParseBudgetBuilder maxDepth (int max)
+        {
+            if (max < 0) throw new IllegalArgumentException("negative limit: " + max);
+            maxDepth = max;
+            return this;
+        }
+
+        /**
+         * Sets {@link ParseBudget#cancelled}.
+         */
+        public ParseBudgetBuilder cancelled (BooleanSupplier cancelled)
+        {
+            this.cancelled = cancelled;
+            return this;
+        }
+
+        /**
+         * Sets {@link ParseBudget#checkInterval}.
+         */
+        public ParseBudgetBuilder checkInterval (int interval)
+        {
+            if (interval <= 0) throw new IllegalArgumentException("non-positive interval");
+            checkInterval = interval;
+            return this;
+        }
+
+        /**
+         * Builds the budget.
+         */
+        public ParseBudget get()
+        {
+            return new ParseBudget(maxInvocations, maxTimeNanos, maxLogSize, maxStackSize,
+                maxMemoEntries, maxDepth, cancelled, checkInterval);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
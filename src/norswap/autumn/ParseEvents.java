@@ -0,0 +1,57 @@
+package norswap.autumn;
+
+/**
+ * Emits Java Flight Recorder events for {@link ParseOptions#jfr}.
+ *
+ * <p>This is the Java 8 version of this class, which does nothing. The Java 11+ version (in {@code
+ * src-java11}, packaged in the multi-release section of the jar) defines and emits the events.
+ */
+final class ParseEvents
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseEvents() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether JFR events can be emitted.
+     */
+    static boolean available() {
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called before a parse starts. Returns an object to pass to {@link #parseEnd}, or null if no
+     * event should be emitted.
+     */
+    static Object parseStart() {
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called after a parse ends, with the object returned by {@link #parseStart()}.
+     */
+    static void parseEnd (Object event, Parse parse, ParseResult result) {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called after a stream ends, with the object returned by {@link #parseStart()} and the
+     * parser used to parse the records.
+     */
+    static void streamEnd (Object event, Parse parse, Parser record, StreamResult result) {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a sample of {@link Parse#profileStack} is taken.
+     */
+    static void ruleSample (Parse parse) {}
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,195 @@
+package norswap.autumn;
+
+import norswap.autumn.memo.MemoEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A summary of the memory used by a parse, available via {@link ParseResult#footprint}. Its
+ * collection is cheap, so it is always available.
+ *
+ * <p>Byte sizes are estimates, assuming a 64-bit JVM with compressed references (12-byte object
+ * headers, 4-byte references, 8-byte alignment). They account for the objects allocated by Autumn
+ * itself, not for the objects (e.g. AST nodes) created by the grammar's actions.
+ *
+ * <p>Use this to size heaps: the memory a parse holds at its peak is dominated by the input buffer,
+ * the memo entries (all of which are retained until the end of the parse if the memoizer is a
+ * {@link norswap.autumn.memo.MemoTable}), and the log and value stack.
+ */
+public final class ParseFootprint
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Estimated size of the input buffer: the array of code points for string inputs, or 0 for
+     * list inputs (which are not copied).
+     */
+    public final long inputBytes;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The maximum size reached by the side-effect log ({@link Parse#log}).
+     */
+    public final int peakLogSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The maximum size reached by the value stack ({@link Parse#stack}).
+     */
+    public final int peakStackSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Total number of memo entries created during the parse (cf. {@link Parse#memoEntries}).
+     */
+    public final int memoEntries;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Estimated total size of the memo entries created during the parse (see {@link
+     * MemoFootprint#bytes}).
+     */
+    public final long memoBytes;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * For each memoizing parser that created memo entries, the number and size of these entries,
+     * sorted by decreasing size.
+     */
+    public final Map<Parser, MemoFootprint> memos;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parse states used during the parse (entries of {@link Parse#stateData}).
+     */
+    public final int stateEntries;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum number of parsers running at the same time (i.e. the maximum recursion depth of
+     * the parse), which is what determines the risk of stack overflows.
+     */
+    public final int maxDepth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number and estimated size of the memo entries created by a memoizing parser.
+     */
+    public static final class MemoFootprint
+    {
+        public final Parser parser;
+
+        /** Number of memo entries created. */
+        public final long entries;
+
+        /**
+         * Estimated size of the memo entries (including the lists holding their side effects, but
+         * excluding the memoizer's own storage).
+         */
+        public final long bytes;
+
+        MemoFootprint (Parser parser, long entries, long bytes)
+        {
+            this.parser = parser;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        @Override public String toString() {
+            return "MemoFootprint{" +
+                "parser: " + parser +
+                ", entries: " + String.format("%,d", entries) +
+                ", bytes: " + String.format("%,d", bytes) +
+                '}';
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    ParseFootprint (long inputBytes, int peakLogSize, int peakStackSize, int memoEntries,
+                    Map<Parser, long[]> memos, int stateEntries, int maxDepth)
+    {
+        this.inputBytes = inputBytes;
+        this.peakLogSize = peakLogSize;
+        this.peakStackSize = peakStackSize;
+        this.memoEntries = memoEntries;
+        this.stateEntries = stateEntries;
+        this.maxDepth = maxDepth;
+
+        if (memos.isEmpty()) {
+            this.memos = Collections.emptyMap();
+            this.memoBytes = 0;
+            return;
+        }
+
+        List<MemoFootprint> list = new ArrayList<>();
+        long bytes = 0;
+        for (Map.Entry<Parser, long[]> it: memos.entrySet()) {
+            list.add(new MemoFootprint(it.getKey(), it.getValue()[0], it.getValue()[1]));
+            bytes += it.getValue()[1];
+        }
+        list.sort(Comparator.comparingLong((MemoFootprint it) -> it.bytes).reversed());
+        LinkedHashMap<Parser, MemoFootprint> map = new LinkedHashMap<>();
+        for (MemoFootprint it: list) map.put(it.parser, it);
+        this.memos = Collections.unmodifiableMap(map);
+        this.memoBytes = bytes;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the estimated size of an array of {@code length} elements of {@code size} bytes.
+     */
+    static long arrayBytes (int size, int length) {
+        return align(16 + (long) size * length);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static long align (long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the estimated size of the memo entry: the entry itself (header, two ints and three
+     * references), and if it has side effects, the list holding them (an {@code ArrayList} and its
+     * array).
+     */
+    static long memoEntryBytes (MemoEntry entry)
+    {
+        int effects = entry.delta.size();
+        return effects == 0 ? 32 : 32 + 24 + arrayBytes(4, effects);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("input buffer: %,d bytes\n", inputBytes));
+        b.append(String.format("peak log size: %,d\n", peakLogSize));
+        b.append(String.format("peak stack size: %,d\n", peakStackSize));
+        b.append(String.format("memo entries: %,d (%,d bytes)\n", memoEntries, memoBytes));
+        for (MemoFootprint it: memos.values())
+            b.append(String.format("    %s: %,d (%,d bytes)\n", it.parser, it.entries, it.bytes));
+        b.append(String.format("parse states: %,d\n", stateEntries));
+        b.append(String.format("max depth: %,d\n", maxDepth));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,302 @@
+package norswap.autumn;
+
+import norswap.autumn.positions.LineMap;
+import norswap.autumn.positions.LineMapString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Counts parser invocations per input position, in order to find where in the input the parser
+ * thrashes. Produced by a parse if the {@link ParseOptions#heatmap} option is set, and available
+ * via {@link ParseResult#heatmap}.
+ *
+ * <p>The counts are held in a primitive array ({@link #invocations}) sized to the input. In
+ * addition, the heatmap records the invocations of named parsers (rules) per line (for string
+ * inputs) or per input object (for list inputs), so that the rules responsible for a hot line can
+ * be reported.
+ *
+ * <p>Positions are mapped to lines and columns through a {@link LineMap}, which must map the same
+ * input as the parse: use {@link #hotLines(LineMap, int)} to retrieve the hottest lines, {@link
+ * #csv(LineMap, int)} to get them in CSV format, or {@link #listing(LineMapString, int)} to get an
+ * annotated source listing.
+ */
+public final class ParseHeatmap
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parser invocations at each input position (including the end of input position).
+     */
+    public final int[] invocations;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * For string inputs, the position of the first code point of each line, null for list inputs.
+     */
+    private final int[] lineStarts;
+
+    /**
+     * For each line (string inputs) or input object (list inputs), the number of invocations of
+     * each named parser, or null if there were none.
+     */
+    private final HashMap<Parser, int[]>[] unitRules;
+
+    /** Unit (line) containing the last recorded position, for string inputs. */
+    private int unit = 0;
+
+    /** Start of {@link #unit}. */
+    private int unitStart = 0;
+
+    /** End of {@link #unit} (exclusive). */
+    private int unitEnd = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    ParseHeatmap (Parse parse)
+    {
+        this.invocations = new int[parse.endOfInput + 1];
+
+        if (parse.string != null) {
+            int lines = 1;
+            for (int c: parse.string)
+                if (c == '\n') ++ lines;
+            lineStarts = new int[lines];
+            for (int i = 0, line = 1; i < parse.string.length; ++i)
+                if (parse.string[i] == '\n')
+                    lineStarts[line++] = i + 1;
+            unitRules = newUnitRules(lines);
+        }
+        else {
+            lineStarts = null;
+            unitRules = newUnitRules(invocations.length);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic array creation
+    private static HashMap<Parser, int[]>[] newUnitRules (int size) {
+        return new HashMap[size];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the line (string input) or input object (list input) index for the position.
+     */
+    private int unit (int pos)
+    {
+        if (lineStarts == null)
+            return pos;
+        if (unitStart <= pos && pos < unitEnd)
+            return unit;
+
+        int index = Arrays.binarySearch(lineStarts, pos);
+        unit = index >= 0 ? index : -index - 2;
+        unitStart = lineStarts[unit];
+        unitEnd = unit + 1 < lineStarts.length ? lineStarts[unit + 1] : Integer.MAX_VALUE;
+        return unit;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records an invocation of {@code parser} at {@code pos}.
+     */
+    void record (Parser parser, int pos)
+    {
+        ++ invocations[pos];
+        if (parser.rule() == null) return;
+        int unit = unit(pos);
+        HashMap<Parser, int[]> rules = unitRules[unit];
+        if (rules == null) unitRules[unit] = rules = new HashMap<>();
+        ++ rules.computeIfAbsent(parser, k -> new int[1])[0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Total number of recorded parser invocations.
+     */
+    public long totalInvocations()
+    {
+        long total = 0;
+        for (int count: invocations) total += count;
+        return total;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Information about an input line, as returned by {@link #hotLines(LineMap, int)}.
+     */
+    public static final class HotLine
+    {
+        /** Line index, as per the {@link LineMap}. */
+        public final int line;
+
+        /** Total number of invocations at positions on this line. */
+        public final long invocations;
+
+        /** The column of the position on the line with the most invocations. */
+        public final int hottestColumn;
+
+        /** Number of invocations at {@link #hottestColumn}. */
+        public final int hottestColumnInvocations;
+
+        /** Named parsers invoked on the line, by decreasing number of invocations. */
+        public final Map<String, Integer> rules;
+
+        HotLine (int line, long invocations, int hottestColumn, int hottestColumnInvocations,
+                 Map<String, Integer> rules)
+        {
+            this.line = line;
+            this.invocations = invocations;
+            this.hottestColumn = hottestColumn;
+            this.hottestColumnInvocations = hottestColumnInvocations;
+            this.rules = rules;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of invocations per line, indexed by line index (as per {@code map}).
+     */
+    private long[] lineInvocations (LineMap map)
+    {
+        int lastLine = map.lineFrom(invocations.length - 1);
+        long[] counts = new long[lastLine + 1];
+        for (int pos = 0; pos < invocations.length; ++pos)
+            if (invocations[pos] > 0)
+                counts[map.lineFrom(pos)] += invocations[pos];
+        return counts;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the named parsers invoked on the line, by decreasing number of invocations.
+     */
+    private Map<String, Integer> lineRules (LineMap map, int line)
+    {
+        HashMap<String, Integer> rules = new HashMap<>();
+        int start = map.offsetFor(line);
+        int end = Math.min(map.endOffsetFor(line), invocations.length - 1);
+        int first = unit(start), last = unit(end);
+        for (int u = first; u <= last; ++u) {
+            HashMap<Parser, int[]> unitMap = unitRules[u];
+            if (unitMap != null)
+                unitMap.forEach((k, v) -> rules.merge(k.rule(), v[0], Integer::sum));
+        }
+        LinkedHashMap<String, Integer> sorted = new LinkedHashMap<>();
+        rules.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+            .forEach(it -> sorted.put(it.getKey(), it.getValue()));
+        return sorted;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns information about the (at most) {@code n} lines with the most parser invocations,
+     * by decreasing number of invocations, mapping positions with {@code map}.
+     */
+    public List<HotLine> hotLines (LineMap map, int n)
+    {
+        long[] counts = lineInvocations(map);
+        List<Integer> lines = new ArrayList<>();
+        for (int line = 0; line < counts.length; ++line)
+            if (counts[line] > 0) lines.add(line);
+        lines.sort(Comparator.comparingLong((Integer line) -> counts[line]).reversed());
+
+        List<HotLine> out = new ArrayList<>();
+        for (int line: lines.subList(0, Math.min(n, lines.size())))
+        {
+            int start = map.offsetFor(line);
+            int end = Math.min(map.endOffsetFor(line), invocations.length - 1);
+            int hottest = start;
+            for (int pos = start; pos <= end; ++pos)
+                if (invocations[pos] > invocations[hottest])
+                    hottest = pos;
+
+            out.add(new HotLine(line, counts[line], map.columnFrom(hottest), invocations[hottest],
+                lineRules(map, line)));
+        }
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a CSV table of the (at most) {@code n} lines with the most parser invocations,
+     * by decreasing number of invocations, mapping positions with {@code map}.
+     *
+     * <p>Columns: line, invocations, share of all invocations (%), hottest column, invocations at
+     * that column, rules invoked on the line (most invoked first, as {@code rule=count} separated
+     * by spaces, at most 10).
+     */
+    public String csv (LineMap map, int n)
+    {
+        double total = Math.max(totalInvocations(), 1);
+        StringBuilder b = new StringBuilder(
+            "line,invocations,percent,hottest_column,hottest_column_invocations,rules\n");
+        for (HotLine line: hotLines(map, n))
+            b.append(String.format("%d,%d,%.2f,%d,%d,\"%s\"\n",
+                line.line, line.invocations, 100 * line.invocations / total,
+                line.hottestColumn, line.hottestColumnInvocations, rulesString(line, 10)));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String rulesString (HotLine line, int max)
+    {
+        return line.rules.entrySet().stream()
+            .limit(max)
+            .map(it -> it.getKey() + "=" + it.getValue())
+            .collect(Collectors.joining(" "));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns an annotated listing of the source, where each line is prefixed with the number of
+     * parser invocations on that line, and the {@code n} lines with the most invocations are
+     * marked ({@code >>}) and followed by a line indicating the hottest column and the most invoked
+     * rules.
+     */
+    public String listing (LineMapString map, int n)
+    {
+        long[] counts = lineInvocations(map);
+        HashMap<Integer, HotLine> hot = new HashMap<>();
+        for (HotLine line: hotLines(map, n))
+            hot.put(line.line, line);
+
+        int width = Long.toString(Arrays.stream(counts).max().orElse(0)).length();
+        StringBuilder b = new StringBuilder();
+
+        for (int line = 1; line < counts.length; ++line)
+        {
+            HotLine hotLine = hot.get(line);
+            String text = map.string.substring(map.offsetFor(line), map.endOffsetFor(line));
+            b.append(String.format("%" + width + "d %s %s\n",
+                counts[line], hotLine != null ? ">>" : "  ", text));
+            if (hotLine != null)
+                b.append(String.format("%" + width + "s    ^ column %d (%,d invocations): %s\n",
+                    "", hotLine.hottestColumn, hotLine.hottestColumnInvocations,
+                    rulesString(hotLine, 5)));
+        }
+
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
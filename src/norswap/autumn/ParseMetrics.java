@@ -1,6 +1,7 @@
 package norswap.autumn;
 
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
@@ -9,36 +10,436 @@ import java.util.Map;
  * A set of per-parser performance metrics ({@link ParserMetrics}), which are collected
  * when a parse is running in tracing mode ({@link ParseOptions#trace}).
  *
- * <p>Currently just a wrapper around a {@code Map[Parser, ParserMetrics]}, along with a useful
- * {@code toString()} method that sorts the parser by self time.
+ * <p>The metrics are stored in primitive arrays indexed by a dense index local to this object,
+ * which is mapped from the parser id ({@link Parser#id()}) by a small open-addressing table, so
+ * that recording them doesn't require a map lookup (with boxing and hashing of the parser) for
+ * each parser invocation, and so that the arrays only hold the parsers that were actually invoked
+ * (and not all the parsers created so far in the JVM). {@link #get(Parser)}
+ * and {@link #metrics()} return copies of the metrics of a parser as a {@link ParserMetrics}. The
+ * class also has a useful {@code toString()} method that sorts the parser by self time, and a
+ * {@link #wasteReport()} method that sorts them by amount of work wasted to backtracking.
+ *
+ * <p>This class is thread-safe: the same instance may be shared by parses running concurrently
+ * (e.g. by returning it from the {@link ParseOptions#metrics} supplier). Each parse collects its
+ * metrics into a private instance, which is merged ({@link #merge(ParseMetrics)}) into the shared
+ * instance at the end of the parse, so tracing itself isn't slowed down by synchronization. For the
+ * same reason, the metrics of a parse are only visible once it completes.
+ *
+ * <p>Use {@link #snapshot()} to get a copy of the metrics keyed by parser name, which can be
+ * exported (to CSV or JSON) and compared to another snapshot.
  */
 public final class ParseMetrics
 {
     // ---------------------------------------------------------------------------------------------
 
-    public final Map<Parser, ParserMetrics> metrics = new HashMap<>();
+    // All arrays are indexed by the index of the parser in `parsers` (see register), and have the
+    // same length. The fields mirror those of ParserMetrics (see there for documentation). Only
+    // the first `size` entries are meaningful.
+
+    Parser[] parsers;
+    int size = 0;
+    int[] invocations;
+    long[] selfTime;
+    long[] totalTime;
+    long[] selfAllocated;
+    long[] totalAllocated;
+    int[] rolledBackSuccesses;
+    long[] wastedInput;
+    long[] undoneLogEntries;
+    int[] revisits;
+
+    /**
+     * Running counter of the number of in-progress invocations (so the parser is recursing when
+     * > 1). Only used in the per-parse metrics (see {@link Parse#parseMetrics}).
+     */
+    int[] recursiveInvocations;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum number of (parser, position) pairs retained in {@link #visits}.
+     */
+    private static final int MAX_VISITS = 1 << 20;
+
+    /**
+     * Open-addressing set of the (parser index, position) pairs at which parsers have been invoked
+     * during the current parse, used to compute {@link ParserMetrics#revisits}. A pair is stored as
+     * {@code (index << 32 | pos) + 1}, 0 marking empty slots. Only used in the per-parse metrics
+     * (see {@link Parse#parseMetrics}), and allocated on first use.
+     *
+     * <p>A single set is shared by all parsers, so its size is proportional to the number of
+     * distinct invocations, not to the number of parsers times the input size. Before it grows,
+     * the pairs whose position precedes the last cut ({@link #visitFloor}) are dropped, as the
+     * parse can't revisit them. If it still holds {@link #MAX_VISITS} pairs, it is cleared, so
+     * that revisits are under-counted rather than the memory growing without bound.
+     */
+    private long[] visits;
+    private int visitCount = 0;
+
+    /**
+     * Position of the last cut of the parse (see {@link Parse#cut()}).
+     */
+    int visitFloor = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Open-addressing table mapping parser ids to indices: {@code indices[i]} is the index of the
+     * parser whose id is {@code ids[i] - 1}, or the slot is empty if {@code ids[i] == 0}.
+     */
+    private int[] ids = new int[32];
+    private int[] indices = new int[32];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parses whose metrics were merged into this object.
+     */
+    long parses = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public ParseMetrics() {
+        // The arrays grow as parsers are registered (see register).
+        allocate(16);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void allocate (int size)
+    {
+        parsers = new Parser[size];
+        invocations = new int[size];
+        selfTime = new long[size];
+        totalTime = new long[size];
+        selfAllocated = new long[size];
+        totalAllocated = new long[size];
+        rolledBackSuccesses = new int[size];
+        wastedInput = new long[size];
+        undoneLogEntries = new long[size];
+        revisits = new int[size];
+        recursiveInvocations = new int[size];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Grows the arrays so that they can hold at least {@code size} parsers.
+     */
+    private void grow (int size)
+    {
+        size = Math.max(size, Math.max(16, parsers.length * 2));
+        parsers = Arrays.copyOf(parsers, size);
+        invocations = Arrays.copyOf(invocations, size);
+        selfTime = Arrays.copyOf(selfTime, size);
+        totalTime = Arrays.copyOf(totalTime, size);
+        selfAllocated = Arrays.copyOf(selfAllocated, size);
+        totalAllocated = Arrays.copyOf(totalAllocated, size);
+        rolledBackSuccesses = Arrays.copyOf(rolledBackSuccesses, size);
+        wastedInput = Arrays.copyOf(wastedInput, size);
+        undoneLogEntries = Arrays.copyOf(undoneLogEntries, size);
+        revisits = Arrays.copyOf(revisits, size);
+        recursiveInvocations = Arrays.copyOf(recursiveInvocations, size);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of {@code parser} in the arrays, adding it if it isn't registered yet.
+     */
+    int register (Parser parser)
+    {
+        int key = parser.id() + 1;
+        int mask = ids.length - 1;
+        for (int i = slot(key, mask);; i = (i + 1) & mask) {
+            if (ids[i] == key) return indices[i];
+            if (ids[i] != 0) continue;
+            if (size == parsers.length) grow(size + 1);
+            parsers[size] = parser;
+            ids[i] = key;
+            indices[i] = size;
+            if (++ size * 2 > ids.length) rehash();
+            return size - 1;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of {@code parser} in the arrays, or -1 if it isn't registered.
+     */
+    private int index (Parser parser)
+    {
+        int key = parser.id() + 1;
+        int mask = ids.length - 1;
+        for (int i = slot(key, mask); ids[i] != 0; i = (i + 1) & mask)
+            if (ids[i] == key) return indices[i];
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static int slot (int key, int mask)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Doubles the size of the id table.
+     */
+    private void rehash()
+    {
+        int[] ids = new int[this.ids.length * 2];
+        int[] indices = new int[ids.length];
+        int mask = ids.length - 1;
+        for (int j = 0; j < size; ++j) {
+            int key = parsers[j].id() + 1;
+            int i = slot(key, mask);
+            while (ids[i] != 0) i = (i + 1) & mask;
+            ids[i] = key;
+            indices[i] = j;
+        }
+        this.ids = ids;
+        this.indices = indices;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records that the parser with the given index is invoked at position {@code pos}, incrementing
+     * its revisit count if it was already invoked at that position. Only called on the per-parse
+     * metrics (see {@link Parse#parseMetrics}).
+     */
+    void visit (int index, int pos)
+    {
+        if (visits == null) visits = new long[64];
+        long key = ((long) index << 32 | pos) + 1;
+        int mask = visits.length - 1;
+        int i = slot(key, mask);
+        for (; visits[i] != 0; i = (i + 1) & mask) {
+            if (visits[i] == key) {
+                ++ revisits[index];
+                return;
+            }
+        }
+        visits[i] = key;
+        if (++ visitCount * 2 > visits.length) resizeVisits();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static int slot (long key, int mask) {
+        return slot((int) (key ^ (key >>> 32)), mask);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when {@link #visits} is half full: drops the pairs before {@link #visitFloor}, then
+     * doubles the table if it is still more than a quarter full, or clears it if it holds
+     * {@link #MAX_VISITS} pairs.
+     */
+    private void resizeVisits()
+    {
+        long[] old = visits;
+        int count = 0;
+        for (long key: old)
+            if (key != 0 && (int) (key - 1) >= visitFloor)
+                ++ count;
+
+        if (count >= MAX_VISITS) {
+            visits = new long[64];
+            visitCount = 0;
+            return;
+        }
+
+        visits = new long[count * 4 > old.length ? old.length * 2 : old.length];
+        visitCount = count;
+        int mask = visits.length - 1;
+        for (long key: old) {
+            if (key == 0 || (int) (key - 1) < visitFloor) continue;
+            int i = slot(key, mask);
+            while (visits[i] != 0) i = (i + 1) & mask;
+            visits[i] = key;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parses whose metrics were merged into this object.
+     */
+    public synchronized long parses() {
+        return parses;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the metrics in {@code other} (which must not be modified concurrently) to this object.
+     *
+     * <p>This is called at the end of each traced parse, but can also be used to aggregate metrics
+     * collected separately, e.g. one {@link ParseMetrics} per thread.
+     */
+    public synchronized void merge (ParseMetrics other)
+    {
+        if (other == this) throw new IllegalArgumentException("cannot merge metrics into itself");
+        parses += other.parses;
+        for (int j = 0; j < other.size; ++j) {
+            int i = register(other.parsers[j]);
+            invocations[i] += other.invocations[j];
+            selfTime[i] += other.selfTime[j];
+            totalTime[i] += other.totalTime[j];
+            selfAllocated[i] += other.selfAllocated[j];
+            totalAllocated[i] += other.totalAllocated[j];
+            rolledBackSuccesses[i] += other.rolledBackSuccesses[j];
+            wastedInput[i] += other.wastedInput[j];
+            undoneLogEntries[i] += other.undoneLogEntries[j];
+            revisits[i] += other.revisits[j];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ParserMetrics row (int i)
+    {
+        ParserMetrics metrics = new ParserMetrics(parsers[i]);
+        metrics.invocations = invocations[i];
+        metrics.selfTime = selfTime[i];
+        metrics.totalTime = totalTime[i];
+        metrics.selfAllocated = selfAllocated[i];
+        metrics.totalAllocated = totalAllocated[i];
+        metrics.rolledBackSuccesses = rolledBackSuccesses[i];
+        metrics.wastedInput = wastedInput[i];
+        metrics.undoneLogEntries = undoneLogEntries[i];
+        metrics.revisits = revisits[i];
+        return metrics;
+    }
 
     // ---------------------------------------------------------------------------------------------
 
-    @Override public String toString()
+    /**
+     * Returns a copy of the metrics of the given parser, or null if it hasn't been invoked in the
+     * parses whose metrics were collected into this object.
+     */
+    public synchronized ParserMetrics get (Parser parser)
     {
-        StringBuilder b = new StringBuilder(String.format("%40s | %-16s | %-16s | %s\n",
-            "PARSER", "SELF TIME", "TOTAL TIME", "INVOCATIONS"));
+        int i = index(parser);
+        return i >= 0 ? row(i) : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a map from the parsers that have been invoked in the parses whose metrics were
+     * collected into this object to a copy of their metrics.
+     */
+    public synchronized Map<Parser, ParserMetrics> metrics()
+    {
+        HashMap<Parser, ParserMetrics> map = new HashMap<>();
+        for (int i = 0; i < size; ++i)
+            map.put(parsers[i], row(i));
+        return map;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a copy of the current metrics, keyed by parser name.
+     */
+    public synchronized MetricsSnapshot snapshot() {
+        return MetricsSnapshot.of(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Shorthand for {@code snapshot().toCsv()}, see {@link MetricsSnapshot#toCsv()}.
+     */
+    public String toCsv() {
+        return snapshot().toCsv();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Shorthand for {@code snapshot().toJson()}, see {@link MetricsSnapshot#toJson()}.
+     */
+    public String toJson() {
+        return snapshot().toJson();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a table of the parsers, sorted by decreasing self time. If allocations were traced
+     * ({@link ParseOptions#traceAllocations}), the table also includes the self and total number of
+     * bytes allocated by each parser.
+     */
+    @Override public synchronized String toString()
+    {
+        Map<Parser, ParserMetrics> metrics = metrics();
+        boolean allocations = metrics.values().stream().anyMatch(it -> it.totalAllocated != 0);
+
+        StringBuilder b = new StringBuilder(String.format("%40s | %-16s | %-16s | ",
+            "PARSER", "SELF TIME", "TOTAL TIME"));
+        if (allocations)
+            b.append(String.format("%-16s | %-16s | ", "SELF ALLOC", "TOTAL ALLOC"));
+        b.append("INVOCATIONS\n");
 
         metrics.entrySet().stream()
             .sorted(Comparator.comparingLong(
                 (Map.Entry<Parser, ParserMetrics> it) -> it.getValue().selfTime).reversed())
             .forEach(it -> {
                 ParserMetrics v = it.getValue();
-                b.append(String.format("%40s | %-16s | %-16s | %,d\n",
+                b.append(String.format("%40s | %-16s | %-16s | ",
                     it.getKey(),
                     Duration.ofNanos(v.selfTime),
-                    Duration.ofNanos(v.totalTime),
-                    v.invocations));
+                    Duration.ofNanos(v.totalTime)));
+                if (allocations)
+                    b.append(String.format("%,16d | %,16d | ", v.selfAllocated, v.totalAllocated));
+                b.append(String.format("%,d\n", v.invocations));
             });
 
         return b.toString();
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a table of the parsers that wasted work to backtracking, sorted by decreasing amount
+     * of input consumed then discarded ({@link ParserMetrics#wastedInput}), then by number of
+     * revisits ({@link ParserMetrics#revisits}).
+     *
+     * <p>Parsers at the top of this list are the ones worth memoizing, left-factoring, or whose
+     * alternatives are worth reordering.
+     */
+    public synchronized String wasteReport()
+    {
+        StringBuilder b = new StringBuilder(String.format(
+            "%40s | %-12s | %-12s | %-12s | %-12s | %s\n",
+            "PARSER", "WASTED INPUT", "ROLLED BACK", "UNDONE LOG", "REVISITS", "INVOCATIONS"));
+
+        metrics().values().stream()
+            .filter(it -> it.wastedInput > 0 || it.revisits > 0 || it.undoneLogEntries > 0)
+            .sorted(Comparator
+                .comparingLong((ParserMetrics it) -> it.wastedInput)
+                .thenComparingInt(it -> it.revisits)
+                .reversed())
+            .forEach(it -> b.append(String.format(
+                "%40s | %,12d | %,12d | %,12d | %,12d | %,d\n",
+                it.parser,
+                it.wastedInput,
+                it.rolledBackSuccesses,
+                it.undoneLogEntries,
+                it.revisits,
+                it.invocations)));
+
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
@@ -18,8 +18,8 @@ import static norswap.utils.Util.cast;
  * ParseOptionsBuilder#get()} to create the option set.
  *
  * <p>Instances may usually be reused, but beware that {@link #metrics} return an object that is
- * shared accross parses. For one, this object is not thread-safe, and for two, sharing it might not
- * be what you want.
+ * shared accross parses (including concurrent parses, which is safe), which might not be what you
+ * want.
  *
  * <p>The canonical documentation for an option is the field through which it is accessible in
  * {@link ParseOptions}.
@@ -34,8 +34,17 @@ import static norswap.utils.Util.cast;
  * <ul>
  *     <li>{@link #trace} = {@code false}</li>
  *     <li>{@link #recordCallStack} = {@code false}</li>
+ *     <li>{@link #replayCallStack} = {@code false}</li>
  *     <li>{@link #wellFormednessCheck} = {@code true}</li>
  *     <li>{@link #metrics} = {@code null}</li>
+ *     <li>{@link #profile} = {@code null}</li>
+ *     <li>{@link #heatmap} = {@code false}</li>
+ *     <li>{@link #jfr} = {@code false}</li>
+ *     <li>{@link #spanDepth} = {@code 0}</li>
+ *     <li>{@link #traceAllocations} = {@code false}</li>
+ *     <li>{@link #monitor} = {@code null}</li>
+ *     <li>{@link #budget} = {@code null}</li>
+ *     <li>{@link #iterative} = {@code false}</li>
  * </ul>
  *
  * <p>The code ensures that if {@link #trace} is true/false, its corresponding {@link #metrics}
@@ -69,6 +78,28 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * If true (and {@link #recordCallStack} is false), a parse that does not match the whole input
+     * is run a second time with {@link #recordCallStack} enabled, in order to obtain the call stack
+     * at the furthest error position ({@link ParseResult#errorCallStack}) or at the point where an
+     * exception was thrown. Successful parses do not pay for call stack recording at all, and
+     * failed parses get the same diagnostics as with {@link #recordCallStack}.
+     *
+     * <p>The second run is identical to the first (and therefore reproduces the same error) as long
+     * as the grammar's actions do not depend on state outside the parse, and parsers do not behave
+     * differently depending on whether {@link Parse#callStack} is set. The second run is not
+     * traced, profiled or monitored, and does not emit JFR events.
+     *
+     * <p>If a {@link #budget} is set, the second run is subject to it, and is charged with the
+     * invocations and time used by the first run. If it exceeds the budget, the failed parse is
+     * reported without a call stack.
+     *
+     * <p>False by default.
+     */
+    public final boolean replayCallStack;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Indicates if Autumn should check that the grammar is well-formed (i.e. does not exhibit
      * unprotected left-recursion nor repetition over nullable parsers) before starting the parse.
@@ -92,12 +123,134 @@ public final class ParseOptions
     /**
      * If non-null, specifies a function returning a {@link ParseMetrics} object that will receive
      * the trace measurements made during the parse. You can aggregate measurements over multiple
-     * parses by returning the same {@link ParseMetrics}.
+     * parses (including concurrent parses) by returning the same {@link ParseMetrics}: the
+     * measurements of each parse are merged into it when the parse completes.
      */
     public final Supplier<ParseMetrics> metrics;
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * If non-null, specifies a function returning a {@link ParseProfile} object, and enables
+     * sampling profiling: every so many parser invocations, the stack of running parsers is sampled
+     * into the profile (see {@link ParseProfile} for details). You can aggregate samples over
+     * multiple parses (including concurrent parses) by returning the same {@link ParseProfile}.
+     *
+     * <p>This is much cheaper than {@link #trace} (a few percents of overhead with the default
+     * sampling interval), and so can be used in production. If {@link #trace} is also enabled, it
+     * takes precedence and this option is ignored.
+     */
+    public final Supplier<ParseProfile> profile;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates whether the parse counts parser invocations per input position, producing a {@link
+     * ParseHeatmap} (available via {@link ParseResult#heatmap}) that shows where in the input the
+     * parser thrashes. This allocates an integer per input position, and slows down the parse
+     * noticeably (though less than {@link #trace}), so it should be disabled in production.
+     *
+     * <p>False by default.
+     */
+    public final boolean heatmap;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates whether the parse emits Java Flight Recorder events: one {@code
+     * norswap.autumn.Parse} event per parse (with the input size, outcome, error offset and memo
+     * statistics), and {@code norswap.autumn.RuleSample} events identifying the running rule,
+     * sampled like for {@link #profile} (every {@link ParseProfile#DEFAULT_INTERVAL} invocations
+     * on average, unless a profile is set, in which case a rule event is emitted for each sample).
+     *
+     * <p>The events are only recorded if enabled in the JFR recording settings (the parse event
+     * is enabled in the default settings, the rule sample event isn't).
+     *
+     * <p>Requires Java 11+ (the event classes are in the Java 11 section of the multi-release
+     * jar): on earlier versions, this option is ignored.
+     *
+     * <p>False by default.
+     */
+    public final boolean jfr;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If strictly positive, in tracing mode ({@link #trace}), the parse records a span for the root
+     * parser and for each invocation of a named parser (rule) nested at most this many rules deep,
+     * producing a {@link ParseTrace} (available via {@link ParseResult#trace}) that can be exported
+     * as a timeline or a flame graph. Ignored if {@link #trace} is false.
+     *
+     * <p>Each span takes about 40 bytes of memory: limit the depth to limit the memory usage on
+     * large inputs.
+     *
+     * <p>0 by default.
+     */
+    public final int spanDepth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates whether, in tracing mode ({@link #trace}), the parse measures the number of bytes
+     * allocated by each parser ({@link ParserMetrics#selfAllocated}, {@link
+     * ParserMetrics#totalAllocated}), using the per-thread allocation counter of the JVM. Ignored if
+     * {@link #trace} is false, or if the JVM doesn't support the counter.
+     *
+     * <p>This reads the counter three times per parser invocation, which further slows down
+     * tracing.
+     *
+     * <p>False by default.
+     */
+    public final boolean traceAllocations;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, the monitor that collects live statistics about the parse (see {@link
+     * AutumnMonitor}). Meant to be shared by all the parses that use a grammar.
+     *
+     * <p>Setting a monitor that samples ({@link AutumnMonitor#sampling}) also sets {@link #profile}
+     * to its profile, unless a profile was set explicitly.
+     *
+     * <p>Null by default.
+     */
+    public final AutumnMonitor monitor;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, limits on the work the parse may perform (see {@link ParseBudget}). If a limit
+     * is exceeded, the parse is aborted and the limit is reported in {@link
+     * ParseResult#budgetExceeded}.
+     *
+     * <p>Null by default.
+     */
+    public final ParseBudget budget;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates whether the parse runs the built-in combinators with an iterative engine that
+     * keeps its continuations on a heap-allocated stack instead of the Java call stack. This lets
+     * the parse handle arbitrarily deep nesting (e.g. deeply nested JSON arrays) without running
+     * into a {@link StackOverflowError}. Use {@link ParseBudget#maxDepth} to bound the nesting
+     * depth instead.
+     *
+     * <p>The engine handles all the built-in parsers that invoke sub-parsers (sequences, choices,
+     * repetitions, lookaheads, collect actions, lazy parsers, memoization, expression parsers and
+     * operator tables, ...). Custom parsers are run recursively unless they implement {@link
+     * IterativeParser}, so they still use the Java stack for each of their invocations — but not
+     * their descendants, unless these also fall back to recursion.
+     *
+     * <p>This is slightly slower than recursive execution, and is ignored if {@link #trace} is
+     * set.
+     *
+     * <p>False by default.
+     */
+    public final boolean iterative;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * A map contain user-defined options.
      */
@@ -115,18 +268,58 @@ public final class ParseOptions
     // ---------------------------------------------------------------------------------------------
 
     private ParseOptions
-        (boolean trace, boolean recordCallStack, boolean wellFormednessCheck,
-         boolean trackWhitespace,
-         Supplier<ParseMetrics> metrics, HashMap<Object, Object> customOptions)
+        (boolean trace, boolean recordCallStack, boolean replayCallStack,
+         boolean wellFormednessCheck, boolean trackWhitespace, Supplier<ParseMetrics> metrics,
+         Supplier<ParseProfile> profile, boolean heatmap, boolean jfr, int spanDepth,
+         boolean traceAllocations, AutumnMonitor monitor, ParseBudget budget, boolean iterative,
+         HashMap<Object, Object> customOptions)
     {
         this.trace = trace;
         this.recordCallStack = recordCallStack;
+        this.replayCallStack = replayCallStack;
         this.wellFormednessCheck = wellFormednessCheck;
         this.trackWhitespace = trackWhitespace;
         this.metrics = metrics;
+        this.profile = profile;
+        this.heatmap = heatmap;
+        this.jfr = jfr;
+        this.spanDepth = spanDepth;
+        this.traceAllocations = traceAllocations;
+        this.monitor = monitor;
+        this.budget = budget;
+        this.iterative = iterative;
         this.customOptions = customOptions;
     }
 
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the options used to re-run a failed parse when {@link #replayCallStack} is set: the
+     * same options, but recording the call stack, and without well-formedness check or any form of
+     * tracing, profiling or monitoring. The execution engine is preserved (see {@link
+     * #iterative}), so that the replay doesn't overflow the stack if the parse did not, and so is
+     * the budget.
+     */
+    ParseOptions replayOptions()
+    {
+        return new ParseOptions(false, true, false, false, trackWhitespace, null, null, false,
+            false, 0, false, null, budget, iterative, customOptions);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the options used to parse the chunks of a parallel parse ({@link
+     * Autumn#parseParallel}): the same options, but without well-formedness check, which is
+     * performed once for all chunks.
+     */
+    ParseOptions chunkOptions()
+    {
+        return new ParseOptions(trace, recordCallStack, replayCallStack, false, trackWhitespace,
+            metrics, profile, heatmap, jfr, spanDepth, traceAllocations, monitor, budget, iterative,
+            customOptions);
+    }
+
     // =============================================================================================
 
     /**
@@ -159,6 +352,15 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Enables/disables the {@link ParseOptions#replayCallStack} option.
+     */
+    public static ParseOptionsBuilder replayCallStack (boolean enabled) {
+        return new ParseOptionsBuilder().replayCallStack(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Enables/disables the {@link ParseOptions#wellFormednessCheck} option.
      */
@@ -178,6 +380,81 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Sets the {@link ParseOptions#profile} option.
+     */
+    public static ParseOptionsBuilder profile (Supplier<ParseProfile> profile) {
+        return new ParseOptionsBuilder().profile(profile);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enables/disables the {@link ParseOptions#heatmap} option.
+     */
+    public static ParseOptionsBuilder heatmap (boolean enabled) {
+        return new ParseOptionsBuilder().heatmap(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enables/disables the {@link ParseOptions#jfr} option.
+     */
+    public static ParseOptionsBuilder jfr (boolean enabled) {
+        return new ParseOptionsBuilder().jfr(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#spanDepth} option, and enables {@link ParseOptions#trace} if
+     * {@code depth > 0}.
+     */
+    public static ParseOptionsBuilder spanDepth (int depth) {
+        return new ParseOptionsBuilder().spanDepth(depth);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enables/disables the {@link ParseOptions#traceAllocations} option, and enables {@link
+     * ParseOptions#trace} if {@code enabled} is true.
+     */
+    public static ParseOptionsBuilder traceAllocations (boolean enabled) {
+        return new ParseOptionsBuilder().traceAllocations(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#monitor} option, and sets {@link ParseOptions#profile} to the
+     * monitor's profile if the monitor samples and no profile is set.
+     */
+    public static ParseOptionsBuilder monitor (AutumnMonitor monitor) {
+        return new ParseOptionsBuilder().monitor(monitor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#budget} option.
+     */
+    public static ParseOptionsBuilder budget (ParseBudget budget) {
+        return new ParseOptionsBuilder().budget(budget);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enables/disables the {@link ParseOptions#iterative} option.
+     */
+    public static ParseOptionsBuilder iterative (boolean enabled) {
+        return new ParseOptionsBuilder().iterative(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a parse options builder with the default options (see {@link ParseOptions}).
      */
@@ -203,9 +480,18 @@ public final class ParseOptions
     {
         private boolean trace = false;
         private boolean recordCallStack = false;
+        private boolean replayCallStack = false;
         private boolean wellFormednessCheck = true;
         private boolean trackWhitespace = true;
         private Supplier<ParseMetrics> metrics = null;
+        private Supplier<ParseProfile> profile = null;
+        private boolean heatmap = false;
+        private boolean jfr = false;
+        private int spanDepth = 0;
+        private boolean traceAllocations = false;
+        private AutumnMonitor monitor = null;
+        private ParseBudget budget = null;
+        private boolean iterative = false;
         private final HashMap<Object, Object> customOptions = new HashMap<>();
 
         private ParseOptionsBuilder() {}
@@ -241,6 +527,15 @@ public final class ParseOptions
             return this;
         }
 
+        /**
+         * Enables/disables the {@link ParseOptions#replayCallStack} option.
+         */
+        public ParseOptionsBuilder replayCallStack (boolean enabled)
+        {
+            replayCallStack = enabled;
+            return this;
+        }
+
         /**
          * Enables/disables the {@link ParseOptions#wellFormednessCheck} option.
          */
@@ -270,13 +565,93 @@ public final class ParseOptions
             return this;
         }
 
+        /**
+         * Sets the {@link ParseOptions#profile} option.
+         */
+        public ParseOptionsBuilder profile (Supplier<ParseProfile> profile)
+        {
+            this.profile = profile;
+            return this;
+        }
+
+        /**
+         * Enables/disables the {@link ParseOptions#heatmap} option.
+         */
+        public ParseOptionsBuilder heatmap (boolean enabled)
+        {
+            heatmap = enabled;
+            return this;
+        }
+
+        /**
+         * Enables/disables the {@link ParseOptions#jfr} option.
+         */
+        public ParseOptionsBuilder jfr (boolean enabled)
+        {
+            jfr = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#spanDepth} option, and enables {@link ParseOptions#trace}
+         * if {@code depth > 0}.
+         */
+        public ParseOptionsBuilder spanDepth (int depth)
+        {
+            spanDepth = depth;
+            if (depth > 0 && !trace) trace(true);
+            return this;
+        }
+
+        /**
+         * Enables/disables the {@link ParseOptions#traceAllocations} option, and enables {@link
+         * ParseOptions#trace} if {@code enabled} is true.
+         */
+        public ParseOptionsBuilder traceAllocations (boolean enabled)
+        {
+            traceAllocations = enabled;
+            if (enabled && !trace) trace(true);
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#monitor} option, and sets {@link ParseOptions#profile} to
+         * the monitor's profile if the monitor samples and no profile is set.
+         */
+        public ParseOptionsBuilder monitor (AutumnMonitor monitor)
+        {
+            this.monitor = monitor;
+            if (monitor != null && monitor.sampling && profile == null)
+                profile = monitor::profile;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#budget} option.
+         */
+        public ParseOptionsBuilder budget (ParseBudget budget)
+        {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Enables/disables the {@link ParseOptions#iterative} option.
+         */
+        public ParseOptionsBuilder iterative (boolean enabled)
+        {
+            iterative = enabled;
+            return this;
+        }
+
         /**
          * Builds the set of options.
          */
         public ParseOptions get()
         {
-            return new ParseOptions(trace, recordCallStack, wellFormednessCheck,
-                trackWhitespace, metrics, customOptions);
+            return new ParseOptions(trace, recordCallStack, replayCallStack, wellFormednessCheck,
+                trackWhitespace, metrics, profile, heatmap, jfr, spanDepth, traceAllocations,
+                monitor, budget, iterative, customOptions);
         }
     }
 
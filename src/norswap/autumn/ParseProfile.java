@@ -0,0 +1,245 @@
+package norswap.autumn;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A sampling profiler, which collects per-parser samples ({@link ParserProfile}) when a parse is
+ * running in profiling mode ({@link ParseOptions#profile}).
+ *
+ * <p>In this mode, each parser invocation pushes the parser on a lightweight parser stack, and
+ * decrements a counter. When the counter reaches zero (every {@link #interval} invocations, with
+ * some jitter), a sample is taken: the innermost parser is attributed a "self" sample, and every
+ * parser on the stack is attributed a "total" sample. If {@link #minDelayNanos} is non-zero, a
+ * sample is only taken if that much time elapsed since the previous sample (the clock is only
+ * read when the counter reaches zero). This makes the samples (roughly) time-proportional, at the
+ * cost of calling {@code System.nanoTime()} every {@link #interval} invocations.
+ *
+ * <p>Unlike tracing ({@link ParseOptions#trace}), this is cheap enough to leave enabled in
+ * production: with the default interval, the overhead is a few percents. In exchange, the results
+ * are estimates: the share of samples attributed to a parser estimates the share of the parse time
+ * it accounts for, and the self/total time estimates ({@link #selfTime(ParserProfile)}, {@link
+ * #totalTime(ParserProfile)}) apply that share to the measured duration of the profiled parses.
+ * These estimates are only meaningful if enough samples were taken.
+ *
+ * <p>This class is thread-safe: the same instance may be shared by parses running concurrently
+ * (e.g. by returning it from the {@link ParseOptions#profile} supplier). Samples are rare, so the
+ * synchronization doesn't impact performance.
+ */
+public final class ParseProfile
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Default value for {@link #interval}.
+     */
+    public static final int DEFAULT_INTERVAL = 8192;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Average number of parser invocations between two samples (or between two clock checks if
+     * {@link #minDelayNanos} is non-zero).
+     */
+    public final int interval;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Minimum delay between two samples taken during the same parse, in nanoseconds, or 0 if
+     * samples are taken every {@link #interval} invocations regardless of time.
+     */
+    public final long minDelayNanos;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Map<Parser, ParserProfile> parsers = new HashMap<>();
+    private long samples = 0;
+    private long parses = 0;
+    private long parseTime = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a profile that samples every {@link #DEFAULT_INTERVAL} invocations on average.
+     */
+    public ParseProfile() {
+        this(DEFAULT_INTERVAL, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a profile that samples every {@code interval} invocations on average (must be
+     * strictly positive), but only if {@code minDelayMicros} microseconds have elapsed since the
+     * last sample during the same parse (if 0, samples are taken regardless of time).
+     */
+    public ParseProfile (int interval, long minDelayMicros)
+    {
+        if (interval <= 0)
+            throw new IllegalArgumentException("sampling interval must be strictly positive");
+        if (minDelayMicros < 0)
+            throw new IllegalArgumentException("minimum sampling delay must be positive");
+        this.interval = interval;
+        this.minDelayNanos = minDelayMicros * 1000;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of invocations until the next sample (or clock check): a random number
+     * between {@code interval / 2 + 1} and {@code interval / 2 + interval} (inclusive), which
+     * avoids systematically sampling the same point of a repetitive grammar.
+     */
+    int countdown() {
+        return countdown(interval);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * See {@link #countdown()}.
+     */
+    static int countdown (int interval)
+    {
+        int half = interval / 2;
+        return half + 1 + ThreadLocalRandom.current().nextInt(interval);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called by {@link Parse#sample()} when {@link Parse#profileCountdown} reaches zero. Takes a
+     * sample of {@link Parse#profileStack} (subject to {@link #minDelayNanos}), and returns true
+     * iff a sample was taken.
+     */
+    boolean sample (Parse parse)
+    {
+        if (minDelayNanos > 0) {
+            long now = System.nanoTime();
+            if (now < parse.profileNextSample)
+                return false;
+            parse.profileNextSample = now + minDelayNanos;
+        }
+
+        record(parse.profileStack, parse.depth);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private synchronized void record (Parser[] stack, int depth)
+    {
+        long sample = samples++;
+        for (int i = depth - 1; i >= 0; --i) {
+            ParserProfile profile = parsers.computeIfAbsent(stack[i], ParserProfile::new);
+            if (i == depth - 1)
+                ++ profile.selfSamples;
+            if (profile.lastSample != sample) {
+                profile.lastSample = sample;
+                ++ profile.totalSamples;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called at the end of each profiled parse with its duration.
+     */
+    synchronized void recordParse (long nanos)
+    {
+        ++ parses;
+        parseTime += nanos;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Total number of samples taken.
+     */
+    public synchronized long samples() {
+        return samples;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of profiled parses.
+     */
+    public synchronized long parses() {
+        return parses;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Cumulative duration of the profiled parses, in nanoseconds.
+     */
+    public synchronized long parseTime() {
+        return parseTime;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a snapshot of the per-parser profiles collected so far.
+     */
+    public synchronized Map<Parser, ParserProfile> parsers()
+    {
+        HashMap<Parser, ParserProfile> copy = new HashMap<>();
+        parsers.forEach((k, v) -> copy.put(k, v.copy()));
+        return copy;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Estimates the cumulative "self" execution time of the parser whose profile is given (as
+     * returned by {@link #parsers()}), in nanoseconds.
+     */
+    public synchronized long selfTime (ParserProfile profile) {
+        return samples == 0 ? 0 : (long) ((double) parseTime * profile.selfSamples / samples);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Estimates the cumulative "total" execution time of the parser whose profile is given (as
+     * returned by {@link #parsers()}), in nanoseconds.
+     */
+    public synchronized long totalTime (ParserProfile profile) {
+        return samples == 0 ? 0 : (long) ((double) parseTime * profile.totalSamples / samples);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public synchronized String toString()
+    {
+        StringBuilder b = new StringBuilder(String.format(
+            "%,d samples over %,d parses (%s)\n", samples, parses, Duration.ofNanos(parseTime)));
+        b.append(String.format("%40s | %-7s | %-16s | %-7s | %s\n",
+            "PARSER", "SELF %", "SELF TIME (EST)", "TOTAL %", "TOTAL TIME (EST)"));
+
+        List<ParserProfile> profiles = new ArrayList<>(parsers.values());
+        profiles.sort(Comparator.comparingLong((ParserProfile it) -> it.selfSamples).reversed());
+        double total = Math.max(samples, 1);
+
+        for (ParserProfile p: profiles)
+            b.append(String.format("%40s | %6.2f%% | %-16s | %6.2f%% | %s\n",
+                p.parser,
+                100 * p.selfSamples / total,
+                Duration.ofNanos(selfTime(p)),
+                100 * p.totalSamples / total,
+                Duration.ofNanos(totalTime(p))));
+
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -42,11 +42,26 @@ public final class ParseResult
 
     /**
      * Exception (really, Throwable) that caused the parse to terminate, or null othwerwise.
+     *
+     * <p>This is null if the parse was aborted because it exceeded its budget, which is reported
+     * in {@link #budgetExceeded} instead.
      */
     public final Throwable thrown;
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * If the parse was aborted because it exceeded one of the limits of its {@link
+     * ParseOptions#budget}, the exception describing the exceeded limit (including the rule that
+     * was running and the number of invocations performed), null otherwise.
+     *
+     * <p>In that case, {@link #errorOffset}, {@link #errorMessage} and {@link #errorCallStack} are
+     * set like for an exception ({@link #thrown}).
+     */
+    public final BudgetExceededException budgetExceeded;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The root parser used to perform the parse.
      */
@@ -116,6 +131,65 @@ public final class ParseResult
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Sampling profile, if the {@link ParseOptions#profile} option was specified (and {@link
+     * ParseOptions#trace} wasn't), null otherwise.
+     */
+    public final ParseProfile profile;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Per-position invocation counts, if the {@link ParseOptions#heatmap} option was specified,
+     * null otherwise.
+     */
+    public final ParseHeatmap heatmap;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Spans of the rule invocations, if the {@link ParseOptions#spanDepth} and {@link
+     * ParseOptions#trace} options were specified, null otherwise.
+     */
+    public final ParseTrace trace;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A summary of the memory used by the parse.
+     */
+    public final ParseFootprint footprint;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The size of the side-effect log ({@link Parse#log}) at the end of the parse.
+     */
+    public final int logSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The maximum size reached by the side-effect log ({@link Parse#log}) during the parse.
+     */
+    public final int peakLogSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The maximum size reached by the value stack ({@link Parse#stack}) during the parse.
+     */
+    public final int peakStackSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of memo entries created during the parse (cf. {@link Parse#memoEntries}).
+     */
+    public final int memoEntries;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The value at the top of the value stack if the parse was successful and the value stack
      * is non-empty, null otherwise.
@@ -135,6 +209,7 @@ public final class ParseResult
         boolean fullMatch,
         int matchSize,
         Throwable thrown,
+        BudgetExceededException budgetExceeded,
         Parser parser,
         ParseOptions options,
         int errorOffset,
@@ -142,12 +217,21 @@ public final class ParseResult
         ArrayStack<?> valueStack,
         Map<Object, Object> parseStates,
         ParserCallStack errorCallStack,
-        ParseMetrics parseMetrics)
+        ParseMetrics parseMetrics,
+        ParseProfile profile,
+        ParseHeatmap heatmap,
+        ParseTrace trace,
+        ParseFootprint footprint,
+        int logSize,
+        int peakLogSize,
+        int peakStackSize,
+        int memoEntries)
     {
         this.success = success;
         this.fullMatch = fullMatch;
         this.matchSize = matchSize;
         this.thrown = thrown;
+        this.budgetExceeded = budgetExceeded;
         this.parser = parser;
         this.options = options;
         this.errorOffset = errorOffset;
@@ -156,6 +240,14 @@ public final class ParseResult
         this.parseStates = parseStates;
         this.errorCallStack = errorCallStack;
         this.parseMetrics = parseMetrics;
+        this.profile = profile;
+        this.heatmap = heatmap;
+        this.trace = trace;
+        this.footprint = footprint;
+        this.logSize = logSize;
+        this.peakLogSize = peakLogSize;
+        this.peakStackSize = peakStackSize;
+        this.memoEntries = memoEntries;
 
         // Do not make this an assertion, as the parsing failure may provide information as to
         // why this happens.
@@ -181,6 +273,14 @@ public final class ParseResult
     private void appendUserErrorMessage (StringBuilder b, LineMap map)
     {
         String name = map == null ? null : map.name();
+        if (budgetExceeded != null) {
+            b.append("Parse aborted at ");
+            if (name != null) b.append(name).append(":");
+            b.append(LineMap.string(map, errorOffset));
+            b.append(": the input is too complex to parse (")
+                .append(budgetExceeded.limit).append(").\n");
+            return;
+        }
         if (success) {
             b.append("Parse succeeded without consuming full input, up to ");
             if (name != null) b.append(name).append(":");
@@ -250,7 +350,12 @@ public final class ParseResult
 
         appendUserErrorMessage(b, map);
 
-        if (options.recordCallStack) {
+        if (budgetExceeded != null) {
+            b.append(budgetExceeded.getMessage());
+            b.append("\n");
+        }
+
+        if (errorCallStack != null) {
             errorCallStack.appendTo(b, 1, map, onlyRules, name);
             b.append("\n");
         } else {
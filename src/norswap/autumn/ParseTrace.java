@@ -0,0 +1,269 @@
+package norswap.autumn;
+
+import norswap.autumn.util.StringsUtil;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * The spans of the rule invocations of a parse, recorded in tracing mode if the {@link
+ * ParseOptions#spanDepth} option is set, and available via {@link ParseResult#trace}.
+ *
+ * <p>A span is recorded for each invocation of a named parser (see {@link Parser#rule()}) nested
+ * at most {@link ParseOptions#spanDepth} rules deep, as well as for the root parser of the parse.
+ * Each span records its start and end times, the input positions at which the invocation started
+ * and ended, and whether it succeeded. The spans are held in primitive arrays, in the order in
+ * which the invocations started.
+ *
+ * <p>Times are relative to the start of the parse, and are corrected for the overhead of tracing
+ * (like the times in {@link ParserMetrics}), so that the timeline reflects an untraced parse as
+ * closely as possible.
+ *
+ * <p>The spans can be exported in the Chrome trace-event format ({@link #chromeTrace}), which can
+ * be opened in Perfetto ({@code ui.perfetto.dev}) or {@code chrome://tracing}, or in the collapsed
+ * stack format used to generate flame graphs ({@link #collapsedStacks}, e.g. with {@code
+ * flamegraph.pl} or speedscope). Both exporters can drop spans to limit the size of their output:
+ * spans nested more than {@code maxDepth} spans deep are dropped, as are spans that are not
+ * selected by sampling ({@code sampleEvery}: only one in so many spans at each depth is kept), and
+ * for {@link #chromeTrace}, spans that last less than {@code minDurationNanos}. Dropping a span
+ * also drops all spans nested within it.
+ */
+public final class ParseTrace
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Maximum depth of the recorded spans. */
+    private final int maxDepth;
+
+    /** Parser for each span. */
+    private Parser[] parsers = new Parser[256];
+
+    /** Start time of each span (nanoseconds, relative to {@link #origin}, corrected). */
+    private long[] starts = new long[256];
+
+    /** End time of each span (nanoseconds, relative to {@link #origin}, corrected). */
+    private long[] ends = new long[256];
+
+    /** Input position at the start of each span. */
+    private int[] startPositions = new int[256];
+
+    /**
+     * Input position at the end of each span if the invocation succeeded, or {@code -1 - start} if
+     * it failed.
+     */
+    private int[] endPositions = new int[256];
+
+    /** Depth of each span (1 for the root span). */
+    private int[] depths = new int[256];
+
+    /** Number of recorded spans. */
+    private int size = 0;
+
+    /** Number of currently running rule invocations (including the root). */
+    int depth = 0;
+
+    /** Maximum depth of the recorded spans so far. */
+    private int deepest = 0;
+
+    /** Time at which the parse started ({@code System.nanoTime()}). */
+    private final long origin = System.nanoTime();
+
+    /**
+     * Cumulative tracing overhead so far (nanoseconds), used to correct the span times.
+     */
+    long overhead = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    ParseTrace (int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called in tracing mode before the invocation of a parser that is a rule or the root parser.
+     * Returns the index of the span, or -1 if the span isn't recorded because it is too deep (the
+     * invocation must still be {@link #close closed}).
+     */
+    int open (Parser parser, int pos)
+    {
+        if (++ depth > maxDepth) return -1;
+
+        if (size == parsers.length) {
+            int capacity = size * 2;
+            parsers = Arrays.copyOf(parsers, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            startPositions = Arrays.copyOf(startPositions, capacity);
+            endPositions = Arrays.copyOf(endPositions, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+
+        parsers[size] = parser;
+        ends[size] = -1;
+        startPositions[size] = pos;
+        depths[size] = depth;
+        if (depth > deepest) deepest = depth;
+        return size++;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called in tracing mode once the invocation of the span returned by {@link #open} starts
+     * (after the tracing overhead), at time {@code time} ({@code System.nanoTime()}).
+     */
+    void start (int span, long time) {
+        starts[span] = time - overhead - origin;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called in tracing mode when the invocation of a parser that is a rule or the root parser
+     * ends, at time {@code time} (before the tracing overhead), with the span index returned by
+     * {@link #open}.
+     */
+    void close (int span, long time, boolean success, int pos)
+    {
+        -- depth;
+        if (span < 0) return;
+        ends[span] = time - overhead - origin;
+        endPositions[span] = success ? pos : -1 - startPositions[span];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called at the end of the parse, at time {@code time}: ends the spans of the invocations that
+     * did not complete because an exception was thrown, marking them as failed.
+     */
+    void finish (long time)
+    {
+        for (int i = 0; i < size; ++i)
+            if (ends[i] < 0) {
+                ends[i] = time - overhead - origin;
+                endPositions[i] = -1 - startPositions[i];
+            }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of recorded spans.
+     */
+    public int size() {
+        return size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls {@code visitor} for each span that isn't dropped (see {@link ParseTrace}), in the order
+     * in which they started.
+     */
+    private void filter (int maxDepth, long minDurationNanos, int sampleEvery, SpanVisitor visitor)
+    {
+        if (sampleEvery <= 0)
+            throw new IllegalArgumentException("sampleEvery must be strictly positive");
+
+        int[] counters = new int[deepest + 1];
+        int skipDepth = Integer.MAX_VALUE; // drop spans deeper than this
+
+        for (int i = 0; i < size; ++i)
+        {
+            int depth = depths[i];
+            if (depth > skipDepth) continue;
+            skipDepth = Integer.MAX_VALUE;
+
+            if (depth > maxDepth
+                    || ends[i] - starts[i] < minDurationNanos
+                    || counters[depth]++ % sampleEvery != 0) {
+                skipDepth = depth;
+                continue;
+            }
+
+            visitor.visit(i, depth);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private interface SpanVisitor {
+        void visit (int span, int depth);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the spans as a trace in the Chrome trace-event JSON format, which can be opened with
+     * Perfetto ({@code ui.perfetto.dev}) or {@code chrome://tracing}. Each span is a complete
+     * ({@code "X"}) event, whose arguments are the start and end input positions of the invocation
+     * and whether it succeeded.
+     *
+     * <p>See {@link ParseTrace} for how {@code maxDepth}, {@code minDurationNanos} and {@code
+     * sampleEvery} drop spans (pass {@code Integer.MAX_VALUE}, 0 and 1 to keep all spans).
+     */
+    public String chromeTrace (int maxDepth, long minDurationNanos, int sampleEvery)
+    {
+        StringBuilder b = new StringBuilder("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean[] first = { true };
+
+        filter(maxDepth, minDurationNanos, sampleEvery, (i, depth) -> {
+            b.append(first[0] ? "\n" : ",\n");
+            first[0] = false;
+            boolean success = endPositions[i] >= 0;
+            b.append("{\"name\":\"").append(StringsUtil.escape(parsers[i].toString())).append('"');
+            b.append(String.format(Locale.ROOT,
+                ",\"cat\":\"rule\",\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,\"pid\":1,\"tid\":1,",
+                starts[i] / 1000.0, (ends[i] - starts[i]) / 1000.0));
+            b.append("\"args\":{\"start\":").append(startPositions[i])
+                .append(",\"end\":").append(success ? endPositions[i] : startPositions[i])
+                .append(",\"success\":").append(success).append("}}");
+        });
+
+        return b.append("\n]}\n").toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the spans in the collapsed stack format used by flame graph tools ({@code
+     * flamegraph.pl}, speedscope, ...): one line per distinct path of nested rules (whose names are
+     * separated by {@code ;}), followed by the cumulative self time of the innermost rule on that
+     * path, in nanoseconds. Paths are listed in the order in which they are first encountered.
+     *
+     * <p>The self time of a span is its duration minus the duration of the kept spans nested
+     * directly within it, so that the time of the dropped spans is attributed to their closest
+     * kept ancestor. See {@link ParseTrace} for how {@code maxDepth} and {@code sampleEvery} drop
+     * spans (pass {@code Integer.MAX_VALUE} and 1 to keep all spans).
+     *
+     * <p>In rule names, {@code ;} is replaced by {@code :} and line breaks by spaces.
+     */
+    public String collapsedStacks (int maxDepth, int sampleEvery)
+    {
+        LinkedHashMap<String, long[]> stacks = new LinkedHashMap<>();
+        HashMap<Parser, String> names = new HashMap<>();
+        String[] paths = new String[deepest + 1];
+
+        filter(maxDepth, 0, sampleEvery, (i, depth) -> {
+            String name = names.computeIfAbsent(parsers[i], p ->
+                p.toString().replace(';', ':').replace('\r', ' ').replace('\n', ' '));
+            paths[depth] = depth == 1 ? name : paths[depth - 1] + ";" + name;
+            long duration = ends[i] - starts[i];
+            stacks.computeIfAbsent(paths[depth], k -> new long[1])[0] += duration;
+            if (depth > 1)
+                stacks.get(paths[depth - 1])[0] -= duration;
+        });
+
+        StringBuilder b = new StringBuilder();
+        stacks.forEach((path, time) -> {
+            if (time[0] > 0) b.append(path).append(' ').append(time[0]).append('\n');
+        });
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,5 +1,9 @@
 package norswap.autumn;
 
+import norswap.utils.data.structures.ArrayListLong;
+import java.util.Arrays;
+import java.util.Collection;
+
 /**
  * The parent class for all parsers.
  *
@@ -17,12 +21,17 @@ package norswap.autumn;
  * logic. In particular, it automatically restores {@link Parse#pos} and {@link Parse#log} in
  * case of error ({@code doparse} returns false), as well as update {@link Parse#error} (or not,
  * depending on {@link #excludeErrors}). It also handles the logic for some options such
- * as {@link ParseOptions#recordCallStack} and {@link ParseOptions#trace}.
+ * as {@link ParseOptions#recordCallStack}, {@link ParseOptions#trace} and {@link
+ * ParseOptions#profile}.
  *
  * <p>The requirement on {@link #doparse(Parse)} are then that it returns the appropriate truth
  * value and updates {@link Parse#pos} if successful. It's also important that any global state
  * change be recorded in {@link Parse#log} so that it may be undone in case of backtracing.
  *
+ * <p>Parsers that invoke sub-parsers may additionally implement {@link IterativeParser}, which
+ * lets the iterative engine ({@link ParseOptions#iterative}) run them without using the Java
+ * stack.
+ *
  * <p>Parser may have a rule name ({@link #rule()}). Those may be auto-generated when the parsers
  * are defined through a {@link Grammar} and the grammar or one of its {@link Grammar.rule} is
  * passed {@link Autumn#parse}.
@@ -50,6 +59,25 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether this parser implements {@link IterativeParser} (cached for {@link IterativeEngine}).
+     */
+    final boolean iterative = this instanceof IterativeParser;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * See {@link #id()}, -1 if not assigned yet.
+     */
+    private int id = -1;
+
+    /**
+     * Number of parser ids assigned so far (see {@link #id()}).
+     */
+    private static int ids = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The name of the rule this parser is assigned to, if any, or null.
      */
@@ -72,6 +100,47 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns a dense integer id for this parser, unique among all parsers. {@link ParseMetrics}
+     * maps these ids to indices local to each metrics object, so that per-parser data can be
+     * stored in primitive arrays instead of hash maps.
+     *
+     * <p>The parsers of a grammar are assigned consecutive ids when the grammar is first used to
+     * parse (see {@link #assignIds(Collection)}). Other parsers are assigned an id the first time
+     * this method is called (in tracing mode, the first time the parser is invoked).
+     */
+    public final int id()
+    {
+        int id = this.id;
+        return id >= 0 ? id : assignId();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int assignId()
+    {
+        synchronized (Parser.class) {
+            if (id < 0) id = ids++;
+            return id;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Assigns consecutive ids to those of the given parsers that don't have an id yet. Called with
+     * the parsers of a grammar, so that its parsers occupy a dense range of ids.
+     */
+    static void assignIds (Collection<Parser> parsers)
+    {
+        synchronized (Parser.class) {
+            for (Parser parser: parsers)
+                if (parser.id < 0) parser.id = ids++;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Override this method to implement the parsing logic.
      *
@@ -105,6 +174,41 @@ public abstract class Parser
         if (parse.options.trace)
             return tracingParse(parse);
 
+        if (parse.engine != null)
+            return parse.engine.run(this);
+
+        return recursiveParse(parse);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Implementation of {@link #parse(Parse)} for the recursive case: runs {@link #doparse}
+     * directly on the Java stack. Also used by the iterative engine ({@link IterativeEngine}) for
+     * the parsers it can't run on its own stack.
+     *
+     * <p>{@link IterativeEngine} mirrors the bookkeeping performed here: keep them in sync.
+     */
+    final boolean recursiveParse (Parse parse)
+    {
+        if (parse.heatmap != null)
+            parse.heatmap.record(this, parse.pos);
+
+        // Each invocation restores the depth it found when returning, so the depth (and the
+        // profile stack) is consistent even if an exception thrown by a descendant is caught.
+        int depth0 = parse.depth;
+        parse.depth = depth0 + 1;
+        if (depth0 == parse.maxDepth)
+            parse.maxDepth = depth0 + 1;
+
+        // In profiling mode (or when emitting JFR events), push this parser on the profile stack.
+        if (parse.profileStack != null)
+            profilePush(parse, depth0);
+
+        // If a budget is set, check it every so often.
+        if (parse.budget != null && --parse.budgetCountdown == 0)
+            parse.checkBudget(this);
+
         int pos0 = parse.pos;
         int log0 = parse.log.size();
         int err0 = parse.error;
@@ -122,6 +226,8 @@ public abstract class Parser
             parse.errorCallStack = stk0;
         }
 
+        parse.depth = depth0;
+
         if (result) {
             if (parse.options.recordCallStack)
                 parse.callStack.pop();
@@ -140,6 +246,9 @@ public abstract class Parser
         if (parse.options.recordCallStack)
             parse.callStack.pop();
 
+        if (pos0 < parse.cutPosition || log0 < parse.log.committed())
+            throw CutException.INSTANCE;
+
         parse.pos = pos0;
 
         if (parse.log.size() > log0) // this improves performance
@@ -150,23 +259,67 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Pushes this parser on the profile stack at index {@code depth} (the depth at which it is
+     * invoked), and takes a sample if it is time to do so. See {@link ParseOptions#profile} and
+     * {@link ParseOptions#jfr} for more info.
+     */
+    void profilePush (Parse parse, int depth)
+    {
+        if (depth == parse.profileStack.length)
+            parse.profileStack = Arrays.copyOf(parse.profileStack, depth * 2);
+        parse.profileStack[depth] = this;
+
+        if (--parse.profileCountdown == 0)
+            parse.profileCountdown = parse.sample();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Implementation of {@link #parse(Parse)} for the tracing case. See {@link ParseOptions#trace}
      * for more info.
      */
     private boolean tracingParse (Parse parse)
     {
+        if (parse.budget != null && --parse.budgetCountdown == 0)
+            parse.checkBudget(this);
+
         long time0 = System.nanoTime();
 
+        ArrayListLong allocations = parse.traceAllocations;
+        long alloc0 = allocations != null ? parse.allocatedBytes() : 0;
+        int allocTrace0 = allocations != null ? allocations.size() : 0;
+
         int trace0 = parse.traceTimings.size();
-        ParserMetrics metrics
-            = parse.parseMetrics.metrics.computeIfAbsent(this, k -> new ParserMetrics(this));
-        ++ metrics.invocations;
-        ++ metrics.recursiveInvocations;
+        ParseMetrics metrics = parse.parseMetrics;
+        int index = metrics.register(this);
+        ++ metrics.invocations[index];
+        ++ metrics.recursiveInvocations[index];
 
+        int pos0 = parse.pos;
+        int depth0 = parse.depth;
+        parse.depth = depth0 + 1;
+        if (depth0 == parse.maxDepth)
+            parse.maxDepth = depth0 + 1;
+        if (parse.heatmap != null)
+            parse.heatmap.record(this, pos0);
+        metrics.visit(index, pos0);
+        int successes0 = parse.traceSuccessCount;
+
+        ParseTrace trace = parse.trace;
+        int span = trace != null && (rule != null || trace.depth == 0)
+            ? trace.open(this, pos0)
+            : -2;
+
+        long alloc1 = allocations != null ? parse.allocatedBytes() : 0;
         long time1 = System.nanoTime();
 
-        int pos0 = parse.pos;
+        if (trace != null) {
+            trace.overhead += time1 - time0;
+            if (span >= 0) trace.start(span, time1);
+        }
+
         int log0 = parse.log.size();
         int err0 = parse.error;
         ParserCallStack stk0 = parse.errorCallStack;
@@ -175,6 +328,7 @@ public abstract class Parser
             parse.callStack.push(this, pos0);
 
         boolean result = doparse(parse);
+        parse.depth = depth0;
 
         if (excludeErrors) {
             parse.error = err0;
@@ -195,11 +349,26 @@ public abstract class Parser
             if (parse.options.recordCallStack)
                 parse.callStack.pop();
 
+            if (pos0 < parse.cutPosition || log0 < parse.log.committed())
+                throw CutException.INSTANCE;
+
             parse.pos = pos0;
+            metrics.undoneLogEntries[index] += parse.log.size() - log0;
             parse.log.rollback(log0);
         }
 
         long total = System.nanoTime() - time1;
+        long allocTotal = allocations != null
+            ? parse.allocatedBytes() - alloc1 - parse.allocationReadSize
+            : 0;
+
+        if (span != -2)
+            trace.close(span, time1 + total, result, parse.pos);
+
+        if (result)
+            parse.traceSuccess(index, parse.pos - pos0);
+        else
+            parse.traceRollback(successes0);
 
         long overheads = 0; // cumulative overheads time in children
         long children = 0;  // total time spent in children (including overheads)
@@ -210,14 +379,21 @@ public abstract class Parser
             overheads += parse.traceTimings.pop();
         }
 
-        metrics.selfTime += total - children;
+        metrics.selfTime[index] += total - children;
 
-        if (--metrics.recursiveInvocations == 0)
-            metrics.totalTime += total - overheads;
+        if (--metrics.recursiveInvocations[index] == 0)
+            metrics.totalTime[index] += total - overheads;
 
-        overheads += System.nanoTime() - time0 - total;
+        if (allocations != null)
+            parse.traceAllocation(index, allocTotal, alloc0, allocTrace0);
+
+        long time2 = System.nanoTime();
+        overheads += time2 - time0 - total;
         parse.traceTimings.push(overheads);
-        parse.traceTimings.push(System.nanoTime() - time0);
+        parse.traceTimings.push(time2 - time0);
+
+        if (trace != null)
+            trace.overhead += time2 - time1 - total;
 
         return result;
     }
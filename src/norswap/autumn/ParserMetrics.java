@@ -6,9 +6,9 @@ import java.time.Duration;
  * A set of performance metrics linked to a parser, produced in tracing mode ({@link
  * ParseOptions#trace}).
  *
- * <p>Multiple {@link ParserMetrics} are aggregated within a single {@link ParseMetrics}.
- *
- * <p>Field are public for convenience but should not be written.
+ * <p>Instances are copies of the metrics held by a {@link ParseMetrics} (see {@link
+ * ParseMetrics#get(Parser)} and {@link ParseMetrics#metrics()}): they do not reflect further
+ * updates to it, and modifying them does not affect it.
  */
 public final class ParserMetrics
 {
@@ -38,10 +38,20 @@ public final class ParserMetrics
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Running counter of the number of in-progress invocations (so the parser is recursing
-     * when > 1).
+     * Cumulative number of bytes allocated by the parser itself (excluding the allocations of its
+     * children), if {@link ParseOptions#traceAllocations} is set, 0 otherwise.
+     */
+    public long selfAllocated = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Cumulative number of bytes allocated by the parser (including the allocations of its
+     * children), if {@link ParseOptions#traceAllocations} is set, 0 otherwise.
+     *
+     * <p>Like for {@link #totalTime}, parser that recurse are not double-counted.
      */
-    int recursiveInvocations = 0;
+    public long totalAllocated = 0;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -52,6 +62,42 @@ public final class ParserMetrics
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Number of successful invocations of the parser that were later rolled back because an
+     * ancestor failed.
+     */
+    public int rolledBackSuccesses = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Cumulative size of the input (characters or list items) consumed by the successful
+     * invocations counted in {@link #rolledBackSuccesses}: input that was matched, then discarded.
+     */
+    public long wastedInput = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Cumulative number of side-effects ({@link Parse#log} entries) that were undone when the
+     * parser failed.
+     */
+    public long undoneLogEntries = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of invocations of the parser at an input position where it had already been invoked
+     * during the same parse.
+     *
+     * <p>To bound memory, the positions visited before a cut ({@link Parse#cut()}) are forgotten,
+     * and a parse that visits over a million distinct (parser, position) pairs since its last cut
+     * starts over from an empty set: revisits can be under-counted in that case.
+     */
+    public int revisits = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
     public ParserMetrics (Parser parser) {
         this.parser = parser;
     }
@@ -63,7 +109,13 @@ public final class ParserMetrics
             "parser: " + parser +
             ", self: "  + Duration.ofNanos(selfTime) +
             ", total: " + Duration.ofNanos(totalTime) +
+            ", self alloc: "  + String.format("%,d", selfAllocated) +
+            ", total alloc: " + String.format("%,d", totalAllocated) +
             ", invocs:" + String.format("%,d", invocations) +
+            ", rolled back: " + String.format("%,d", rolledBackSuccesses) +
+            ", wasted input: " + String.format("%,d", wastedInput) +
+            ", undone log: " + String.format("%,d", undoneLogEntries) +
+            ", revisits: " + String.format("%,d", revisits) +
             '}';
     }
 
@@ -0,0 +1,72 @@
+package norswap.autumn;
+
+/**
+ * The samples attributed to a parser by a sampling profiler ({@link ParseProfile}).
+ *
+ * <p>Multiple {@link ParserProfile} are aggregated within a single {@link ParseProfile}.
+ *
+ * <p>Field are public for convenience but should not be written.
+ */
+public final class ParserProfile
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final Parser parser;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of samples in which the parser was the innermost running parser. Proportional to the
+     * parser's "self" execution time (excluding the execution time of its children).
+     */
+    public long selfSamples = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of samples in which the parser was running. Proportional to the parser's "total"
+     * execution time (including the execution time of its children).
+     *
+     * <p>Note that parser that recurse are not double-counted: a sample counts only once towards
+     * this total, however many times the parser appears on the stack.
+     */
+    public long totalSamples = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Last sample in which {@link #totalSamples} was incremented, to avoid double-counting.
+     */
+    long lastSample = -1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public ParserProfile (Parser parser) {
+        this.parser = parser;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a copy of this profile.
+     */
+    public ParserProfile copy()
+    {
+        ParserProfile copy = new ParserProfile(parser);
+        copy.selfSamples = selfSamples;
+        copy.totalSamples = totalSamples;
+        return copy;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString() {
+        return "ParserProfile{" +
+            "parser: " + parser +
+            ", self: "  + String.format("%,d", selfSamples) +
+            ", total: " + String.format("%,d", totalSamples) +
+            '}';
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
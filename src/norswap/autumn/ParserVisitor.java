@@ -117,6 +117,7 @@ public interface ParserVisitor
     void visit (Memo parser);
     void visit (Not parser);
     void visit (ObjectPredicate parser);
+    void visit (OperatorTable parser);
     void visit (Optional parser);
     void visit (Repeat parser);
     void visit (RightExpression parser);
@@ -0,0 +1,89 @@
+package norswap.autumn;
+
+import norswap.autumn.positions.LineMap;
+
+/**
+ * A parse error in one of the records of a stream (see {@link Autumn#stream}).
+ */
+public final class RecordError
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Input offset at which the record that failed to parse starts.
+     */
+    public final int recordStart;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Input offset of the furthest error encountered while parsing the record.
+     */
+    public final int errorOffset;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The message associated with the furthest error, if any, or null.
+     */
+    public final String errorMessage;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If {@link ParseOptions#recordCallStack} is set, the stack of parser invocations that lead to
+     * the furthest error. Otherwise, always null.
+     */
+    public final ParserCallStack errorCallStack;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Input offset at which the stream resumed after skipping the record with the
+     * resynchronization rule, or -1 if the stream stopped at this error.
+     */
+    public final int resumeOffset;
+
+    // ---------------------------------------------------------------------------------------------
+
+    RecordError (int recordStart, int errorOffset, String errorMessage,
+                 ParserCallStack errorCallStack, int resumeOffset)
+    {
+        this.recordStart = recordStart;
+        this.errorOffset = errorOffset;
+        this.errorMessage = errorMessage;
+        this.errorCallStack = errorCallStack;
+        this.resumeOffset = resumeOffset;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a description of the error, converting the input positions using {@code map} (can
+     * be null, in which case plain offsets will be used).
+     */
+    public String toString (LineMap map)
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("Record starting at ").append(LineMap.string(map, recordStart));
+        b.append(" failed to parse, furthest error at ").append(LineMap.string(map, errorOffset));
+        if (errorMessage != null)
+            b.append(": ").append(errorMessage);
+        if (resumeOffset >= 0)
+            b.append(" (resumed at ").append(LineMap.string(map, resumeOffset)).append(")");
+        b.append(".");
+        if (errorCallStack != null) {
+            b.append("\n");
+            errorCallStack.appendTo(b, 1, map, false, map == null ? null : map.name());
+        }
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString() {
+        return toString(null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -35,6 +35,10 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
 
     // ---------------------------------------------------------------------------------------------
 
+    private int peakSize;
+
+    // ---------------------------------------------------------------------------------------------
+
     public SideEffectingArrayStack (Log log) {
         this.log = log;
     }
@@ -48,6 +52,7 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
     {
         log.apply(() -> {
             super.push(item);
+            if (size() > peakSize) peakSize = size();
             return super::pop;
         });
     }
@@ -97,4 +102,13 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the maximum size that the stack reached through {@link #push(Object)}.
+     */
+    public int peakSize() {
+        return peakSize;
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
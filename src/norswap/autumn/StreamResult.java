@@ -0,0 +1,131 @@
+package norswap.autumn;
+
+/**
+ * The results of a streaming parse, returned by one of the {@link Autumn} {@code stream} methods.
+ *
+ * <p>The values produced by the records are not part of the result: they are passed to the
+ * consumer supplied to the {@code stream} method as soon as each record has been parsed.
+ */
+public final class StreamResult
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the whole input was consumed (possibly skipping records that failed to parse, if a
+     * resynchronization rule was supplied).
+     */
+    public final boolean complete;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Input position at which the stream stopped, which is the input size if {@link #complete}.
+     */
+    public final int position;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of records successfully parsed (whose values were passed to the consumer).
+     */
+    public final int records;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of records that failed to parse (each of which was reported to the error consumer,
+     * if any).
+     */
+    public final int errors;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The error of the record that stopped the stream (because no resynchronization rule was
+     * supplied or because it failed), or null if the stream was not stopped by a record error.
+     */
+    public final RecordError error;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Exception (really, Throwable) thrown by a parser that caused the stream to terminate, or null
+     * otherwise. Exceptions thrown by the consumers are not caught.
+     *
+     * <p>This is null if the stream was aborted because it exceeded its budget (which applies to
+     * the whole stream), which is reported in {@link #budgetExceeded} instead.
+     */
+    public final Throwable thrown;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If the stream was aborted because it exceeded one of the limits of its {@link
+     * ParseOptions#budget}, the exception describing the exceeded limit, null otherwise.
+     */
+    public final BudgetExceededException budgetExceeded;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum number of side effects held by the log during the stream (see {@link
+     * Log#peakSize()}), which is bounded by the number of side effects of a single record.
+     */
+    public final int peakLogSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum size reached by the value stack during the stream (see {@link
+     * SideEffectingArrayStack#peakSize()}), which is bounded by the size needed for a single
+     * record.
+     */
+    public final int peakStackSize;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The options with which the stream was launched.
+     */
+    public final ParseOptions options;
+
+    // ---------------------------------------------------------------------------------------------
+
+    StreamResult (
+        boolean complete,
+        int position,
+        int records,
+        int errors,
+        RecordError error,
+        Throwable thrown,
+        BudgetExceededException budgetExceeded,
+        int peakLogSize,
+        int peakStackSize,
+        ParseOptions options)
+    {
+        this.complete = complete;
+        this.position = position;
+        this.records = records;
+        this.errors = errors;
+        this.error = error;
+        this.thrown = thrown;
+        this.budgetExceeded = budgetExceeded;
+        this.peakLogSize = peakLogSize;
+        this.peakStackSize = peakStackSize;
+        this.options = options;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return String.format("StreamResult{complete: %b, position: %d, records: %d, errors: %d%s}",
+            complete, position, records, errors,
+            thrown != null ? ", thrown: " + thrown
+                : budgetExceeded != null ? ", budget exceeded: " + budgetExceeded.limit
+                : error != null ? ", stopped at: " + error
+                : "");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -41,6 +41,9 @@ public final class MemoTable implements Memoizer
     /** cf. {@link #hashes} */
     private MemoEntry[] entries = new MemoEntry[8];
 
+    /** Smallest start position of the stored entries, or {@code MAX_VALUE} if there are none. */
+    private int minPosition = Integer.MAX_VALUE;
+
     // ---------------------------------------------------------------------------------------------
 
     /**
@@ -122,6 +125,43 @@ public final class MemoTable implements Memoizer
         }
 
         insert(entry);
+
+        if (entry.startPosition < minPosition)
+            minPosition = entry.startPosition;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Evicts all the entries whose start position is smaller than {@code position}, and shrinks
+     * the table to fit the remaining entries.
+     */
+    @Override public void evictBefore (int position)
+    {
+        if (position <= minPosition) return;
+
+        MemoEntry[] entries0 = entries;
+        int kept = 0;
+        for (MemoEntry entry: entries0)
+            if (entry != null && entry.startPosition >= position)
+                ++ kept;
+
+        int len = 8;
+        while (kept / (double) len > MAX_LOAD / 2)
+            len *= 2;
+
+        hashes = new long       [len];
+        entries = new MemoEntry [len];
+        occupied = kept;
+        maxDisplacement = 0;
+        minPosition = Integer.MAX_VALUE;
+
+        for (MemoEntry entry: entries0)
+            if (entry != null && entry.startPosition >= position) {
+                insert(entry);
+                if (entry.startPosition < minPosition)
+                    minPosition = entry.startPosition;
+            }
     }
 
     // ---------------------------------------------------------------------------------------------
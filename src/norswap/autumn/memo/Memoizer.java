@@ -1,6 +1,7 @@
 package norswap.autumn.memo;
 
 import norswap.autumn.positions.LineMap;
+import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.parsers.Memo;
 import java.util.Objects;
@@ -76,6 +77,17 @@ public interface Memoizer
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Called when the parse is cut at the given position ({@link Parse#cut()}): entries whose
+     * start position is smaller than {@code position} will never be looked up anymore, and may be
+     * evicted.
+     *
+     * <p>The default implementation does nothing, which is suitable for bounded memoizers.
+     */
+    default void evictBefore (int position) {}
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a textual representation of the content of the memoizer (on a single line),
      * converting the input positions using {@code map} (can be null, in which case plain offsets
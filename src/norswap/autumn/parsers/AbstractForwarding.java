@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.ParseOptions;
 import norswap.autumn.Parser;
@@ -23,7 +25,7 @@ import java.util.Collections;
  * visited as an instance of {@link AbstractForwarding}, which often enables useful defaults through
  * reference to the {@link #forwardee}.
  */
-public abstract class AbstractForwarding extends Parser
+public abstract class AbstractForwarding extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -56,6 +58,18 @@ public abstract class AbstractForwarding extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override final public Parser start (Parse parse, IterativeEngine engine) {
+        return forwardee;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override final public Parser resume (Parse parse, IterativeEngine engine, boolean result) {
+        return engine.done(result);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
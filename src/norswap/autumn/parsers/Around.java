@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar.rule;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -15,7 +17,7 @@ import java.util.List;
  * <p>Build with {@link rule#sep(int, Object)}, {@link rule#sep_trailing(int, Object)} or {@link
  * rule#sep_exact(int, Object)}.
  */
-public final class Around extends Parser
+public final class Around extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -80,6 +82,71 @@ public final class Around extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    // states of an invocation (slot 0), the number of repetitions is held in slot 1
+    private static final int AROUND = 0, REPETITION = 1, TRAILING = 2;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return around;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        switch (engine.getInt(0))
+        {
+            case AROUND:
+                if (result)
+                    return repetition(engine, 0);
+                if (min == 0 && trailing) {
+                    engine.setInt(0, TRAILING);
+                    return inside;
+                }
+                return engine.done(min == 0);
+
+            case REPETITION:
+                int count = engine.getInt(1);
+                if (result)
+                    return repetition(engine, count + 1);
+                return count < min - 1
+                    ? engine.done(false)
+                    : trailing(engine);
+
+            default: // TRAILING (only reached if min == 0 when the first around failed)
+                return engine.done(true);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the next parser to invoke after {@code count} successful invocations of {@link
+     * #insideThenAround}.
+     */
+    private Parser repetition (IterativeEngine engine, int count)
+    {
+        if (count < min - 1 || !exact) {
+            engine.setInt(0, REPETITION);
+            engine.setInt(1, count);
+            return insideThenAround;
+        }
+        return trailing(engine);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser trailing (IterativeEngine engine)
+    {
+        if (!trailing)
+            return engine.done(true);
+        engine.setInt(0, TRAILING);
+        return inside;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
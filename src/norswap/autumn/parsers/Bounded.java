@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -25,7 +27,7 @@ import java.util.function.Predicate;
  * towards the furthest error. The changes it makes to the context are also <b>not</b> undone before
  * calling {@link #fine}.
  */
-public final class Bounded extends Parser
+public final class Bounded extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -83,6 +85,52 @@ public final class Bounded extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    // states of an invocation (slot 0), while the fine parser runs, slot 1 holds the log size after
+    // the coarse parser, and slots 2 and 3 the end of input before and after bounding it
+    private static final int COARSE = 0, FINE = 1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return coarse;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        if (engine.getInt(0) == COARSE) {
+            if (!result)
+                return engine.done(false);
+
+            engine.setInt(0, FINE);
+            engine.setInt(1, parse.log.size());
+            engine.setInt(2, parse.endOfInput);
+            engine.setInt(3, parse.pos);
+            parse.endOfInput = parse.pos;
+            parse.pos = engine.startPosition();
+            return fine;
+        }
+
+        int end1 = engine.getInt(3);
+        parse.endOfInput = engine.getInt(2);
+
+        if (result && parse.pos == end1)
+            return engine.done(true);
+
+        if (fallback.test(parse)) {
+            parse.pos = end1;
+            if (result) parse.log.rollback(engine.getInt(1));
+            return engine.done(true);
+        }
+
+        parse.pos = engine.startPosition();
+        parse.log.rollback(engine.startLogSize());
+        return engine.done(false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
@@ -0,0 +1,344 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Grammar;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A structured representation of a set of characters (Unicode code points), as matched by a
+ * {@link CharPredicate}.
+ *
+ * <p>Unlike an opaque {@link IntPredicate}, a character class can be inspected and combined with
+ * other character classes (via {@link #or}, {@link #and} and {@link #not}), and can be compiled
+ * (via {@link #compile()}) to a lookup table that answers membership queries for characters of the
+ * Basic Multilingual Plane (BMP, code points below {@code 0x10000}) in constant time. Code points
+ * outside the BMP are tested against the structured representation.
+ *
+ * <p>The lookup table has two levels: the high byte of the character selects a page of 256 bits,
+ * and the low byte selects a bit within the page. Pages that are entirely empty or entirely full
+ * are shared, so that the table for most classes is only a few hundred bytes.
+ *
+ * <p>Character classes are immutable. Build them with the static factory methods of this class, or
+ * get them from the {@link CharPredicate} factory methods and {@link Grammar} builders, which all
+ * produce structured classes (with the exception of {@link Grammar#cpred}).
+ */
+public abstract class CharClass
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of code points in the Basic Multilingual Plane. */
+    private static final int BMP_SIZE = 0x10000;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private CharClass() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true iff the code point {@code c} is a member of this class.
+     *
+     * <p>This tests the structured representation directly, use {@link #compile()} to obtain a
+     * faster predicate.
+     */
+    public abstract boolean contains (int c);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the bits corresponding to the BMP characters in this class in {@code bits}, which
+     * is a bitmap of {@code BMP_SIZE} bits.
+     */
+    abstract void fill (long[] bits);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a bitmap of the BMP characters in this class (character {@code c} is in the class iff
+     * {@code (bits[c >>> 6] & (1L << c)) != 0}).
+     */
+    final long[] bitmap()
+    {
+        long[] bits = new long[BMP_SIZE / 64];
+        fill(bits);
+        return bits;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching the characters in either this class or {@code other}.
+     */
+    public CharClass or (CharClass other) {
+        return union(this, other);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching the characters in both this class and {@code other}.
+     */
+    public CharClass and (CharClass other) {
+        return new Intersection(this, other);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching all the characters that are not in this class.
+     */
+    public CharClass not() {
+        return new Negation(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles this class to a predicate backed by a two-level lookup table (see {@link
+     * CharClass}).
+     */
+    public IntPredicate compile() {
+        return new Table(this);
+    }
+
+    // =============================================================================================
+
+    /**
+     * Returns a character class matching the single character {@code c}.
+     */
+    public static CharClass single (int c) {
+        return new Range(c, c);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching the characters in the (inclusive) range [start-end].
+     */
+    public static CharClass range (int start, int end) {
+        return new Range(start, end);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching the code points of {@code chars}.
+     */
+    public static CharClass set (String chars) {
+        return new Set(chars.codePoints().toArray());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching the given code points.
+     */
+    public static CharClass set (int... chars) {
+        return new Set(chars.clone());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching the characters whose Unicode general category (as
+     * returned by {@link Character#getType(int)}) is one of {@code types} (e.g. {@link
+     * Character#UPPERCASE_LETTER}).
+     */
+    public static CharClass category (int... types) {
+        return new Category(types.clone());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a character class matching the characters in any of the given classes.
+     */
+    public static CharClass union (CharClass... classes) {
+        return new Union(classes.clone());
+    }
+
+    // =============================================================================================
+
+    private static final class Range extends CharClass
+    {
+        private final int start, end;
+
+        Range (int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override public boolean contains (int c) {
+            return start <= c && c <= end;
+        }
+
+        @Override void fill (long[] bits)
+        {
+            int last = Math.min(end, BMP_SIZE - 1);
+            for (int c = Math.max(start, 0); c <= last; ++c)
+                bits[c >>> 6] |= 1L << c;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Set extends CharClass
+    {
+        /** Sorted code points. */
+        private final int[] chars;
+
+        Set (int[] chars) {
+            Arrays.sort(chars);
+            this.chars = chars;
+        }
+
+        @Override public boolean contains (int c) {
+            return Arrays.binarySearch(chars, c) >= 0;
+        }
+
+        @Override void fill (long[] bits)
+        {
+            for (int c: chars)
+                if (0 <= c && c < BMP_SIZE)
+                    bits[c >>> 6] |= 1L << c;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Category extends CharClass
+    {
+        private final int[] types;
+
+        Category (int[] types) {
+            this.types = types;
+        }
+
+        @Override public boolean contains (int c)
+        {
+            int type = Character.getType(c);
+            for (int t: types)
+                if (t == type)
+                    return true;
+            return false;
+        }
+
+        @Override void fill (long[] bits)
+        {
+            for (int c = 0; c < BMP_SIZE; ++c)
+                if (contains(c))
+                    bits[c >>> 6] |= 1L << c;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Union extends CharClass
+    {
+        private final CharClass[] classes;
+
+        Union (CharClass[] classes) {
+            this.classes = classes;
+        }
+
+        @Override public boolean contains (int c)
+        {
+            for (CharClass cls: classes)
+                if (cls.contains(c))
+                    return true;
+            return false;
+        }
+
+        @Override void fill (long[] bits)
+        {
+            for (CharClass cls: classes)
+                cls.fill(bits);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Intersection extends CharClass
+    {
+        private final CharClass left, right;
+
+        Intersection (CharClass left, CharClass right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override public boolean contains (int c) {
+            return left.contains(c) && right.contains(c);
+        }
+
+        @Override void fill (long[] bits)
+        {
+            long[] l = left.bitmap();
+            long[] r = right.bitmap();
+            for (int i = 0; i < bits.length; ++i)
+                bits[i] |= l[i] & r[i];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Negation extends CharClass
+    {
+        private final CharClass negated;
+
+        Negation (CharClass negated) {
+            this.negated = negated;
+        }
+
+        @Override public boolean contains (int c) {
+            return !negated.contains(c);
+        }
+
+        @Override void fill (long[] bits)
+        {
+            long[] n = negated.bitmap();
+            for (int i = 0; i < bits.length; ++i)
+                bits[i] |= ~n[i];
+        }
+    }
+
+    // =============================================================================================
+
+    /**
+     * The predicate returned by {@link #compile()}.
+     */
+    private static final class Table implements IntPredicate
+    {
+        private static final long[] EMPTY = new long[4];
+        private static final long[] FULL = { -1L, -1L, -1L, -1L };
+
+        /** 256 pages of 256 bits (4 longs) each. */
+        private final long[][] pages = new long[256][];
+
+        /** Used for code points outside the BMP. */
+        private final CharClass cls;
+
+        Table (CharClass cls)
+        {
+            this.cls = cls;
+            long[] bits = cls.bitmap();
+
+            for (int p = 0; p < 256; ++p) {
+                long[] page = Arrays.copyOfRange(bits, p * 4, p * 4 + 4);
+                pages[p]
+                    = Arrays.equals(page, EMPTY) ? EMPTY
+                    : Arrays.equals(page, FULL)  ? FULL
+                    : page;
+            }
+        }
+
+        @Override public boolean test (int c)
+        {
+            return c >>> 16 == 0 // in the BMP
+                ? (pages[c >>> 8][(c >>> 6) & 3] & (1L << c)) != 0
+                : cls.contains(c);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
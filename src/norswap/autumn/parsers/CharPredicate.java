@@ -18,9 +18,16 @@ import static norswap.autumn.util.ParserStringsUtil.escapeQuotedSection;
  * a {@link #name} property that will be used to print the parser, unless a {@link #rule()} name
  * has been set for the parser.
  *
+ * <p>The parser may carry a structured representation of the set of characters it matches
+ * ({@link #charClass}), in which case its predicate is a compiled lookup table (see {@link
+ * CharClass}). All factory methods in this class produce such parsers, as do all builders in {@link
+ * Grammar}, excepted {@link Grammar#cpred(IntPredicate)}. A choice between such parsers can be
+ * merged into a single parser (see {@link #union(Parser...)}), which {@link Choice} does
+ * automatically.
+ *
  * <p>Build with {@link Grammar#cpred(IntPredicate)}, {@link Grammar#set(int...)}, {@link Grammar#set(String)},
- * {@link Grammar#range(int, int)}, as well a a few pre-defined parsers in {@link Grammar}. Assign a name
- * with {@link norswap.autumn.Grammar.rule#named(String)}.
+ * {@link Grammar#range(int, int)}, {@link Grammar#category(int...)}, as well a a few pre-defined
+ * parsers in {@link Grammar}. Assign a name with {@link norswap.autumn.Grammar.rule#named(String)}.
  */
 public final class CharPredicate extends Parser
 {
@@ -37,6 +44,14 @@ public final class CharPredicate extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The structured representation of the set of characters matched by {@link #predicate}, or null
+     * if the parser was built from an opaque predicate.
+     */
+    public final CharClass charClass;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Creates a new parser that matches a single character that satisfies {@code predicate}.
      * {@code name} is used as display name for this parser.
@@ -45,6 +60,20 @@ public final class CharPredicate extends Parser
     {
         this.name = name;
         this.predicate = predicate;
+        this.charClass = null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser that matches a single character in {@code charClass}, which is compiled
+     * to a lookup table. {@code name} is used as display name for this parser.
+     */
+    public CharPredicate (String name, CharClass charClass)
+    {
+        this.name = name;
+        this.predicate = charClass.compile();
+        this.charClass = charClass;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -84,7 +113,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate any()
     {
-        return new CharPredicate("<any char>", it -> it != 0);
+        return new CharPredicate("<any char>", CharClass.single(0).not());
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -99,7 +128,7 @@ public final class CharPredicate extends Parser
             : "" + ((char) c >> 16) + ((char) c & 0x0000FFFF);
 
         String name = "[" + escapeQuotedSection(chars) + "]";
-        return new CharPredicate(name, it -> it == c);
+        return new CharPredicate(name, CharClass.single(c));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -110,8 +139,7 @@ public final class CharPredicate extends Parser
     public static CharPredicate range (int start, int end)
     {
         String str = escapeQuotedSection(start + "-" + end);
-        return new CharPredicate("[" + str + "]", it ->
-            start <= it && it <= end);
+        return new CharPredicate("[" + str + "]", CharClass.range(start, end));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -121,8 +149,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate set (String chars)
     {
-        return new CharPredicate("[" + escapeQuotedSection(chars) + "]", it ->
-            chars.indexOf(it) >= 0); // indexOf also works with code points
+        return new CharPredicate("[" + escapeQuotedSection(chars) + "]", CharClass.set(chars));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -132,10 +159,8 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate set (int... chars)
     {
-    	String s = new String(chars, 0, chars.length);
-    	Arrays.sort(chars);
-        return new CharPredicate("[" + escapeQuotedSection(s) + "]", it ->
-        Arrays.binarySearch(chars, it) >= 0);
+        String s = new String(chars, 0, chars.length);
+        return new CharPredicate("[" + escapeQuotedSection(s) + "]", CharClass.set(chars));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -145,8 +170,8 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate alpha()
     {
-        return new CharPredicate("<alpha>", it ->
-            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z');
+        return new CharPredicate("<alpha>",
+            CharClass.range('a', 'z').or(CharClass.range('A', 'Z')));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -156,8 +181,8 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate alphanum()
     {
-        return new CharPredicate("<alpha>", it ->
-            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z' || '0' <= it && it <= '9');
+        return new CharPredicate("<alpha>", CharClass.union(
+            CharClass.range('a', 'z'), CharClass.range('A', 'Z'), CharClass.range('0', '9')));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -167,8 +192,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate digit()
     {
-        return new CharPredicate("<digit>", it ->
-            '0' <= it && it <= '9');
+        return new CharPredicate("<digit>", CharClass.range('0', '9'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -179,8 +203,8 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate hexDigit()
     {
-        return new CharPredicate("<hex digit>", it ->
-            '0' <= it && it <= '9' || 'a' <= it && it <= 'f' || 'A' <= it && it <= 'F');
+        return new CharPredicate("<hex digit>", CharClass.union(
+            CharClass.range('0', '9'), CharClass.range('a', 'f'), CharClass.range('A', 'F')));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -190,8 +214,50 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate octalDigit()
     {
-        return new CharPredicate("<octal digit>", it ->
-            '0' <= it && it <= '7');
+        return new CharPredicate("<octal digit>", CharClass.range('0', '7'));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser that matches a single character whose Unicode general category (as
+     * returned by {@link Character#getType(int)}) is one of {@code types}.
+     */
+    public static CharPredicate category (int... types)
+    {
+        String name = "<category " + Arrays.toString(types).replace(",", "") + ">";
+        return new CharPredicate(name, CharClass.category(types));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If all {@code parsers} are {@link CharPredicate} with a {@link #charClass} or {@link Choice}
+     * with a {@link Choice#union} (and none of them {@link #excludeErrors excludes errors}), returns
+     * a single parser that matches the same thing as a {@link Choice} between these parsers, but
+     * using a single table lookup. Otherwise, returns null.
+     */
+    public static CharPredicate union (Parser... parsers)
+    {
+        CharClass[] classes = new CharClass[parsers.length];
+        StringBuilder b = new StringBuilder("choice(");
+
+        for (int i = 0; i < parsers.length; ++i) {
+            Parser parser = parsers[i];
+            if (parser.excludeErrors) return null;
+            CharPredicate child = parser instanceof Choice
+                ? ((Choice) parser).union
+                : parser instanceof CharPredicate
+                    ? (CharPredicate) parser
+                    : null;
+            if (child == null || child.charClass == null) return null;
+            classes[i] = child.charClass;
+            if (i > 0) b.append(", ");
+            b.append(parser);
+        }
+
+        b.append(")");
+        return new CharPredicate(b.toString(), CharClass.union(classes));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -1,21 +1,38 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.ToIntFunction;
 
 import static norswap.utils.Strings.joinArray;
 
 /**
  * Matches the same thing as its first matching child, or fails if none succeed.
  *
+ * <p>If {@link #kindOf} is set and the input is a list, the choice only tries the children that
+ * can match an object of the kind of the next object in the input (as determined by a {@link
+ * ObjectPredicate} that tests the object kind and appears at the start of the child). This is
+ * done via a table indexed by kind, computed the first time the choice is used over a list.
+ *
+ * <p>If all the children are structured {@link CharPredicate}, the choice matches a character
+ * with a single table lookup in their {@link #union}, unless the parse observes the invocations of
+ * individual parsers ({@link Parse#observed}). The children remain the children of the choice, and
+ * keep their rule names.
+ *
  * <p>Build with {@link Grammar#choice(Object...)}
  */
-public final class Choice extends Parser
+public final class Choice extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -23,6 +40,28 @@ public final class Choice extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * If non-null, the function used to extract kinds from objects, which enables dispatching on
+     * the kind of the next object when parsing a list.
+     */
+    public final ToIntFunction<Object> kindOf;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If all the children are structured {@link CharPredicate} (see {@link
+     * CharPredicate#union(Parser...)}), a predicate that matches the same thing as the choice,
+     * otherwise null.
+     */
+    public final CharPredicate union;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Lazily computed by {@link #dispatch()}. */
+    private volatile Dispatch dispatch;
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public List<Parser> children() {
         return Collections.unmodifiableList(Arrays.asList(children));
     }
@@ -30,13 +69,34 @@ public final class Choice extends Parser
     // ---------------------------------------------------------------------------------------------
 
     public Choice (Parser... children) {
+        this(null, children);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a choice that dispatches on the kind of the next object (as returned by {@code
+     * kindOf}) when parsing a list. If {@code kindOf} is null, this is a regular choice.
+     */
+    public Choice (ToIntFunction<Object> kindOf, Parser... children) {
+        this.kindOf = kindOf;
         this.children = children;
+        this.union = children.length > 1 ? CharPredicate.union(children) : null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
     @Override public boolean doparse (Parse parse)
     {
+        if (union != null && parse.string != null && !parse.observed)
+            return union.doparse(parse);
+
+        if (kindOf != null && parse.list != null) {
+            Dispatch d = dispatch();
+            if (d.candidates.length > 0)
+                return dispatch(parse, d);
+        }
+
         for (Parser child: children)
             if (child.parse(parse))
                 return true;
@@ -45,6 +105,186 @@ public final class Choice extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        // slot 0: index of the current child (in the candidates in dispatch mode)
+        // object slot 0: the candidates in dispatch mode, null otherwise
+        if (union != null && parse.string != null && !parse.observed)
+            return engine.done(union.doparse(parse));
+
+        if (kindOf != null && parse.list != null) {
+            Dispatch d = dispatch();
+            if (d.candidates.length > 0) {
+                int[] candidates = candidates(parse, d);
+                engine.setObject(0, candidates);
+                return candidates.length == 0 ? engine.done(false) : children[candidates[0]];
+            }
+        }
+
+        return children.length == 0 ? engine.done(false) : children[0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        int[] candidates = (int[]) engine.getObject(0);
+        int i = engine.getInt(0) + 1;
+        int size = candidates != null ? candidates.length : children.length;
+        if (result || i == size)
+            return engine.done(result);
+        engine.setInt(0, i);
+        return children[candidates != null ? candidates[i] : i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean dispatch (Parse parse, Dispatch d)
+    {
+        for (int i: candidates(parse, d))
+            if (children[i].parse(parse))
+                return true;
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the indices of the children to try (in order) in dispatch mode, recording the error
+     * of the skipped children if needed.
+     */
+    private int[] candidates (Parse parse, Dispatch d)
+    {
+        int pos = parse.pos;
+        Object object = parse.objectAt(pos);
+        int kind = object == null ? -1 : kindOf.applyAsInt(object);
+        boolean inRange = 0 <= kind && kind < d.candidates.length;
+        int[] candidates = inRange ? d.candidates[kind] : d.fallback;
+
+        // The skipped children would have failed at the current position.
+        if ((inRange ? d.skips[kind] : d.fallbackSkips) && parse.error <= pos) {
+            parse.error = pos;
+            if (parse.errorMessage() != null)
+                parse.setErrorMessage(null);
+            if (parse.options.recordCallStack)
+                parse.errorCallStack = parse.callStack.clone();
+        }
+
+        return candidates;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The dispatch table: {@code candidates[kind]} lists (in order) the indices of the children
+     * that may match an object of the given kind, while {@code fallback} lists the children that
+     * may match any other object (or the end of the input). {@code skips} and {@code
+     * fallbackSkips} indicate whether any child that does not exclude errors is skipped.
+     */
+    private static final class Dispatch
+    {
+        int[][] candidates;
+        boolean[] skips;
+        int[] fallback;
+        boolean fallbackSkips;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Dispatch dispatch()
+    {
+        Dispatch d = dispatch;
+        if (d != null) return d;
+
+        BitSet[] firsts = new BitSet[children.length];
+        int size = 0;
+        for (int i = 0; i < children.length; ++i) {
+            firsts[i] = firstKinds(children[i], new HashSet<>());
+            if (firsts[i] != null)
+                size = Math.max(size, firsts[i].length());
+        }
+
+        d = new Dispatch();
+        d.candidates = new int[size][];
+        d.skips = new boolean[size];
+
+        for (int kind = -1; kind < size; ++kind) {
+            ArrayList<Integer> list = new ArrayList<>();
+            boolean skips = false;
+            for (int i = 0; i < children.length; ++i)
+                if (firsts[i] == null || kind >= 0 && firsts[i].get(kind))
+                    list.add(i);
+                else
+                    skips |= !children[i].excludeErrors;
+            int[] array = list.stream().mapToInt(x -> x).toArray();
+            if (kind < 0) {
+                d.fallback = array;
+                d.fallbackSkips = skips;
+            } else {
+                d.candidates[kind] = array;
+                d.skips[kind] = skips;
+            }
+        }
+
+        return dispatch = d;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the set of kinds of the objects that {@code parser} can start with, or null if it is
+     * unknown or if {@code parser} can succeed without consuming an object. This is conservative:
+     * only a few built-in parsers are analyzed.
+     */
+    private BitSet firstKinds (Parser parser, HashSet<Parser> visiting)
+    {
+        if (!visiting.add(parser))
+            return null; // recursion
+        BitSet kinds = firstKinds0(parser, visiting);
+        visiting.remove(parser);
+        return kinds;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private BitSet firstKinds0 (Parser parser, HashSet<Parser> visiting)
+    {
+        if (parser instanceof ObjectPredicate) {
+            ObjectPredicate pred = (ObjectPredicate) parser;
+            if (pred.kindOf != kindOf || pred.kind < 0) return null;
+            BitSet set = new BitSet();
+            set.set(pred.kind);
+            return set;
+        }
+        if (parser instanceof Choice) {
+            BitSet set = new BitSet();
+            for (Parser child: ((Choice) parser).children) {
+                BitSet kinds = firstKinds(child, visiting);
+                if (kinds == null) return null;
+                set.or(kinds);
+            }
+            return set.isEmpty() ? null : set;
+        }
+        if (parser instanceof Sequence) {
+            Iterator<Parser> it = parser.children().iterator();
+            return it.hasNext() ? firstKinds(it.next(), visiting) : null;
+        }
+        if (parser instanceof Collect) {
+            Collect collect = (Collect) parser;
+            return collect.actionOnFail ? null : firstKinds(collect.child, visiting);
+        }
+        if (parser instanceof Memo)
+            return firstKinds(((Memo) parser).child, visiting);
+        if (parser instanceof LazyParser)
+            return firstKinds(((LazyParser) parser).child(), visiting);
+        if (parser instanceof TrailingWhitespace)
+            return firstKinds(((TrailingWhitespace) parser).child, visiting);
+
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
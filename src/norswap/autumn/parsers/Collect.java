@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -23,7 +25,7 @@ import java.util.Collections;
  * <p>The {@code lookback} constructor parameter enables getting additional items from the stack
  * to be prepended to the collected items. See {@link #lookback} for more details.
  */
-public final class Collect extends Parser
+public final class Collect extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -97,7 +99,35 @@ public final class Collect extends Parser
         int leadingWhitespaceStart = parse.leadingWhitespaceStart();
 
         boolean result = child.parse(parse);
+        return collect(parse, result, pos0, size0, leadingWhitespaceStart);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        engine.setInt(0, parse.stack.size());
+        engine.setInt(1, parse.leadingWhitespaceStart());
+        return child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        return engine.done(collect(parse, result,
+            engine.startPosition(), engine.getInt(0), engine.getInt(1)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Performs the work of the parser after the child completed with the given result, given
+     * the position, stack size and leading whitespace start before it was invoked.
+     */
+    private boolean collect
+        (Parse parse, boolean result, int pos0, int size0, int leadingWhitespaceStart)
+    {
         if (!result && !actionOnFail)
             return false;
 
@@ -0,0 +1,57 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Grammar;
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+
+/**
+ * A parser that always succeeds, matching no input, and declares the current input position final
+ * by calling {@link Parse#cut()}: the parse can no longer backtrack before this position.
+ *
+ * <p>This lets the parse discard the state it only keeps to be able to backtrack: the side
+ * effects logged so far can no longer be undone (the {@link Parse#log} drops them), and the
+ * memoizers evict their entries starting before the cut.
+ *
+ * <p>If the parse does attempt to backtrack before a cut (i.e. if a parser that was invoked before
+ * the cut fails), it is aborted and fails at its furthest error, as though the parsers that would
+ * otherwise have been tried had failed.
+ *
+ * <p>Cuts must not occur within lookaheads, negations or longest match choices, which always
+ * backtrack over their children: the {@link norswap.autumn.visitors.WellFormednessChecker} rejects
+ * such grammars, and these parsers throw an {@link IllegalStateException} if they encounter a cut
+ * nonetheless (see {@link #checkNotCut}).
+ *
+ * <p>Build with {@link Grammar#cut()} or {@link Grammar.rule#cut()}.
+ */
+public final class Cut extends AbstractPrimitive
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public Cut () {
+        super("cut", true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        parse.cut();
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Throws an {@link IllegalStateException} if the parse was cut after {@code pos0}, the position
+     * at which {@code parser} (which backtracks over its children) was invoked.
+     */
+    static void checkNotCut (Parse parse, Parser parser, int pos0)
+    {
+        if (parse.cutPosition() > pos0)
+            throw new IllegalStateException(String.format(
+                "cut at position %d within %s, which can't backtrack over it to position %d",
+                parse.cutPosition(), parser, pos0));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -24,7 +26,7 @@ import java.util.function.Supplier;
  *
  * <p>Build with {@link Grammar#lazy(Supplier)}.
  */
-public final class LazyParser extends Parser
+public final class LazyParser extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -59,6 +61,18 @@ public final class LazyParser extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return child();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result) {
+        return engine.done(result);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -30,7 +32,7 @@ import java.util.stream.Stream;
  * <p>For each operator, the step action will act as though the match started at the position the
  * {@code LeftExpression} parser was invoked at (hence emulating true left-associative semantics).
  */
-public final class LeftExpression extends Parser
+public final class LeftExpression extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -139,6 +141,107 @@ public final class LeftExpression extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    // Slot 0 holds the state of an invocation: the phase (below) in the low two bits, whether an
+    // operator was matched in the next bit, and the index of the running operator in the others.
+    // Slots 1 and 2 hold the stack size and whitespace start at the start of the invocation, and
+    // slots 3 and 4 the position and log size before the running operator.
+    private static final int LEFT = 0, INFIX = 1, RIGHT = 2, SUFFIX = 3;
+    private static final int MATCHED = 4;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        engine.setInt(1, parse.stack.size());
+        engine.setInt(2, parse.leadingWhitespaceStart());
+        return left;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        int state = engine.getInt(0);
+        int i = state >>> 3;
+
+        switch (state & 3)
+        {
+            case LEFT:
+                return result
+                    ? operator(parse, engine, 0)
+                    : engine.done(false);
+
+            case INFIX:
+                if (result) {
+                    engine.setInt(0, state & ~3 | RIGHT);
+                    return right;
+                }
+                return infix(engine, state & MATCHED, i + 1);
+
+            case RIGHT:
+                if (result) {
+                    applyStep(parse, engine, infixSteps[i]);
+                    return operator(parse, engine, MATCHED);
+                }
+                parse.pos = engine.getInt(3);
+                parse.log.rollback(engine.getInt(4));
+                return infix(engine, state & MATCHED, i + 1);
+
+            default: // SUFFIX
+                if (result) {
+                    applyStep(parse, engine, suffixSteps[i]);
+                    return operator(parse, engine, MATCHED);
+                }
+                return suffix(engine, state & MATCHED, i + 1);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the first operator to try after matching the left operand or an operator ({@code
+     * matched} is {@link #MATCHED} if an operator has been matched, 0 otherwise).
+     */
+    private Parser operator (Parse parse, IterativeEngine engine, int matched)
+    {
+        engine.setInt(3, parse.pos);
+        engine.setInt(4, parse.log.size());
+        return infix(engine, matched, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser infix (IterativeEngine engine, int matched, int i)
+    {
+        if (i == infixes.length)
+            return suffix(engine, matched, 0);
+        engine.setInt(0, i << 3 | matched | INFIX);
+        return infixes[i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser suffix (IterativeEngine engine, int matched, int i)
+    {
+        if (i == suffixes.length)
+            return engine.done(matched != 0 || !operatorRequired);
+        engine.setInt(0, i << 3 | matched | SUFFIX);
+        return suffixes[i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void applyStep (Parse parse, IterativeEngine engine, StackAction step)
+    {
+        int pos0 = engine.startPosition();
+        int stack0 = engine.getInt(1);
+        step.apply(new ActionContext(
+            parse, parse.stack.popFrom(stack0), pos0, stack0,
+            engine.getInt(2), parse.trailingWhitespaceStart(pos0)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -10,6 +12,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static norswap.utils.Strings.joinArray;
+import static norswap.utils.Util.cast;
 
 /**
  * Matches the same thing as its longest matching child, or fails if none succeed.
@@ -17,7 +20,7 @@ import static norswap.utils.Strings.joinArray;
  *
  * <p>Build with {@link Grammar#longest(Object...)}
  */
-public final class Longest extends Parser
+public final class Longest extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -50,6 +53,7 @@ public final class Longest extends Parser
         {
             boolean success = child.parse(parse);
             if (success) {
+                Cut.checkNotCut(parse, this, pos0);
                 if (parse.pos > maxPos) {
                     maxPos = parse.pos;
                     delta = parse.log.delta(log0);
@@ -70,6 +74,54 @@ public final class Longest extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    // slot 0 holds the index of the running child, slot 1 the end position of the longest match,
+    // and object slot 0 its side effects (the log delta)
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        engine.setInt(1, parse.pos);
+        return children.length == 0
+            ? engine.done(false)
+            : children[0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        int pos0 = engine.startPosition();
+        int log0 = engine.startLogSize();
+
+        if (result) {
+            Cut.checkNotCut(parse, this, pos0);
+            if (parse.pos > engine.getInt(1)) {
+                engine.setInt(1, parse.pos);
+                engine.setObject(0, parse.log.delta(log0));
+            }
+
+            parse.pos = pos0;
+            parse.log.rollback(log0);
+        }
+
+        int i = engine.getInt(0) + 1;
+        if (i < children.length) {
+            engine.setInt(0, i);
+            return children[i];
+        }
+
+        List<SideEffect> delta = cast(engine.getObject(0));
+        if (delta == null)
+            return engine.done(false);
+
+        parse.pos = engine.getInt(1);
+        parse.log.apply(delta);
+        return engine.done(true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
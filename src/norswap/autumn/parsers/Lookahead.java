@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -11,7 +13,7 @@ import java.util.Collections;
  *
  * <p>Build with {@link norswap.autumn.Grammar.rule#ahead()}
  */
-public final class Lookahead extends Parser
+public final class Lookahead extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -30,6 +32,7 @@ public final class Lookahead extends Parser
     {
         int pos0 = parse.pos;
         if (child.parse(parse)) {
+            Cut.checkNotCut(parse, this, pos0);
             parse.pos = pos0;
             return true;
         }
@@ -39,6 +42,24 @@ public final class Lookahead extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        if (result) {
+            Cut.checkNotCut(parse, this, engine.startPosition());
+            parse.pos = engine.startPosition();
+        }
+        // otherwise parse.pos has already been reset
+        return engine.done(result);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
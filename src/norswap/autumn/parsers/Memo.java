@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar.rule;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.ParseState;
 import norswap.autumn.Parser;
@@ -35,7 +37,7 @@ import java.util.function.Function;
  *
  * <p>Build with {@link rule#memo(int)} or {@link rule#memo(int, Function)}.
  */
-public final class Memo extends Parser
+public final class Memo extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -68,22 +70,72 @@ public final class Memo extends Parser
         MemoEntry entry = memo.get(child, parse.pos, ctx);
 
         if (entry != null)
-        {
-            if (!entry.succeeded())
-                return false;
-
-            parse.pos = entry.endPosition;
-            parse.log.apply(entry.delta);
-            return true;
-        }
+            return reuse(parse, entry);
 
         int pos0 = parse.pos;
         int log0 = parse.log.size();
+        return memoize(parse, memo, child.parse(parse), pos0, log0, ctx);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        Object ctx = contextExtractor != null ? contextExtractor.apply(parse) : null;
+        Memoizer memo = memoizer.data(parse);
+        MemoEntry entry = memo.get(child, parse.pos, ctx);
+
+        if (entry != null)
+            return engine.done(reuse(parse, entry));
+
+        engine.setInt(0, parse.log.size());
+        engine.setObject(0, memo);
+        engine.setObject(1, ctx);
+        return child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        return engine.done(memoize(parse, (Memoizer) engine.getObject(0), result,
+            engine.startPosition(), engine.getInt(0), engine.getObject(1)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Applies the result of a memo entry found for the current position.
+     */
+    private boolean reuse (Parse parse, MemoEntry entry)
+    {
+        ++ parse.memoHits;
+        if (!entry.succeeded())
+            return false;
+
+        parse.pos = entry.endPosition;
+        parse.log.apply(entry.delta);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Memoizes the result of the child, invoked at {@code pos0} with the given log size and
+     * context.
+     */
+    private boolean memoize
+        (Parse parse, Memoizer memo, boolean result, int pos0, int log0, Object ctx)
+    {
+        // A cut occurred within the child: the entry can never be reused.
+        if (pos0 < parse.cutPosition() || log0 < parse.log.committed())
+            return result;
 
-        entry = new MemoEntry(
-            child.parse(parse), child, pos0, parse.pos, parse.log.delta(log0), ctx);
+        MemoEntry entry = new MemoEntry(
+            result, child, pos0, parse.pos, parse.log.delta(log0), ctx);
 
         memo.memoize(entry);
+        parse.recordMemoEntry(this, entry);
         return entry.succeeded();
     }
 
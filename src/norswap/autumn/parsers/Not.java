@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserCallStack;
@@ -11,7 +13,7 @@ import java.util.Collections;
  *
  * <p>Build with {@link norswap.autumn.Grammar.rule#not()}
  */
-public final class Not extends Parser
+public final class Not extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -31,8 +33,10 @@ public final class Not extends Parser
         int err0 = parse.error;
         String errmsg0 = parse.errorMessage();
         ParserCallStack stk0 = parse.errorCallStack;
+        int pos0 = parse.pos;
         // if the child matches, #parse will undo its side effects
         boolean success = !child.parse(parse);
+        if (!success) Cut.checkNotCut(parse, this, pos0);
         // negated parsers should not count towards the furthest error
         parse.error = err0;
         //noinspection StringEquality
@@ -44,6 +48,30 @@ public final class Not extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        engine.setInt(0, parse.error);
+        engine.setObject(0, parse.errorMessage());
+        engine.setObject(1, parse.errorCallStack);
+        return child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        String errmsg0 = (String) engine.getObject(0);
+        parse.error = engine.getInt(0);
+        //noinspection StringEquality
+        if (parse.errorMessage() != errmsg0)
+            parse.setErrorMessage(errmsg0);
+        parse.errorCallStack = (ParserCallStack) engine.getObject(1);
+        if (result) Cut.checkNotCut(parse, this, engine.startPosition());
+        return engine.done(!result);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
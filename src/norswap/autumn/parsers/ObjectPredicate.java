@@ -6,6 +6,7 @@ import norswap.autumn.ParserVisitor;
 import java.util.Collections;
 import java.util.Objects;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * Matches a single object that satisfies a predicate, within {@link Parse#list}.
@@ -14,7 +15,12 @@ import java.util.function.Predicate;
  * a {@link #name} property that will be used to print the parser, unless a {@link #rule()} name
  * has been set for the parser.
  *
- * <p>Build with {@link norswap.autumn.Grammar#opred(Predicate)} and name with {@link
+ * <p>The parser may also test that the object has a given integer kind (as returned by {@link
+ * #kindOf}). Such parsers are introspectable, and enable a {@link Choice} to dispatch on the kind
+ * of the next object (see {@link Choice#kindOf}).
+ *
+ * <p>Build with {@link norswap.autumn.Grammar#opred(Predicate)} or {@link
+ * norswap.autumn.Grammar#kind(int)} and name with {@link
  * norswap.autumn.Grammar.rule#named(String)}.
  */
 public final class ObjectPredicate extends Parser
@@ -32,6 +38,21 @@ public final class ObjectPredicate extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * If non-null, the function used to extract the kind of an object. The parser then matches
+     * (non-null) objects whose kind is {@link #kind}.
+     */
+    public final ToIntFunction<Object> kindOf;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The kind of objects matched by this parser if {@link #kindOf} is non-null, -1 otherwise.
+     */
+    public final int kind;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Creates a new parser that matches a single object that satisfies {@code predicate}.
      * {@code name} is used as display name for this parser.
@@ -40,6 +61,22 @@ public final class ObjectPredicate extends Parser
     {
         this.name = name;
         this.predicate = predicate;
+        this.kindOf = null;
+        this.kind = -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser that matches a single non-null object whose kind (as returned by {@code
+     * kindOf}) is {@code kind}. {@code name} is used as display name for this parser.
+     */
+    public ObjectPredicate (String name, ToIntFunction<Object> kindOf, int kind)
+    {
+        this.name = name;
+        this.predicate = it -> it != null && kindOf.applyAsInt(it) == kind;
+        this.kindOf = kindOf;
+        this.kind = kind;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -47,6 +84,15 @@ public final class ObjectPredicate extends Parser
     @Override public boolean doparse (Parse parse)
     {
         assert parse.list != null;
+
+        if (kindOf != null) {
+            Object object = parse.objectAt(parse.pos);
+            if (object == null || kindOf.applyAsInt(object) != kind)
+                return false;
+            ++ parse.pos;
+            return true;
+        }
+
         if (predicate.test(parse.objectAt(parse.pos))) {
             ++ parse.pos;
             return true;
@@ -0,0 +1,425 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Grammar;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.actions.ActionContext;
+import norswap.autumn.actions.StackAction;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Matches expressions made of operands and prefix, infix and suffix operators with different
+ * precedences and associativities, using precedence climbing (a.k.a. Pratt parsing).
+ *
+ * <p>This is equivalent to a "tower" of {@link LeftExpression} and {@link RightExpression} (one
+ * per precedence level), but a single parser handles all levels, so that the cost of parsing an
+ * expression is proportional to its size rather than to its size times the number of precedence
+ * levels.
+ *
+ * <p>Higher precedence values bind tighter. The operand of a prefix operator with precedence
+ * {@code p} includes all suffix and infix operators with precedence {@code >= p}. The right
+ * operand of a left-associative infix operator with precedence {@code p} includes all operators
+ * with precedence {@code > p}, while for right-associative operators it includes all operators with
+ * precedence {@code >= p}. A suffix operator with precedence {@code p} applies to expressions that
+ * only include operators with precedence {@code >= p}.
+ *
+ * <p>After matching an operand (possibly preceded by prefix operators), the parser tries to match,
+ * as many times as possible, an infix operator followed by its right operand, or a suffix
+ * operator. Infix operators have priority over suffix operators, and operators of the same kind
+ * prioritize in the order in which they are given (as in a {@link Choice}).
+ *
+ * <p>As it goes, the parser applies the {@link StackAction} corresponding to each matched operator.
+ * The action will act as though the match started at the start of the (sub-)expression the
+ * operator applies to, and its {@link ActionContext#$} includes all items pushed since that
+ * position (i.e. the operands, and anything pushed by the operator).
+ *
+ * <p>Build with {@link Grammar#operator_table()}.
+ */
+public final class OperatorTable extends Parser implements IterativeParser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Operand (e.g. literals, identifiers, parenthesized expressions). */
+    public final Parser operand;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Prefix operators. */
+    public final Parser[] prefixes;
+
+    /** Precedence of the corresponding operators in {@link #prefixes}. */
+    public final int[] prefixPrecedences;
+
+    /** Stack actions associated with the corresponding operators in {@link #prefixes}. */
+    public final StackAction[] prefixSteps;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Infix operators. */
+    public final Parser[] infixes;
+
+    /** Precedence of the corresponding operators in {@link #infixes}. */
+    public final int[] infixPrecedences;
+
+    /** Whether the corresponding operators in {@link #infixes} are left-associative. */
+    public final boolean[] infixLeftAssociative;
+
+    /** Stack actions associated with the corresponding operators in {@link #infixes}. */
+    public final StackAction[] infixSteps;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Suffix operators. */
+    public final Parser[] suffixes;
+
+    /** Precedence of the corresponding operators in {@link #suffixes}. */
+    public final int[] suffixPrecedences;
+
+    /** Stack actions associated with the corresponding operators in {@link #suffixes}. */
+    public final StackAction[] suffixSteps;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public OperatorTable (
+        Parser operand,
+        Parser[] prefixes, int[] prefixPrecedences, StackAction[] prefixSteps,
+        Parser[] infixes, int[] infixPrecedences, boolean[] infixLeftAssociative,
+        StackAction[] infixSteps,
+        Parser[] suffixes, int[] suffixPrecedences, StackAction[] suffixSteps)
+    {
+        assert operand != null;
+        assert prefixes.length == prefixPrecedences.length;
+        assert prefixes.length == prefixSteps.length;
+        assert infixes.length == infixPrecedences.length;
+        assert infixes.length == infixLeftAssociative.length;
+        assert infixes.length == infixSteps.length;
+        assert suffixes.length == suffixPrecedences.length;
+        assert suffixes.length == suffixSteps.length;
+
+        this.operand = operand;
+        this.prefixes = prefixes;
+        this.prefixPrecedences = prefixPrecedences;
+        this.prefixSteps = prefixSteps;
+        this.infixes = infixes;
+        this.infixPrecedences = infixPrecedences;
+        this.infixLeftAssociative = infixLeftAssociative;
+        this.infixSteps = infixSteps;
+        this.suffixes = suffixes;
+        this.suffixPrecedences = suffixPrecedences;
+        this.suffixSteps = suffixSteps;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse) {
+        return expression(parse, Integer.MIN_VALUE);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void applyStep (Parse parse, StackAction step, int pos0, int size0, int whitespace0)
+    {
+        step.apply(new ActionContext(
+            parse, parse.stack.popFrom(size0), pos0, size0,
+            whitespace0, parse.trailingWhitespaceStart(pos0)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Matches an expression that only includes operators whose precedence is {@code >=
+     * minPrecedence} (excepted within the operands themselves).
+     */
+    private boolean expression (Parse parse, int minPrecedence)
+    {
+        final int pos0 = parse.pos;
+        final int size0 = parse.stack.size();
+        final int log0 = parse.log.size();
+        final int whitespace0 = parse.leadingWhitespaceStart();
+
+        prefix: {
+            for (int i = 0; i < prefixes.length; ++i) {
+                if (!prefixes[i].parse(parse))
+                    continue;
+                if (expression(parse, prefixPrecedences[i])) {
+                    applyStep(parse, prefixSteps[i], pos0, size0, whitespace0);
+                    break prefix;
+                }
+                parse.pos = pos0;
+                parse.log.rollback(log0);
+            }
+
+            if (!operand.parse(parse))
+                return false;
+        }
+
+        outer: while (true)
+        {
+            int pos1 = parse.pos;
+            int log1 = parse.log.size();
+
+            for (int i = 0; i < infixes.length; ++i) {
+                int precedence = infixPrecedences[i];
+                if (precedence < minPrecedence || !infixes[i].parse(parse))
+                    continue;
+                int next = infixLeftAssociative[i] ? precedence + 1 : precedence;
+                if (expression(parse, next)) {
+                    applyStep(parse, infixSteps[i], pos0, size0, whitespace0);
+                    continue outer;
+                }
+                parse.pos = pos1;
+                parse.log.rollback(log1);
+            }
+
+            for (int i = 0; i < suffixes.length; ++i) {
+                if (suffixPrecedences[i] < minPrecedence || !suffixes[i].parse(parse))
+                    continue;
+                applyStep(parse, suffixSteps[i], pos0, size0, whitespace0);
+                continue outer;
+            }
+
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    // In iterative mode, the recursive calls to expression (levels) are kept in an int array
+    // (object slot 0), where each level has LEVEL entries laid out as follows. Slot 0 holds the
+    // number of levels, and slot 1 the result of the level that just completed.
+    private static final int MIN_PRECEDENCE = 0, POS0 = 1, SIZE0 = 2, LOG0 = 3, WHITESPACE0 = 4;
+    private static final int POS1 = 5, LOG1 = 6;
+    private static final int STATE = 7; // phase (below) | index of the running operator << 3
+    private static final int LEVEL = 8;
+
+    private static final int
+        PREFIX = 0, PREFIX_NESTED = 1, OPERAND = 2, INFIX = 3, INFIX_NESTED = 4, SUFFIX = 5;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        engine.setObject(0, new int[4 * LEVEL]);
+        return enter(parse, engine, Integer.MIN_VALUE);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        while (true)
+        {
+            int[] levels = (int[]) engine.getObject(0);
+            int l = (engine.getInt(0) - 1) * LEVEL;
+            int state = levels[l + STATE];
+            int i = state >>> 3;
+            Parser next;
+
+            switch (state & 7)
+            {
+                case PREFIX:
+                    if (!result)
+                        return prefix(levels, l, i + 1);
+                    levels[l + STATE] = i << 3 | PREFIX_NESTED;
+                    return enter(parse, engine, prefixPrecedences[i]);
+
+                case PREFIX_NESTED:
+                    if (!result) {
+                        parse.pos = levels[l + POS0];
+                        parse.log.rollback(levels[l + LOG0]);
+                        return prefix(levels, l, i + 1);
+                    }
+                    applyStep(parse, levels, l, prefixSteps[i]);
+                    next = operator(parse, engine, levels, l);
+                    break;
+
+                case OPERAND:
+                    next = result
+                        ? operator(parse, engine, levels, l)
+                        : complete(engine, false);
+                    break;
+
+                case INFIX:
+                    if (!result) {
+                        next = infix(engine, levels, l, i + 1);
+                        break;
+                    }
+                    int precedence = infixPrecedences[i];
+                    levels[l + STATE] = i << 3 | INFIX_NESTED;
+                    return enter(parse, engine,
+                        infixLeftAssociative[i] ? precedence + 1 : precedence);
+
+                case INFIX_NESTED:
+                    if (result) {
+                        applyStep(parse, levels, l, infixSteps[i]);
+                        next = operator(parse, engine, levels, l);
+                    } else {
+                        parse.pos = levels[l + POS1];
+                        parse.log.rollback(levels[l + LOG1]);
+                        next = infix(engine, levels, l, i + 1);
+                    }
+                    break;
+
+                default: // SUFFIX
+                    if (result) {
+                        applyStep(parse, levels, l, suffixSteps[i]);
+                        next = operator(parse, engine, levels, l);
+                    } else {
+                        next = suffix(engine, levels, l, i + 1);
+                    }
+            }
+
+            if (next != null)
+                return next;
+
+            // The innermost level completed, pass its result to the enclosing level.
+            int count = engine.getInt(0) - 1;
+            engine.setInt(0, count);
+            result = engine.getInt(1) != 0;
+            if (count == 0)
+                return engine.done(result);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Starts a new level matching an expression that only includes operators whose precedence is
+     * {@code >= minPrecedence}, and returns the first parser to invoke.
+     */
+    private Parser enter (Parse parse, IterativeEngine engine, int minPrecedence)
+    {
+        int[] levels = (int[]) engine.getObject(0);
+        int count = engine.getInt(0);
+        if ((count + 1) * LEVEL > levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+            engine.setObject(0, levels);
+        }
+        engine.setInt(0, count + 1);
+
+        int l = count * LEVEL;
+        levels[l + MIN_PRECEDENCE] = minPrecedence;
+        levels[l + POS0] = parse.pos;
+        levels[l + SIZE0] = parse.stack.size();
+        levels[l + LOG0] = parse.log.size();
+        levels[l + WHITESPACE0] = parse.leadingWhitespaceStart();
+        return prefix(levels, l, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser prefix (int[] levels, int l, int i)
+    {
+        if (i < prefixes.length) {
+            levels[l + STATE] = i << 3 | PREFIX;
+            return prefixes[i];
+        }
+        levels[l + STATE] = OPERAND;
+        return operand;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the first operator to try after matching an operand or an operator, or null if the
+     * level completes (see {@link #complete}).
+     */
+    private Parser operator (Parse parse, IterativeEngine engine, int[] levels, int l)
+    {
+        levels[l + POS1] = parse.pos;
+        levels[l + LOG1] = parse.log.size();
+        return infix(engine, levels, l, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser infix (IterativeEngine engine, int[] levels, int l, int i)
+    {
+        for (; i < infixes.length; ++i) {
+            if (infixPrecedences[i] < levels[l + MIN_PRECEDENCE])
+                continue;
+            levels[l + STATE] = i << 3 | INFIX;
+            return infixes[i];
+        }
+        return suffix(engine, levels, l, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser suffix (IterativeEngine engine, int[] levels, int l, int i)
+    {
+        for (; i < suffixes.length; ++i) {
+            if (suffixPrecedences[i] < levels[l + MIN_PRECEDENCE])
+                continue;
+            levels[l + STATE] = i << 3 | SUFFIX;
+            return suffixes[i];
+        }
+        return complete(engine, true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Completes the innermost level with the given result, and returns null.
+     */
+    private static Parser complete (IterativeEngine engine, boolean result)
+    {
+        engine.setInt(1, result ? 1 : 0);
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void applyStep (Parse parse, int[] levels, int l, StackAction step)
+    {
+        int pos0 = levels[l + POS0];
+        int size0 = levels[l + SIZE0];
+        step.apply(new ActionContext(
+            parse, parse.stack.popFrom(size0), pos0, size0,
+            levels[l + WHITESPACE0], parse.trailingWhitespaceStart(pos0)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Order: operand, prefix operators, infix operators, suffix operators
+     */
+    @Override public List<Parser> children()
+    {
+        return Collections.unmodifiableList(Stream.of(
+                Stream.of(operand),
+                Arrays.stream(prefixes),
+                Arrays.stream(infixes),
+                Arrays.stream(suffixes))
+            .flatMap(Function.identity())
+            .collect(Collectors.toList()));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toStringFull()
+    {
+        return String.format(
+            "OperatorTable(operand=%s, prefixes=%s, infixes=%s, suffixes=%s)",
+            operand, Arrays.toString(prefixes), Arrays.toString(infixes),
+            Arrays.toString(suffixes));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar.rule;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -11,7 +13,7 @@ import java.util.Collections;
  *
  * <p>Build with {@link rule#opt()}
  */
-public final class Optional extends Parser
+public final class Optional extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -34,6 +36,18 @@ public final class Optional extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result) {
+        return engine.done(true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
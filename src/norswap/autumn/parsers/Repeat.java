@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar.rule;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -11,7 +13,7 @@ import java.util.Collections;
  *
  * <p>Build with {@link rule#at_least(int)} or {@link rule#repeat(int)}.
  */
-public final class Repeat extends Parser
+public final class Repeat extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -53,6 +55,24 @@ public final class Repeat extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return exact && min == 0 ? engine.done(true) : child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        // slot 0: number of successful repetitions so far
+        int count = engine.getInt(0);
+        if (!result)
+            return engine.done(count >= min);
+        engine.setInt(0, ++ count);
+        return exact && count == min ? engine.done(true) : child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
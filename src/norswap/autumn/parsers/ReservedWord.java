@@ -0,0 +1,57 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Grammar;
+import norswap.autumn.Parse;
+
+/**
+ * Matches a reserved word (or any reserved word if {@link #word} is null), not followed by a
+ * character that can occur within an identifier, using a {@link ReservedWords} table.
+ *
+ * <p>This is equivalent to {@code seq(word, id_part.not())} (or to {@code
+ * seq(choice(<reserved words>), id_part.not())}), but the check is performed with a single scan
+ * of the identifier-like span at the current position, whose outcome is cached (cf. {@link
+ * ReservedWords}). One difference is that when the input starts with {@link #word} but this is
+ * followed by an identifier character, the failure is reported at the start of the word rather
+ * than after it.
+ *
+ * <p>Build with {@link Grammar#reserved(String)} and {@link Grammar#any_reserved_word}, when
+ * {@link Grammar#id_part} is a {@link CharPredicate} (or a {@link Choice} with a {@link
+ * Choice#union}).
+ */
+public final class ReservedWord extends AbstractPrimitive
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final ReservedWords table;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The reserved word to match, or null to match any reserved word.
+     */
+    public final String word;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public ReservedWord (ReservedWords table, String word)
+    {
+        super(word == null ? "any_reserved_word" : "reserved(" + word + ")", false);
+        this.table = table;
+        this.word = word;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        String match = table.classify(parse);
+
+        if (match == null || word != null && !word.equals(match))
+            return false;
+
+        parse.pos = table.end(parse);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
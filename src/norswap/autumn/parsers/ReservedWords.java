@@ -0,0 +1,227 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Grammar;
+import norswap.autumn.Parse;
+import norswap.autumn.ParseState;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * A table used to classify identifier-like spans of the input as reserved words or not, used to
+ * implement the reserved words / keyword system in {@link Grammar} (see
+ * /doc/A7-reserved-words-and-identifiers.md).
+ *
+ * <p>Given a position, the table scans the maximal span of characters that satisfy its {@code
+ * idPart} predicate, and looks up this span in a perfect hash table of the reserved words: the
+ * hash function (a seeded FNV-style hash over the code points) and the table size are selected
+ * such that no two reserved words map to the same slot, so that a single comparison is needed to
+ * determine whether the span is a reserved word.
+ *
+ * <p>The outcome of the last classification is cached for each parse, so that the common case
+ * of trying an identifier and then a sequence of reserved words (or the reverse) at the same
+ * position only performs the scan once. Because the outcome only depends on the input and on the
+ * bound of the scan ({@link Parse#endOfInput}, which is lowered by parsers like {@link Bounded}),
+ * which are both part of the cache key, the cache does not need to be reverted when backtracking.
+ *
+ * <p>The table is built lazily from the given collection of reserved words, the first time it is
+ * used. Reserved words that do not consist only of characters that satisfy {@code idPart} (cf.
+ * {@link #accepts(String)}) are ignored.
+ *
+ * <p>Use with {@link ReservedWord}.
+ */
+public final class ReservedWords
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Table
+    {
+        final int[][] slots;
+        final String[] words;
+        final int seed;
+        final int minLength, maxLength;
+
+        Table (int[][] slots, String[] words, int seed, int minLength, int maxLength)
+        {
+            this.slots = slots;
+            this.words = words;
+            this.seed = seed;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The outcome of the last classification for a parse. */
+    private static final class Classification
+    {
+        int pos = -1;
+        int endOfInput; // bound of the scan (see Parse#endOfInput)
+        int end;
+        String word;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Collection<String> source;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The predicate that matches characters that can occur inside identifiers.
+     */
+    public final IntPredicate idPart;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private volatile Table table;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ParseState<Classification> last
+        = new ParseState<>(this, Classification::new);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new table for the reserved words in {@code words}, which will be read when the
+     * table is first used. {@code idPart} matches the characters that can occur inside
+     * identifiers.
+     */
+    public ReservedWords (Collection<String> words, IntPredicate idPart)
+    {
+        this.source = words;
+        this.idPart = idPart;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the given reserved word can be recognized by this table, i.e. if it is non-empty and
+     * only consists of characters that satisfy {@link #idPart}.
+     */
+    public boolean accepts (String word) {
+        return !word.isEmpty() && word.codePoints().allMatch(idPart);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static int hash (int h, int c) {
+        return (h ^ c) * 0x01000193;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static int index (int h, int mask) {
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Table table()
+    {
+        Table t = table;
+        if (t == null) {
+            synchronized (this) {
+                if ((t = table) == null)
+                    table = t = build();
+            }
+        }
+        return t;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Table build()
+    {
+        LinkedHashSet<String> set = new LinkedHashSet<>();
+        for (String word: source)
+            if (accepts(word)) set.add(word);
+
+        String[] words = set.toArray(new String[0]);
+        int[][] codepoints = new int[words.length][];
+        int min = Integer.MAX_VALUE, max = 0;
+
+        for (int i = 0; i < words.length; ++i) {
+            codepoints[i] = words[i].codePoints().toArray();
+            min = Math.min(min, codepoints[i].length);
+            max = Math.max(max, codepoints[i].length);
+        }
+
+        int size = Integer.highestOneBit(Math.max(words.length, 1)) * 2;
+
+        while (true) {
+            for (int seed = 1; seed <= 1024; ++seed) {
+                int[][] slots = new int[size][];
+                String[] slotWords = new String[size];
+                int i = 0;
+                for (; i < words.length; ++i) {
+                    int h = seed;
+                    for (int c: codepoints[i]) h = hash(h, c);
+                    int idx = index(h, size - 1);
+                    if (slots[idx] != null) break;
+                    slots[idx] = codepoints[i];
+                    slotWords[idx] = words[i];
+                }
+                if (i == words.length)
+                    return new Table(slots, slotWords, seed, min, max);
+            }
+            size *= 2;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Classifies the identifier-like span starting at the current position of {@code parse}
+     * (possibly reusing a cached outcome), and returns the reserved word it corresponds to, or
+     * null if it isn't a reserved word.
+     *
+     * <p>After this call, {@link #end(Parse)} returns the end position of the span.
+     */
+    public String classify (Parse parse)
+    {
+        Classification cls = last.data(parse);
+        int pos = parse.pos;
+        if (cls.pos == pos && cls.endOfInput == parse.endOfInput)
+            return cls.word;
+
+        Table t = table();
+        int h = t.seed;
+        int end = pos;
+        while (end < parse.endOfInput) {
+            int c = parse.charAt(end);
+            if (!idPart.test(c)) break;
+            h = hash(h, c);
+            ++end;
+        }
+
+        String word = null;
+        int length = end - pos;
+        if (t.minLength <= length && length <= t.maxLength) {
+            int idx = index(h, t.slots.length - 1);
+            int[] candidate = t.slots[idx];
+            if (candidate != null && candidate.length == length && parse.match(pos, candidate))
+                word = t.words[idx];
+        }
+
+        cls.pos = pos;
+        cls.endOfInput = parse.endOfInput;
+        cls.end = end;
+        cls.word = word;
+        return word;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the end of the identifier-like span last classified by {@link #classify(Parse)}
+     * for {@code parse}.
+     */
+    public int end (Parse parse) {
+        return last.data(parse).end;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -35,7 +37,7 @@ import java.util.stream.Stream;
  * call the same parser(s) may cause significant parse performance degradation. This parser is able
  * to optimize this case when the same parser is passed as both left and right operand, however.
  */
-public final class RightExpression extends Parser
+public final class RightExpression extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -153,6 +155,202 @@ public final class RightExpression extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    // In iterative mode, the recursive calls to doparse (levels) are kept in an int array (object
+    // slot 0), where each level has LEVEL entries laid out as follows. Slot 0 holds the number of
+    // levels, and slot 1 the result of the level that just completed.
+    private static final int POS0 = 0, SIZE0 = 1, WHITESPACE0 = 2, LOG0 = 3, POS1 = 4, LOG1 = 5;
+    private static final int RECURSIVE = 6; // value of Parse#rightRecursive before a nested level
+    private static final int STATE = 7;     // phase (below) | index of the running operator << 3
+    private static final int LEVEL = 8;
+
+    private static final int
+        PREFIX = 0, PREFIX_NESTED = 1, LEFT = 2, INFIX = 3, INFIX_NESTED = 4, RIGHT = 5;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        engine.setObject(0, new int[4 * LEVEL]);
+        Parser next = enter(parse, engine);
+        return next != null
+            ? next
+            : engine.done(engine.getInt(1) != 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        while (true)
+        {
+            int[] levels = (int[]) engine.getObject(0);
+            int l = (engine.getInt(0) - 1) * LEVEL;
+            int state = levels[l + STATE];
+            int i = state >>> 3;
+            Parser next;
+
+            switch (state & 7)
+            {
+                case PREFIX:
+                    next = result
+                        ? nest(parse, engine, levels, l, PREFIX_NESTED)
+                        : prefix(parse, engine, levels, l, i + 1);
+                    break;
+
+                case PREFIX_NESTED:
+                    parse.rightRecursive = levels[l + RECURSIVE] != 0;
+                    if (result) {
+                        applyStep(parse, levels, l, prefixSteps[i]);
+                        next = complete(engine, true);
+                    } else {
+                        parse.pos = levels[l + POS0];
+                        parse.log.rollback(levels[l + LOG0]);
+                        next = prefix(parse, engine, levels, l, i + 1);
+                    }
+                    break;
+
+                case LEFT:
+                    next = result
+                        ? infix(parse, engine, levels, l, 0)
+                        : right(parse, engine, levels, l);
+                    break;
+
+                case INFIX:
+                    next = result
+                        ? nest(parse, engine, levels, l, INFIX_NESTED)
+                        : infix(parse, engine, levels, l, i + 1);
+                    break;
+
+                case INFIX_NESTED:
+                    parse.rightRecursive = levels[l + RECURSIVE] != 0;
+                    if (result) {
+                        applyStep(parse, levels, l, infixSteps[i]);
+                        next = complete(engine, true);
+                    } else {
+                        parse.pos = levels[l + POS1];
+                        parse.log.rollback(levels[l + LOG1]);
+                        next = infix(parse, engine, levels, l, i + 1);
+                    }
+                    break;
+
+                default: // RIGHT
+                    next = complete(engine, result);
+            }
+
+            if (next != null)
+                return next;
+
+            // The innermost level completed, pass its result to the enclosing level.
+            int count = engine.getInt(0) - 1;
+            engine.setInt(0, count);
+            result = engine.getInt(1) != 0;
+            if (count == 0)
+                return engine.done(result);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Starts a new level at the current position, returning the first parser to invoke, or null
+     * if the level completes immediately (see {@link #complete}).
+     */
+    private Parser enter (Parse parse, IterativeEngine engine)
+    {
+        int[] levels = (int[]) engine.getObject(0);
+        int count = engine.getInt(0);
+        if ((count + 1) * LEVEL > levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+            engine.setObject(0, levels);
+        }
+        engine.setInt(0, count + 1);
+
+        int l = count * LEVEL;
+        levels[l + POS0] = parse.pos;
+        levels[l + SIZE0] = parse.stack.size();
+        levels[l + WHITESPACE0] = parse.leadingWhitespaceStart();
+        levels[l + LOG0] = parse.log.size();
+        return prefix(parse, engine, levels, l, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Starts a nested level after the level at {@code l} matched an operator, which is then in the
+     * given phase.
+     */
+    private Parser nest (Parse parse, IterativeEngine engine, int[] levels, int l, int phase)
+    {
+        levels[l + STATE] = levels[l + STATE] & ~7 | phase;
+        levels[l + RECURSIVE] = parse.rightRecursive ? 1 : 0;
+        parse.rightRecursive = true;
+        return enter(parse, engine);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser prefix (Parse parse, IterativeEngine engine, int[] levels, int l, int i)
+    {
+        if (i < prefixes.length) {
+            levels[l + STATE] = i << 3 | PREFIX;
+            return prefixes[i];
+        }
+        if (left != null) {
+            levels[l + STATE] = LEFT;
+            return left;
+        }
+        return right(parse, engine, levels, l);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser infix (Parse parse, IterativeEngine engine, int[] levels, int l, int i)
+    {
+        if (i < infixes.length) {
+            levels[l + POS1] = parse.pos;
+            levels[l + LOG1] = parse.log.size();
+            levels[l + STATE] = i << 3 | INFIX;
+            return infixes[i];
+        }
+        if (left == right)
+            return complete(engine, !operatorRequired || parse.rightRecursive);
+        return right(parse, engine, levels, l);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parser right (Parse parse, IterativeEngine engine, int[] levels, int l)
+    {
+        if (operatorRequired && !parse.rightRecursive)
+            return complete(engine, false);
+        levels[l + STATE] = RIGHT;
+        return right;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Completes the innermost level with the given result, and returns null.
+     */
+    private static Parser complete (IterativeEngine engine, boolean result)
+    {
+        engine.setInt(1, result ? 1 : 0);
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void applyStep (Parse parse, int[] levels, int l, StackAction step)
+    {
+        int pos0 = levels[l + POS0];
+        int size0 = levels[l + SIZE0];
+        step.apply(new ActionContext(
+            parse, parse.stack.popFrom(size0), pos0, size0,
+            levels[l + WHITESPACE0], parse.trailingWhitespaceStart(pos0)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
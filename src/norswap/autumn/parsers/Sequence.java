@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -15,7 +17,7 @@ import static norswap.utils.Strings.joinArray;
  *
  * <p>Build with {@link Grammar#seq(Object...)}
  */
-public final class Sequence extends Parser
+public final class Sequence extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -45,6 +47,23 @@ public final class Sequence extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return children.length == 0 ? engine.done(true) : children[0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        int i = engine.getInt(0) + 1;
+        if (!result || i == children.length)
+            return engine.done(result);
+        engine.setInt(0, i);
+        return children[i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
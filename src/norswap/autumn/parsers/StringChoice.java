@@ -3,141 +3,278 @@ package norswap.autumn.parsers;
 import norswap.autumn.Grammar;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
-import norswap.utils.data.wrappers.Slot;
-import norswap.utils.multimap.MultiMap;
+import norswap.autumn.ParserVisitor;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static norswap.utils.Strings.joinArray;
 
 /**
  * An optimized parser for a choice between a series of literal string (i.e. something like
- * {@code choice("a", "ab", "bc")}). Used notably as part of the reserved words / keyword system
- * (see /doc/A7-reserved-words-and-identifiers.md).
+ * {@code choice("a", "ab", "bc")}), which matches the longest string that can be matched at the
+ * current position. Used notably as part of the reserved words / keyword system (see
+ * /doc/A7-reserved-words-and-identifiers.md).
  *
- * <p>There are no builders for this parser in {@link Grammar} as it is rarely useful outside of the
- * reserved word system: we usually want to do something (like build an AST node) depending
- * on which string we match.
+ * <p>Build with {@link Grammar#str_choice(String...)} or {@link
+ * Grammar#str_choice_ci(String...)}, which push the matched string on the value stack. The
+ * string that matched can also be retrieved without re-scanning the input via {@link
+ * #matchIndex(Parse, int)}.
  *
- * <p>The implementation currently uses a trie.
+ * <p>If {@link #caseInsensitive} is set, both the strings and the input are compared after case
+ * folding (using {@code Character.toLowerCase(Character.toUpperCase(c))}).
+ *
+ * <p>The implementation uses a trie encoded in flat arrays. Each node has a dense array of
+ * children indexed by character, spanning the range between its smallest and largest ASCII child
+ * (all nodes share a single {@link #next} array). Children for non-ASCII characters are stored in
+ * an open-addressing hash table keyed by (node, character).
  */
 public class StringChoice extends Parser
 {
-    private static class TrieNode
+    // ---------------------------------------------------------------------------------------------
+
+    public final String[] strings;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether to perform case-insensitive matching.
+     */
+    public final boolean caseInsensitive;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether to push the matched string (as it appears in {@link #strings}) on the value stack.
+     */
+    public final boolean push;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Length in code points of each string in {@link #strings}. */
+    private final int[] lengths;
+
+    /** For each node, the index of the string ending at this node, or -1. The root is node 0. */
+    private final int[] terminal;
+
+    /** For each node, the smallest ASCII child character. */
+    private final int[] lo;
+
+    /** For each node, the largest ASCII child character (smaller than {@link #lo} if none). */
+    private final int[] hi;
+
+    /** For each node, the offset of its ASCII children in {@link #next}. */
+    private final int[] base;
+
+    /** Dense ASCII children: {@code next[base[n] + c - lo[n]]} (0 if absent). */
+    private final int[] next;
+
+    /** Keys of the non-ASCII children hash table: {@code (node << 32) | c}, or -1 if empty. */
+    private final long[] hashKeys;
+
+    /** Child nodes of the non-ASCII children hash table. */
+    private final int[] hashValues;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a case-sensitive parser matching one of {@code strings}, which does not push the
+     * matched string.
+     */
+    public StringChoice (String... strings) {
+        this(false, false, strings);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a parser matching one of {@code strings}, optionally in a case-insensitive way (cf.
+     * {@link #caseInsensitive}) and optionally pushing the matched string (cf. {@link #push}).
+     */
+    public StringChoice (boolean caseInsensitive, boolean push, String... strings)
     {
-        /**  The code point followed to arrive at this node (0 for the root). */
-        private final int inbound;
-
-        /** If all the children share a prefix, the prefix, otherwise null. */
-        private final int[] lead;
-
-        /** Children of the node, one character ahead. */
-        private final TrieNode[] children;
-
-        /** Whether there is a value entirely matched by arriving at this node. */
-        private final boolean value;
-
-        private TrieNode(int i, Collection<int[]> strings)
-        {
-            int[] first = strings.iterator().next();
-            this.inbound = i == 0 ? (char) 0 : first[i - 1];
-
-            // character -> { strings starting with this character }
-            // 0 = there is a value entirely matched by this node
-            MultiMap<Integer, int[]> map = multiMap(i, strings);
-
-            // build up the common prefix
-            int[] lead = new int[0];
-            while (map.size() == 1) {
-                int k = map.keySet().iterator().next();
-                if (k == 0) break;
-                lead = Arrays.copyOf(lead, lead.length + 1);
-                lead[lead.length - 1] = k;
-                map = multiMap(++i, map.get(k));
+        this.strings = strings;
+        this.caseInsensitive = caseInsensitive;
+        this.push = push;
+        this.lengths = new int[strings.length];
+
+        // Build a pointer-based trie first, then flatten it.
+
+        ArrayList<int[]> children = new ArrayList<>(); // node -> [c0, n0, c1, n1, ...]
+        ArrayList<Integer> terminals = new ArrayList<>();
+        children.add(new int[0]);
+        terminals.add(-1);
+
+        for (int i = 0; i < strings.length; ++i) {
+            int[] cps = strings[i].codePoints().toArray();
+            lengths[i] = cps.length;
+            int node = 0;
+            for (int c: cps) {
+                c = fold(c);
+                int child = find(children.get(node), c);
+                if (child < 0) {
+                    child = children.size();
+                    children.add(new int[0]);
+                    terminals.add(-1);
+                    int[] array = children.get(node);
+                    array = Arrays.copyOf(array, array.length + 2);
+                    array[array.length - 2] = c;
+                    array[array.length - 1] = child;
+                    children.set(node, array);
+                }
+                node = child;
             }
-            this.lead = lead.length == 0 ? null : lead;
-
-            // build up the children array
-            ArrayList<TrieNode> children = new ArrayList<>();
-            final int j = i;
-            final Slot<Boolean> value = new Slot<>(false);
-            map.forEach((k, v) -> {
-                if (k == 0)
-                    value.x = true;
-                else
-                    children.add(new TrieNode(j + 1, v));
-            });
-
-            this.children = children.toArray(new TrieNode[0]);
-            this.value = value.x;
+            if (terminals.get(node) < 0) // the first of duplicate strings wins
+                terminals.set(node, i);
         }
 
-        private MultiMap<Integer, int[]> multiMap (int i, Collection<int[]> strings)
-        {
-            return strings.stream().collect(MultiMap.collector(
-                str -> i == str.length ? 0 : str[i],
-                Function.identity()));
+        int size = children.size();
+        this.terminal = new int[size];
+        this.lo = new int[size];
+        this.hi = new int[size];
+        this.base = new int[size];
+
+        int nonAscii = 0;
+        int dense = 0;
+        for (int n = 0; n < size; ++n) {
+            terminal[n] = terminals.get(n);
+            int min = Integer.MAX_VALUE, max = -1;
+            int[] array = children.get(n);
+            for (int j = 0; j < array.length; j += 2) {
+                int c = array[j];
+                if (c < 128) {
+                    min = Math.min(min, c);
+                    max = Math.max(max, c);
+                }
+                else ++ nonAscii;
+            }
+            lo[n] = max < 0 ? 1 : min;
+            hi[n] = max < 0 ? 0 : max;
+            base[n] = dense;
+            dense += hi[n] - lo[n] + 1;
         }
 
-        /** Returns the child matching the given codepoint, or null if there isn't any. */
-        private TrieNode get (int c)
-        {
-            for (TrieNode child: children)
-                if (child.inbound == c)
-                    return child;
-            return null;
+        this.next = new int[dense];
+        int capacity = Integer.highestOneBit(Math.max(nonAscii, 1)) * 4;
+        this.hashKeys = new long[capacity];
+        this.hashValues = new int[capacity];
+        Arrays.fill(hashKeys, -1L);
+
+        for (int n = 0; n < size; ++n) {
+            int[] array = children.get(n);
+            for (int j = 0; j < array.length; j += 2) {
+                int c = array[j];
+                if (c < 128) {
+                    next[base[n] + c - lo[n]] = array[j + 1];
+                    continue;
+                }
+                long key = ((long) n << 32) | c;
+                int slot = slot(key);
+                while (hashKeys[slot] != -1L)
+                    slot = (slot + 1) & (hashKeys.length - 1);
+                hashKeys[slot] = key;
+                hashValues[slot] = array[j + 1];
+            }
         }
     }
 
-    private final TrieNode trie;
-    public final String[] strings;
+    // ---------------------------------------------------------------------------------------------
 
-    public StringChoice (String... strings)
+    private static int find (int[] children, int c)
     {
-        this.strings = strings;
-        Collection<int[]> codepoints =
-            Arrays.stream(strings).map(s -> s.codePoints().toArray()).collect(Collectors.toList());
-        this.trie = new TrieNode(0, codepoints);
+        for (int j = 0; j < children.length; j += 2)
+            if (children[j] == c)
+                return children[j + 1];
+        return -1;
     }
 
-    @Override protected boolean doparse (Parse parse)
+    // ---------------------------------------------------------------------------------------------
+
+    private int fold (int c) {
+        return caseInsensitive ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int slot (long key)
     {
-        int pos0 = parse.pos;
-        int furthestMatch = -1;
-        TrieNode node = this.trie;
-        int i = 0;
-        while (node != null) {
-            if (node.lead != null) {
-                if (!parse.match(pos0 + i, node.lead)) break;
-                i += node.lead.length;
-            }
-            if (node.value)
-                furthestMatch = i;
-            node = node.get(parse.charAt(pos0 + i++));
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (hashKeys.length - 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returns the child of {@code node} for character {@code c}, or 0 if there isn't any. */
+    private int child (int node, int c)
+    {
+        if (c < 128) {
+            int l = lo[node];
+            return l <= c && c <= hi[node] ? next[base[node] + c - l] : 0;
         }
-        if (furthestMatch >= 0) {
-            parse.pos = pos0 + furthestMatch;
-            return true;
+        long key = ((long) node << 32) | c;
+        int slot = slot(key);
+        long k;
+        while ((k = hashKeys[slot]) != -1L) {
+            if (k == key) return hashValues[slot];
+            slot = (slot + 1) & (hashKeys.length - 1);
         }
-        return false;
+        return 0;
     }
 
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index (in {@link #strings}) of the longest string that matches the input of
+     * {@code parse} at position {@code pos}, or -1 if no string matches.
+     */
+    public int matchIndex (Parse parse, int pos)
+    {
+        int match = terminal[0];
+        int node = 0;
+        for (int i = pos; i < parse.endOfInput; ++i) {
+            node = child(node, fold(parse.charAt(i)));
+            if (node == 0) break;
+            if (terminal[node] >= 0)
+                match = terminal[node];
+        }
+        return match;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        int match = matchIndex(parse, parse.pos);
+        if (match < 0) return false;
+        parse.pos += lengths[match];
+        if (push) parse.stack.push(strings[match]);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public Iterable<Parser> children () {
         return Collections.emptyList();
     }
 
+    // ---------------------------------------------------------------------------------------------
+
     @Override public String toStringFull ()
     {
-        StringBuilder b = new StringBuilder("stringChoice(");
+        StringBuilder b = new StringBuilder(caseInsensitive ? "stringChoiceCI(" : "stringChoice(");
         joinArray(b, ", ", strings);
         b.append(")");
         return b.toString();
     }
 
+    // ---------------------------------------------------------------------------------------------
+
     /*
     // Alternate implementation.
     // In my tests, this is slower, but only marginally so (Java benchmark: 8.8s vs 9.3s)
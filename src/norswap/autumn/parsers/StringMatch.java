@@ -1,6 +1,8 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar;
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -19,7 +21,7 @@ import static norswap.autumn.util.ParserStringsUtil.escapeQuotedSection;
  * <p>Build with {@link Grammar#str(String)}, {@link Grammar#word(String)}, or the built-in conversion
  * from strings to {@code StringMatch} available for many methods in {@link Grammar}.
  */
-public final class StringMatch extends Parser {
+public final class StringMatch extends Parser implements IterativeParser {
     // ---------------------------------------------------------------------------------------------
 
     public final String string;
@@ -62,6 +64,34 @@ public final class StringMatch extends Parser {
 
     // ---------------------------------------------------------------------------------------------
 
+    // the position after the string is held in slot 0
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser start (Parse parse, IterativeEngine engine)
+    {
+        if (!parse.match(parse.pos, codepoints))
+            return engine.done(false);
+        parse.pos += codepoints.length;
+
+        if (whitespace == null)
+            return engine.done(true);
+
+        engine.setInt(0, parse.pos);
+        return whitespace;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        if (result)
+            parse.setWhitespaceFrom(engine.getInt(0));
+        return engine.done(true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
@@ -1,5 +1,7 @@
 package norswap.autumn.parsers;
 
+import norswap.autumn.IterativeEngine;
+import norswap.autumn.IterativeParser;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
@@ -18,7 +20,7 @@ import java.util.List;
  *
  * <p>Build with {@link norswap.autumn.Grammar.rule#word()}.
  */
-public final class TrailingWhitespace extends Parser
+public final class TrailingWhitespace extends Parser implements IterativeParser
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -54,6 +56,29 @@ public final class TrailingWhitespace extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Parser start (Parse parse, IterativeEngine engine) {
+        return child;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Parser resume (Parse parse, IterativeEngine engine, boolean result)
+    {
+        // slot 0: 1 if parsing the whitespace, slot 1: position before the whitespace
+        if (engine.getInt(0) == 0) {
+            if (!result)
+                return engine.done(false);
+            engine.setInt(0, 1);
+            engine.setInt(1, parse.pos);
+            return whitespace;
+        }
+        if (result)
+            parse.setWhitespaceFrom(engine.getInt(1));
+        return engine.done(true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
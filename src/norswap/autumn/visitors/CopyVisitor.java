@@ -218,7 +218,8 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
     // ---------------------------------------------------------------------------------------------
 
     @Override public void visit (Choice parser) {
-        registerCopy(parser, new Choice(map(parser.children(), witness, this::getCopy)));
+        registerCopy(parser,
+            new Choice(parser.kindOf, map(parser.children(), witness, this::getCopy)));
     }
 
     @Override public void visit (Sequence parser) {
@@ -292,6 +293,18 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
             parser.operatorRequired));
     }
 
+    @Override public void visit (OperatorTable parser)
+    {
+        registerCopy(parser, new OperatorTable(
+            getCopy(parser.operand),
+            map(parser.prefixes, witness, this::getCopy),
+            parser.prefixPrecedences, parser.prefixSteps,
+            map(parser.infixes, witness, this::getCopy),
+            parser.infixPrecedences, parser.infixLeftAssociative, parser.infixSteps,
+            map(parser.suffixes, witness, this::getCopy),
+            parser.suffixPrecedences, parser.suffixSteps));
+    }
+
     @Override public void visit (RightExpression parser)
     {
         Parser[] infixes  = map(parser.infixes,  witness, this::getCopy);
@@ -241,6 +241,23 @@ public final class VisitorFirstParsers implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void visit (OperatorTable parser)
+    {
+        firsts.add(parser.operand);
+        firsts.addAll(list(parser.prefixes));
+
+        if (!nullable(parser.operand))
+            return;
+
+        firsts.addAll(list(parser.infixes));
+        firsts.addAll(list(parser.suffixes));
+
+        // NOTE: We do not check for nullable operators, as that is a nullable repetition
+        // violation, and will be caught as such.
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void visit (RightExpression parser)
     {
         if (parser.left != null) firsts.add(parser.left);
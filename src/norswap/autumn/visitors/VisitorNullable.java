@@ -286,6 +286,14 @@ public final class VisitorNullable extends ParserWalker implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void visit (OperatorTable parser)
+    {
+        // The operand can be matched on its own, and prefix operators require an operand.
+        addIf(parser, nullable(parser.operand));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void visit (RightExpression parser)
     {
         if (!nullable(parser.right))
@@ -153,6 +153,32 @@ public final class VisitorNullableRepetition implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void visit (OperatorTable parser)
+    {
+        for (Parser op: parser.prefixes)
+            if (nullable(op)) {
+                result = true;
+                return;
+            }
+
+        for (Parser op: parser.suffixes)
+            if (nullable(op)) {
+                result = true;
+                return;
+            }
+
+        if (nullable(parser.operand))
+            for (Parser op: parser.infixes)
+                if (nullable(op)) {
+                    result = true;
+                    return;
+                }
+
+        result = false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void visit (RightExpression parser)
     {
         for (Parser prefix: parser.prefixes)
@@ -4,6 +4,10 @@ import norswap.autumn.Autumn;
 import norswap.autumn.ParseOptions;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserWalker;
+import norswap.autumn.parsers.Cut;
+import norswap.autumn.parsers.Longest;
+import norswap.autumn.parsers.Lookahead;
+import norswap.autumn.parsers.Not;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -12,8 +16,9 @@ import java.util.Set;
 
 /**
  * This class is used to check if a grammar is well-formed, i.e. (1) it contains no left-recursive
- * paths that would cause infinite recursion; and (2) it contains no repetitions over (a) nullable
- * parser(s) that would cause infinite looping.
+ * paths that would cause infinite recursion; (2) it contains no repetitions over (a) nullable
+ * parser(s) that would cause infinite looping; and (3) it contains no {@link Cut} within a parser
+ * that always backtracks over its children ({@link Lookahead}, {@link Not} and {@link Longest}).
  *
  * <p>This is automatically called when parsing through {@link Autumn#parse}, depending on the
  * {@link ParseOptions#wellFormednessCheck} value.
@@ -21,7 +26,7 @@ import java.util.Set;
  * <p>See {@link VisitorNullableRepetition} for more information about nullable repetitions.
  *
  * <p>If violations are found, informations about them are stored in {@link #leftRecursives},
- * {@link #leftrecPaths} and {@link #nullableRepetitions}.
+ * {@link #leftrecPaths}, {@link #nullableRepetitions} and {@link #backtrackedCuts}.
  *
  * <p>Invoke instances of this class through their {@link #wellFormed(Parser)} method, which
  * returns true if the parser graph reachable from the given parser is well-formed.
@@ -63,8 +68,19 @@ public final class WellFormednessChecker extends ParserWalker
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * A set of parsers that always backtrack over their children ({@link Lookahead}, {@link Not}
+     * and {@link Longest}), and that can invoke a {@link Cut}, which prevents backtracking.
+     */
+    public final Set<Parser> backtrackedCuts = new HashSet<>();
+
+    // ---------------------------------------------------------------------------------------------
+
     private final HashSet<Parser> visited = new HashSet<>();
 
+    /** Parsers from which no {@link Cut} is reachable, see {@link #reachesCut}. */
+    private final HashSet<Parser> cutFree = new HashSet<>();
+
     private final LinkedHashSet<Parser> stack = new LinkedHashSet<>();
 
     private final VisitorFirstParsers firstsVisitor;
@@ -103,7 +119,8 @@ public final class WellFormednessChecker extends ParserWalker
     public boolean wellFormed (Parser parser)
     {
         walk(parser);
-        return leftRecursives.isEmpty() && nullableRepetitions.isEmpty();
+        return leftRecursives.isEmpty() && nullableRepetitions.isEmpty()
+            && backtrackedCuts.isEmpty();
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -158,6 +175,33 @@ public final class WellFormednessChecker extends ParserWalker
         first(parser);
         if (nullRepsVisitor.nullableRepetition(parser))
             nullableRepetitions.add(parser);
+        if (parser instanceof Lookahead || parser instanceof Not || parser instanceof Longest)
+            for (Parser child: parser.children())
+                if (reachesCut(child)) {
+                    backtrackedCuts.add(parser);
+                    break;
+                }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether a {@link Cut} is reachable from {@code parser}.
+     */
+    private boolean reachesCut (Parser parser)
+    {
+        HashSet<Parser> seen = new HashSet<>();
+        ArrayList<Parser> pending = new ArrayList<>();
+        pending.add(parser);
+        while (!pending.isEmpty()) {
+            Parser next = pending.remove(pending.size() - 1);
+            if (next instanceof Cut) return true;
+            if (!cutFree.contains(next) && seen.add(next))
+                next.children().forEach(pending::add);
+        }
+        // no cut is reachable from any of the parsers we went through
+        cutFree.addAll(seen);
+        return false;
     }
 
     // ---------------------------------------------------------------------------------------------
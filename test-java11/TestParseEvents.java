@@ -0,0 +1,108 @@
+import norswap.autumn.Autumn;
+import norswap.autumn.Grammar;
+import norswap.autumn.ParseOptions;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ * Tests the Java Flight Recorder events emitted by the Java 11+ version of {@code ParseEvents}
+ * (in {@code src-java11}) when the {@link ParseOptions#jfr} option is set.
+ */
+public class TestParseEvents extends Grammar
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public rule item = character('a').push($ -> $.str()).memo();
+
+    public rule items = seq(item.at_least(1), character('b'));
+
+    @Override public rule root() {
+        return items;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs {@code parses} while recording, and returns the recorded parse events, in order.
+     */
+    private List<RecordedEvent> record (Runnable parses) throws Exception
+    {
+        Path file = Files.createTempFile("autumn", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("norswap.autumn.Parse");
+            recording.start();
+            parses.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                .filter(it -> it.getEventType().getName().equals("norswap.autumn.Parse"))
+                .sorted((x, y) -> x.getStartTime().compareTo(y.getStartTime()))
+                .collect(Collectors.toList());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parseEvent() throws Exception
+    {
+        ParseOptions options = ParseOptions.jfr(true).get();
+        List<RecordedEvent> events = record(() -> {
+            Autumn.parse(items, "aab", options);
+            Autumn.parse(items, "aax", options);
+            Autumn.parse(items, "aab", ParseOptions.get()); // no event
+        });
+        assertEquals(2, events.size());
+
+        RecordedEvent success = events.get(0);
+        assertEquals(items.getParser().toString(), success.getString("parser"));
+        assertEquals(3, success.getInt("inputSize"));
+        assertFalse(success.getBoolean("listInput"));
+        assertTrue(success.getBoolean("success"));
+        assertTrue(success.getBoolean("fullMatch"));
+        assertEquals(-1, success.getInt("errorOffset"));
+        assertNull(success.getString("thrown"));
+        assertEquals(3, success.getInt("memoEntries"));
+        assertEquals(2, success.getInt("peakStackSize"));
+        assertTrue(success.getInt("peakLogSize") >= 2);
+        assertTrue(success.getInt("maxDepth") >= 3);
+
+        RecordedEvent failure = events.get(1);
+        assertFalse(failure.getBoolean("success"));
+        assertFalse(failure.getBoolean("fullMatch"));
+        assertEquals(2, failure.getInt("errorOffset"));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void streamEvent() throws Exception
+    {
+        ParseOptions options = ParseOptions.jfr(true).get();
+        List<RecordedEvent> events = record(() ->
+            Autumn.stream(items, "abaab", options, value -> {}));
+        assertEquals(1, events.size());
+
+        RecordedEvent stream = events.get(0);
+        assertEquals(items.getParser().toString(), stream.getString("parser"));
+        assertEquals(5, stream.getInt("inputSize"));
+        assertTrue(stream.getBoolean("success"));
+        assertTrue(stream.getBoolean("fullMatch"));
+        assertEquals(-1, stream.getInt("errorOffset"));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
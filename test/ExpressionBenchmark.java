@@ -8,7 +8,8 @@ import java.time.Duration;
 /**
  * Demonstration of the inefficiency of writing an "expression tower" (including many types of
  * binary operators with different precedences) using right-recursion, versus using {@link
- * Grammar#left_expression()} and {@link Grammar#right_expression()}.
+ * Grammar#left_expression()} and {@link Grammar#right_expression()}, versus using a single {@link
+ * Grammar#operator_table()}.
  */
 public final class ExpressionBenchmark
 {
@@ -86,6 +87,24 @@ public final class ExpressionBenchmark
         }
     }
 
+    public final static class OperatorTableExpression extends Grammar
+    {
+        rule number = range('0', '9').at_least(1);
+        rule ground = lazy(() -> choice(seq('(', this.expr, ')'), number));
+
+        rule expr = operator_table()
+            .operand(ground)
+            .infix('*', 4).infix('/', 4)
+            .infix('+', 3).infix('-', 3)
+            .infix("<<", 2).infix(">>", 2).infix("<<<", 2)
+            .infix("==", 1).infix("!=", 1).infix(">=", 1).infix("<=", 1)
+            .infix('>', 1).infix('<', 1);
+
+        @Override public rule root () {
+            return expr;
+        }
+    }
+
     public static void main (String[] args)
     {
         // any more repetition and the bad grammar causes a stack overflow
@@ -112,6 +131,15 @@ public final class ExpressionBenchmark
         time = System.nanoTime() - time;
         System.out.println("Good parsed in: " + Duration.ofNanos(time));
 
-        // result: bad = 4.14s // good = 0.017s
+        Grammar table = new OperatorTableExpression();
+
+        time = System.nanoTime();
+        result = Autumn.parse(table, input, options);
+        if (!result.fullMatch)
+            System.out.println("table failed");
+        time = System.nanoTime() - time;
+        System.out.println("Table parsed in: " + Duration.ofNanos(time));
+
+        // result: bad = 4.7s // good = 0.046s // table = 0.0098s
     }
 }
@@ -0,0 +1,256 @@
+import norswap.autumn.Autumn;
+import norswap.autumn.Grammar;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.lang.java.JavaGrammar;
+import norswap.lang.java.JavaGrammarTokens;
+import norswap.lang.java.Lexer;
+import norswap.lang.json.JSON;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static java.lang.String.format;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Guards the parse hot path against allocation regressions, by parsing fixed inputs with the
+ * bundled grammars and checking upper bounds on the number of bytes allocated per input character
+ * (as reported by the thread allocation counter), on the number of memo entries created, and on
+ * the size of the side-effect log (at completion and at its peak) — all relative to the input size.
+ *
+ * <p>The budgets include a margin (about 50%) over the values measured when they were set, so that
+ * they only trip on real regressions. If a change legitimately increases (or
+ * decreases) allocations, update the budgets — the failure message lists all measures, along with
+ * their budget.
+ *
+ * <p>Allocation is measured after a few warmup parses (so that lazy initialization doesn't count),
+ * and the minimum over a few parses is retained. The tests are skipped if the JVM does not support
+ * the thread allocation counter.
+ */
+public final class TestAllocationBudgets
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 5;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final ParseOptions OPTIONS = ParseOptions
+        .wellFormednessCheck(false)
+        .recordCallStack(false)
+        .get();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final String JSON_INPUT = repeat(
+        "[", ",\n", "]",
+        "{ \"id\": 12345, \"name\": \"some item\", \"price\": 3.25e2, \"valid\": true,\n" +
+        "  \"tags\": [\"a\", \"b\", \"c\"], \"dims\": { \"w\": 1.5, \"h\": -2, \"d\": 0 } }",
+        200);
+
+    private static final String XML_INPUT = repeat(
+        "<root>", "\n", "</root>",
+        "<item><name>some item</name><price>325</price><tags><a>x</a><b>y</b></tags></item>",
+        200);
+
+    private static final String JAVA_INPUT = repeat(
+        "package test;\nimport java.util.List;\npublic class Test {\n", "\n", "}\n",
+        "    private int count = 0;\n" +
+        "    public List<String> names (int n, String... more) throws Exception {\n" +
+        "        for (int i = 0; i < n; ++i) {\n" +
+        "            if (i % 2 == 0 && more.length > i) count += more[i].length() * 3;\n" +
+        "            else names(i - 1, \"x\", \"y\");\n" +
+        "        }\n" +
+        "        return java.util.Arrays.asList(more);\n" +
+        "    }",
+        50);
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String repeat (String open, String sep, String close, String item, int n)
+    {
+        StringBuilder b = new StringBuilder(open);
+        for (int i = 0; i < n; ++i) {
+            if (i > 0) b.append(sep);
+            b.append(item);
+        }
+        return b.append(close).toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Measures and bounds for a parse. A bound of -1 indicates the measure isn't checked.
+     */
+    private static final class Budget
+    {
+        final String name;
+        double bytesPerChar = -1;
+        double memoEntriesPerChar = -1;
+        double logSizePerChar = -1;
+        double peakLogSizePerChar = -1;
+
+        Budget (String name) {
+            this.name = name;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private interface Run {
+        ParseResult run();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static com.sun.management.ThreadMXBean threadBean()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            throw new SkipException("Thread allocation counter not available.");
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported())
+            throw new SkipException("Thread allocation counter not supported.");
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        return sunBean;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void check (Budget budget, int length, Run run)
+    {
+        com.sun.management.ThreadMXBean bean = threadBean();
+        long thread = Thread.currentThread().getId();
+
+        ParseResult result = null;
+        for (int i = 0; i < WARMUP; ++i)
+            result = run.run();
+
+        if (!result.fullMatch)
+            fail(budget.name + ": the input does not parse fully:\n" + result.toString());
+
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            long before = bean.getThreadAllocatedBytes(thread);
+            run.run();
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(thread) - before);
+        }
+
+        Budget actual = new Budget(budget.name);
+        actual.bytesPerChar = allocated / (double) length;
+        actual.memoEntriesPerChar = result.memoEntries / (double) length;
+        actual.logSizePerChar = result.logSize / (double) length;
+        actual.peakLogSizePerChar = result.peakLogSize / (double) length;
+
+        List<String> lines = new ArrayList<>();
+        boolean exceeded = false;
+        exceeded |= row(lines, "bytes per char",
+            actual.bytesPerChar, budget.bytesPerChar);
+        exceeded |= row(lines, "memo entries per char",
+            actual.memoEntriesPerChar, budget.memoEntriesPerChar);
+        exceeded |= row(lines, "final log size per char",
+            actual.logSizePerChar, budget.logSizePerChar);
+        exceeded |= row(lines, "peak log size per char",
+            actual.peakLogSizePerChar, budget.peakLogSizePerChar);
+
+        if (exceeded)
+            fail(format("%s (%d chars) exceeds its budget:\n%s",
+                budget.name, length, String.join("\n", lines)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Appends a line comparing {@code actual} to {@code bound} to {@code lines}, and returns true
+     * iff the bound is exceeded.
+     */
+    private static boolean row (List<String> lines, String measure, double actual, double bound)
+    {
+        if (bound < 0) return false;
+        boolean exceeded = actual > bound;
+        lines.add(format(Locale.ROOT, "  %s %-25s actual %10.3f  budget %10.3f  (%+.1f%%)",
+            exceeded ? "!!" : "  ", measure, actual, bound,
+            bound == 0 ? (actual == 0 ? 0 : 100) : 100 * (actual - bound) / bound));
+        return exceeded;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void warmGrammar (Grammar grammar, String input) {
+        // Well-formedness check & rule names assignment happen on the first parse.
+        Autumn.parse(grammar, input, ParseOptions.get());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void json()
+    {
+        JSON grammar = new JSON();
+        warmGrammar(grammar, JSON_INPUT);
+
+        Budget budget = new Budget("JSON");
+        budget.bytesPerChar = 170;
+        budget.memoEntriesPerChar = 0;
+        budget.logSizePerChar = 1.2;
+        budget.peakLogSizePerChar = 1.2;
+
+        check(budget, JSON_INPUT.length(), () -> Autumn.parse(grammar, JSON_INPUT, OPTIONS));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void xml()
+    {
+        SimpleXML grammar = new SimpleXML();
+        warmGrammar(grammar, XML_INPUT);
+
+        Budget budget = new Budget("SimpleXML");
+        budget.bytesPerChar = 170;
+        budget.memoEntriesPerChar = 0;
+        budget.logSizePerChar = 0.65;
+        budget.peakLogSizePerChar = 0.65;
+
+        check(budget, XML_INPUT.length(), () -> Autumn.parse(grammar, XML_INPUT, OPTIONS));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void java()
+    {
+        JavaGrammar grammar = new JavaGrammar();
+        warmGrammar(grammar, JAVA_INPUT);
+
+        Budget budget = new Budget("JavaGrammar");
+        budget.bytesPerChar = 650;
+        budget.memoEntriesPerChar = 0.75;
+        budget.logSizePerChar = 1.8;
+        budget.peakLogSizePerChar = 1.8;
+
+        check(budget, JAVA_INPUT.length(), () -> Autumn.parse(grammar, JAVA_INPUT, OPTIONS));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void javaTokens()
+    {
+        JavaGrammarTokens grammar = new JavaGrammarTokens();
+        List<?> tokens = Arrays.asList(new Lexer(JAVA_INPUT).lex());
+        Autumn.parse(grammar, tokens, ParseOptions.get());
+
+        Budget budget = new Budget("JavaGrammarTokens");
+        budget.bytesPerChar = 600;
+        budget.memoEntriesPerChar = 0;
+        budget.logSizePerChar = 1.4;
+        budget.peakLogSizePerChar = 1.4;
+
+        check(budget, JAVA_INPUT.length(), () -> Autumn.parse(grammar, tokens, OPTIONS));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
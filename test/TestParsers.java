@@ -1,20 +1,52 @@
+import norswap.autumn.Autumn;
+import norswap.autumn.AutumnMonitor;
+import norswap.autumn.ChunkSplitter;
 import norswap.autumn.Grammar;
+import norswap.autumn.MalformedGrammarError;
+import norswap.autumn.MetricsSnapshot;
+import norswap.autumn.ParallelParseResult;
+import norswap.autumn.Parse;
+import norswap.autumn.ParseBudget;
+import norswap.autumn.ParseFootprint;
+import norswap.autumn.ParseHeatmap;
+import norswap.autumn.ParseMetrics;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseProfile;
 import norswap.autumn.ParseResult;
 import norswap.autumn.ParseState;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserMetrics;
+import norswap.autumn.ParserProfile;
+import norswap.autumn.RecordError;
+import norswap.autumn.StreamResult;
 import norswap.autumn.TestFixture;
 import norswap.autumn.actions.ActionContext;
+import norswap.autumn.actions.StackPush;
 import norswap.autumn.memo.MemoEntry;
 import norswap.autumn.memo.MemoTable;
 import norswap.autumn.parsers.*;
+import norswap.autumn.positions.LineMapString;
 import norswap.utils.Strings;
 import norswap.utils.Vanilla;
+import norswap.utils.data.structures.ArrayListLong;
 import norswap.utils.data.wrappers.Slot;
 import org.testng.AssertJUnit;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.lang.String.format;
@@ -189,6 +221,39 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    private static final class KindGrammar extends Grammar
+    {
+        { token_kind = it -> (Integer) it; }
+        rule k0 = kind(0);
+        rule k1 = kind(1);
+        rule k2 = kind(2);
+        rule alt = choice(seq(k0, k1), seq(k0, k2), k1.as_val("1"), opred(it -> true));
+        rule two = choice(k0, k1);
+        @Override public rule root() { return alt; }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void kindChoice()
+    {
+        KindGrammar g = new KindGrammar();
+
+        fixture.rule = g.alt;
+        fixture.success(list(0, 1));
+        fixture.success(list(0, 2));
+        fixture.success(list(1));
+        fixture.success(list(2));
+        fixture.success(list(7));
+        fixture.failureAt(list(0, 0), 1);
+        fixture.failureAt(list(), 0);
+
+        fixture.rule = g.two;
+        fixture.failureAt(list(2), 0);
+        fixture.failureAt(list(-1), 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void optional()
     {
         rule = alpha.opt();
@@ -314,6 +379,45 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void charClass()
+    {
+        rule = category(Character.UPPERCASE_LETTER);
+        success("A");
+        success("\u00C9");
+        failure("a");
+
+        rule = choice(digit, set("_$"), range(0x1F600, 0x1F64F));
+        AssertJUnit.assertNotNull(((Choice) rule.getParser()).union);
+        success("7");
+        success("$");
+        success(new String(Character.toChars(0x1F601)));
+        failure("a");
+
+        // The alternatives of a merged choice are still invoked when the parse observes them.
+        ParseMetrics metrics = new ParseMetrics();
+        Autumn.parse(rule, "$", ParseOptions.metrics(() -> metrics).get());
+        assertEquals(metrics.get(digit.getParser()).invocations, 1);
+        assertEquals(rule.getParser().children().iterator().next(), digit.getParser());
+
+        // The Java 8 classes tested here emit no JFR events, so the parse observes nothing.
+        rule unobserved = context(parse -> !parse.observed);
+        result = Autumn.parse(seq(rule, unobserved), "$", ParseOptions.jfr(true).get());
+        AssertJUnit.assertTrue(result.fullMatch);
+
+        CharClass cls = CharClass.range('a', 'z').and(CharClass.set("aeiou").not());
+        rule = rule(new CharPredicate("consonant", cls));
+        success("b");
+        failure("a");
+        failure("\0");
+
+        rule = choice(digit, cpred(Character::isLetter));
+        AssertJUnit.assertNull(((Choice) rule.getParser()).union);
+        success("1");
+        success("a");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void choice()
     {
         rule = choice(character('a'), character('b'));
@@ -325,6 +429,37 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void stringChoice()
+    {
+        rule = str_choice("<", "<<", "<<=", "<=", "\u00e9t\u00e9", "\uD83D\uDE00!");
+        success("<", "<");
+        success("<<", "<<");
+        success("<<=", "<<=");
+        success("<=", "<=");
+        success("\u00e9t\u00e9", "\u00e9t\u00e9");
+        success("\uD83D\uDE00!", "\uD83D\uDE00!");
+        prefix("<<<", 2);
+        prefix("<=<", 2);
+        failure("=");
+        failure("\u00e9t");
+        failure("");
+
+        rule = str_choice_ci("SELECT", "select_all", "\u00c9T\u00c9");
+        success("select", "SELECT");
+        success("SeLeCt", "SELECT");
+        success("SELECT_ALL", "select_all");
+        success("\u00e9t\u00e9", "\u00c9T\u00c9");
+        prefix("selectall", 6);
+        failure("selec");
+
+        rule = rule(new StringChoice("", "a"));
+        success("");
+        success("a");
+        prefix("b", 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void longest()
     {
         rule = longest(
@@ -454,6 +589,579 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void peakSizes()
+    {
+        rule = choice(seq(a, a, a, fail), str("aaa"));
+        success("aaa");
+        assertEquals(result.valueStack.size(), 0);
+        assertEquals(result.peakStackSize, 3);
+        AssertJUnit.assertTrue(result.peakLogSize >= 3);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void profile()
+    {
+        ParseProfile profile = new ParseProfile(1, 0);
+        rule = seq(a, b.at_least(0));
+        result = Autumn.parse(rule,
+            "abbb", ParseOptions.wellFormednessCheck(false).profile(() -> profile).get());
+
+        assertEquals(result.profile, profile);
+        assertEquals(profile.parses(), 1L);
+        AssertJUnit.assertTrue(profile.samples() > 0);
+        ParserProfile root = profile.parsers().get(rule.getParser());
+        assertEquals(root.totalSamples, profile.samples());
+        profile.parsers().values().forEach(p ->
+            AssertJUnit.assertTrue(p.selfSamples <= p.totalSamples));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void wasteMetrics() throws Exception
+    {
+        ParseMetrics metrics = new ParseMetrics();
+        rule failing = seq(a, a, b);
+        rule = choice(failing, seq(a, a));
+        result = Autumn.parse(rule,
+            "aa", ParseOptions.wellFormednessCheck(false).metrics(() -> metrics).get());
+        AssertJUnit.assertTrue(result.fullMatch);
+
+        ParserMetrics ma = metrics.get(a.getParser());
+        assertEquals(ma.invocations, 4);
+        assertEquals(ma.rolledBackSuccesses, 2);
+        assertEquals(ma.wastedInput, 2L);
+        assertEquals(ma.revisits, 2);
+
+        ParserMetrics mf = metrics.get(failing.getParser());
+        assertEquals(mf.undoneLogEntries, 4L); // each `a` pops its (empty) frame, then pushes
+        AssertJUnit.assertTrue(metrics.wasteReport().contains(a.getParser().toString()));
+
+        // Successes that can no longer be rolled back (before a cut) are not retained, nor are
+        // the positions visited before a cut.
+        Field successes = Parse.class.getDeclaredField("traceSuccesses");
+        Field parseMetrics = Parse.class.getDeclaredField("parseMetrics");
+        Field visits = ParseMetrics.class.getDeclaredField("visits");
+        successes.setAccessible(true);
+        parseMetrics.setAccessible(true);
+        visits.setAccessible(true);
+        int[] retained = new int[2];
+        rule probe = context(parse -> {
+            try {
+                retained[0] = ((int[]) successes.get(parse)).length;
+                retained[1] = ((long[]) visits.get(parseMetrics.get(parse))).length;
+            }
+            catch (IllegalAccessException e) { throw new AssertionError(e); }
+            return true;
+        });
+        rule = seq(seq(a, b).cut().at_least(0), probe);
+        result = Autumn.parse(rule, Strings.repeat("ab", 10_000),
+            ParseOptions.wellFormednessCheck(false).metrics(() -> metrics).get());
+        AssertJUnit.assertTrue(result.fullMatch);
+        AssertJUnit.assertTrue(retained[0] <= 256);
+        AssertJUnit.assertTrue(retained[1] <= 256);
+        assertEquals(metrics.get(a.getParser()).rolledBackSuccesses, 2);
+
+        // The metrics arrays are sized by the parsers invoked, not by their (global) ids.
+        Field parsers = ParseMetrics.class.getDeclaredField("parsers");
+        parsers.setAccessible(true);
+        AssertJUnit.assertTrue(((Parser[]) parsers.get(metrics)).length < 32);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void concurrentMetrics() throws InterruptedException
+    {
+        ParseMetrics metrics = new ParseMetrics();
+        rule = seq(a, a);
+        ParseOptions options = ParseOptions.wellFormednessCheck(false).metrics(() -> metrics).get();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100; ++j) Autumn.parse(rule, "aa", options);
+            });
+            threads[i].start();
+        }
+        for (Thread thread: threads) thread.join();
+
+        assertEquals(metrics.parses(), 400L);
+        assertEquals(metrics.get(a.getParser()).invocations, 800);
+
+        MetricsSnapshot before = metrics.snapshot();
+        MetricsSnapshot read = MetricsSnapshot.fromCsv(before.toCsv());
+        assertEquals(read.parses, 400L);
+        assertEquals(read.toCsv(), before.toCsv());
+        AssertJUnit.assertTrue(before.toJson().contains("\"invocations\": 800"));
+
+        Autumn.parse(rule, "aa", options);
+        MetricsSnapshot diff = metrics.snapshot().diff(read);
+        assertEquals(diff.parses, 1L);
+        assertEquals(diff.rows.get(a.getParser().toString()).invocations, 2L);
+        AssertJUnit.assertTrue(metrics.snapshot().diffReport(read, 10)
+            .contains(rule.getParser().toString()));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void allocationMetrics()
+    {
+        ParseMetrics metrics = new ParseMetrics();
+        rule big = character('a').push($ -> new byte[100_000]);
+        rule = seq(big, b, big).at_least(1);
+        ParseOptions options = ParseOptions
+            .wellFormednessCheck(false).traceAllocations(true).metrics(() -> metrics).get();
+        result = Autumn.parse(rule, "abaaba", options);
+        AssertJUnit.assertTrue(result.fullMatch);
+
+        ParserMetrics mbig = metrics.get(big.getParser());
+        if (mbig.totalAllocated == 0)
+            throw new SkipException("Thread allocation counter not supported.");
+
+        // 4 successful invocations, the action context etc. take a few hundred bytes at most
+        AssertJUnit.assertTrue(mbig.selfAllocated >= 400_000 && mbig.selfAllocated < 410_000);
+        // the total of the root is the sum of all self allocations (up to measurement noise)
+        ParserMetrics mroot = metrics.get(rule.getParser());
+        long selfSum = metrics.metrics().values().stream().mapToLong(it -> it.selfAllocated).sum();
+        AssertJUnit.assertTrue(Math.abs(mroot.totalAllocated - selfSum) < 1_000);
+        AssertJUnit.assertTrue(mroot.selfAllocated < 1_000);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void traceSpans()
+    {
+        rule item = choice(seq(character('a'), character('b')), character('a'));
+        item.getParser().setRule("item");
+        rule = item.at_least(1);
+        rule.getParser().setRule("items");
+
+        ParseOptions.ParseOptionsBuilder options = ParseOptions.wellFormednessCheck(false);
+        result = Autumn.parse(rule, "aab", options.spanDepth(2).get());
+        AssertJUnit.assertTrue(result.fullMatch);
+        assertEquals(result.trace.size(), 4); // items + 3 items (the last one fails)
+
+        String chrome = result.trace.chromeTrace(Integer.MAX_VALUE, 0, 1);
+        assertEquals(chrome.split("\"name\":\"item\"", -1).length - 1, 3);
+        assertEquals(chrome.split("\"success\":false", -1).length - 1, 1);
+        AssertJUnit.assertTrue(chrome.contains("\"args\":{\"start\":1,\"end\":3,"));
+
+        String sampled = result.trace.chromeTrace(Integer.MAX_VALUE, 0, 2);
+        assertEquals(sampled.split("\"name\":\"item\"", -1).length - 1, 2);
+        assertEquals(result.trace.chromeTrace(1, 0, 1).split("\"ph\"", -1).length - 1, 1);
+
+        for (String line: result.trace.collapsedStacks(Integer.MAX_VALUE, 1).split("\n"))
+            AssertJUnit.assertTrue(line, line.matches("items(;item)? \\d+"));
+
+        result = Autumn.parse(rule, "aab", options.spanDepth(1).get());
+        assertEquals(result.trace.size(), 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void footprint()
+    {
+        rule amemo = character('a').push($ -> $.str()).memo();
+        rule bmemo = character('b').memo();
+        rule = choice(seq(amemo, bmemo, b), seq(amemo, bmemo));
+        result = Autumn.parse(rule, "ab", ParseOptions.wellFormednessCheck(false).get());
+        AssertJUnit.assertTrue(result.fullMatch);
+
+        ParseFootprint footprint = result.footprint;
+        assertEquals(footprint.inputBytes, 24L); // 16 bytes header + 2 * 4
+        assertEquals(footprint.memoEntries, 2);
+        assertEquals(footprint.memos.size(), 2);
+        assertEquals(footprint.memos.get(amemo.getParser()).entries, 1L);
+        long abytes = footprint.memos.get(amemo.getParser()).bytes;
+        long bbytes = footprint.memos.get(bmemo.getParser()).bytes;
+        AssertJUnit.assertTrue(abytes > bbytes); // amemo's entry holds a side effect
+        assertEquals(footprint.memoBytes, abytes + bbytes);
+        assertEquals(footprint.stateEntries, 2); // one memo table per memo parser
+        // choice > seq > memo > push > character
+        assertEquals(footprint.maxDepth, 5);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void replayCallStack()
+    {
+        rule = seq(a, choice(seq(b, a), seq(b, b)));
+        ParseOptions recording = ParseOptions
+            .wellFormednessCheck(false).recordCallStack(true).get();
+        ParseOptions replaying = ParseOptions
+            .wellFormednessCheck(false).replayCallStack(true).get();
+
+        ParseResult recorded = Autumn.parse(rule, "abc", recording);
+        ParseResult replayed = Autumn.parse(rule, "abc", replaying);
+        AssertJUnit.assertFalse(replayed.fullMatch);
+        AssertJUnit.assertFalse(recorded.errorCallStack.isEmpty());
+        AssertJUnit.assertNotNull(replayed.errorCallStack);
+        assertEquals(replayed.errorCallStack.toString(), recorded.errorCallStack.toString());
+
+        result = Autumn.parse(rule, "abc", ParseOptions.wellFormednessCheck(false).get());
+        AssertJUnit.assertNull(result.errorCallStack);
+        result = Autumn.parse(rule, "aba", replaying);
+        AssertJUnit.assertTrue(result.fullMatch);
+        AssertJUnit.assertNull(result.errorCallStack);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void budget()
+    {
+        rule item = character('a');
+        item.getParser().setRule("item");
+        rule = item.at_least(0);
+        String input = Strings.repeat('a', 5000);
+        Function<ParseBudget, ParseOptions> options =
+            budget -> ParseOptions.wellFormednessCheck(false).budget(budget).get();
+
+        ParseBudget budget = ParseBudget.builder().maxInvocations(100).get();
+        result = Autumn.parse(rule, input, options.apply(budget));
+        AssertJUnit.assertFalse(result.success);
+        AssertJUnit.assertNull(result.thrown);
+        AssertJUnit.assertNotNull(result.budgetExceeded);
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.INVOCATIONS);
+        assertEquals(result.budgetExceeded.invocations, 101L);
+        assertEquals(result.budgetExceeded.rule, item.getParser());
+        assertEquals(result.budgetExceeded.position, 99); // 1 root + 100 items
+        assertEquals(result.errorOffset, 99);
+
+        AtomicBoolean cancelled = new AtomicBoolean(true);
+        budget = ParseBudget.builder().cancelled(cancelled::get).get();
+        result = Autumn.parse(rule, input, options.apply(budget));
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.CANCELLED);
+        cancelled.set(false);
+        result = Autumn.parse(rule, input, options.apply(budget));
+        AssertJUnit.assertTrue(result.fullMatch);
+        AssertJUnit.assertNull(result.budgetExceeded);
+
+        budget = ParseBudget.builder().maxTime(Duration.ZERO).get();
+        result = Autumn.parse(rule, input, ParseOptions.trace(true).budget(budget).get());
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.TIME);
+
+        // checked every 16 invocations, each item takes 2 invocations
+        rule = character('a').push($ -> $.str()).at_least(0);
+        budget = ParseBudget.builder().maxStackSize(10).checkInterval(16).get();
+        result = Autumn.parse(rule, input, options.apply(budget));
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.STACK_SIZE);
+        assertEquals(result.budgetExceeded.invocations, 32L);
+
+        // the replay is charged with the invocations of the failed parse (~5000)
+        rule = seq(item.at_least(0), 'b');
+        Function<ParseBudget, ParseOptions> replay = replayBudget ->
+            ParseOptions.wellFormednessCheck(false).replayCallStack(true).budget(replayBudget).get();
+        result = Autumn.parse(rule, input, replay.apply(ParseBudget.builder()
+            .maxInvocations(20_000).get()));
+        AssertJUnit.assertFalse(result.success);
+        AssertJUnit.assertNotNull(result.errorCallStack);
+        result = Autumn.parse(rule, input, replay.apply(ParseBudget.builder()
+            .maxInvocations(7_000).get()));
+        AssertJUnit.assertFalse(result.success);
+        AssertJUnit.assertNull(result.budgetExceeded);
+        AssertJUnit.assertNull(result.errorCallStack);
+        assertEquals(result.errorOffset, 5000);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void iterative()
+    {
+        Slot<rule> nested = new Slot<>(null);
+        nested.x = choice(
+            seq('[', lazy(() -> nested.x).sep(0, ','), ']').push($ -> $.$.length),
+            word("x").opt().push($ -> $.str()).memo());
+        rule = nested.x;
+        ParseOptions iterative = ParseOptions.wellFormednessCheck(false).iterative(true).get();
+        ParseOptions recursive = ParseOptions.wellFormednessCheck(false).get();
+
+        for (String input: new String[] { "[x,[],[[x ,x],,x]]", "[x,[x,]]]", "[x,[x" }) {
+            ParseResult expected = Autumn.parse(rule, input, recursive);
+            result = Autumn.parse(rule, input, iterative);
+            assertEquals(result.fullMatch, expected.fullMatch);
+            assertEquals(result.errorOffset, expected.errorOffset);
+            assertEquals(result.valueStack, expected.valueStack);
+        }
+
+        // deep enough to overflow the Java stack in recursive mode
+        int depth = 100_000;
+        String input = Strings.repeat('[', depth) + "x" + Strings.repeat(']', depth);
+        result = Autumn.parse(rule, input, iterative);
+        AssertJUnit.assertTrue(result.fullMatch);
+        AssertJUnit.assertTrue(result.footprint.maxDepth > depth);
+
+        result = Autumn.parse(rule, input.substring(1), iterative);
+        AssertJUnit.assertFalse(result.fullMatch);
+        assertEquals(result.matchSize, input.length() - 2); // all but the last bracket
+
+        ParseBudget budget = ParseBudget.builder().maxDepth(1000).get();
+        result = Autumn.parse(rule, input, ParseOptions.iterative(true).budget(budget).get());
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.DEPTH);
+        AssertJUnit.assertTrue(result.budgetExceeded.position < 1000);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void iterativeExpressions()
+    {
+        // The expression parsers, bounded, longest and string matches behave the same.
+        fixture.options = ParseOptions.iterative(true).get();
+        try {
+            testLeftExpression();
+            testRightExpression();
+            testOperatorTable();
+            testBounded();
+            longest();
+            stringMatch();
+        } finally {
+            fixture.options = null;
+        }
+
+        Slot<rule> expr = new Slot<>(null);
+        rule operand = choice(a, seq('(', lazy(() -> expr.x), ')'));
+        ParseOptions iterative = ParseOptions.wellFormednessCheck(false).iterative(true).get();
+        ParseOptions recursive = ParseOptions.wellFormednessCheck(false).get();
+        int depth = 100_000;
+
+        StackPush count = $ -> $.$.length;
+
+        for (rule expression: list(
+                left_expression().operand(operand).infix("+", count).suffix("!", count),
+                right_expression().operand(operand).infix("^", count).prefix("-", count),
+                operator_table().operand(operand).prefix("-", 30, count).infix("+", 10, count)
+                    .infixRight("^", 20, count).suffix("!", 40, count)))
+        {
+            expr.x = rule = expression;
+
+            for (String input: new String[] { "(a+a)!+(a)", "a^-(a^a)^a", "-(a+a)!^a", "(a+)" }) {
+                ParseResult expected = Autumn.parse(rule, input, recursive);
+                result = Autumn.parse(rule, input, iterative);
+                assertEquals(result.fullMatch, expected.fullMatch);
+                assertEquals(result.matchSize, expected.matchSize);
+                assertEquals(result.errorOffset, expected.errorOffset);
+                assertEquals(result.valueStack, expected.valueStack);
+            }
+
+            // deep enough to overflow the Java stack in recursive mode
+            String input = Strings.repeat('(', depth) + "a" + Strings.repeat(')', depth);
+            result = Autumn.parse(rule, input, iterative);
+            AssertJUnit.assertTrue(result.fullMatch);
+        }
+
+        // right-recursive nesting within a single expression parser invocation
+        result = Autumn.parse(rule, Strings.repeat('-', depth) + "a", iterative);
+        AssertJUnit.assertTrue(result.fullMatch);
+        result = Autumn.parse(rule, Strings.repeat("a^", depth) + "a", iterative);
+        AssertJUnit.assertTrue(result.fullMatch);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void testCut()
+    {
+        rule = choice(seq('a', cut(), 'b'), seq('a', 'c'));
+        success("ab");
+        failure("ac", 1);
+
+        rule item = character('a').push($ -> $.str()).memo();
+        rule = item.cut().at_least(0);
+        String input = Strings.repeat('a', 1000);
+        result = Autumn.parse(rule, input, ParseOptions.wellFormednessCheck(false).get());
+        AssertJUnit.assertTrue(result.fullMatch);
+        assertEquals(result.valueStack.size(), 1000);
+        AssertJUnit.assertTrue(result.peakLogSize <= 2);
+
+        rule = item.at_least(0);
+        result = Autumn.parse(rule, input, ParseOptions.wellFormednessCheck(false).get());
+        AssertJUnit.assertTrue(result.peakLogSize >= 1000);
+
+        // Parsers that backtrack over their children reject cuts.
+        ParseOptions unchecked = ParseOptions.wellFormednessCheck(false).get();
+        for (rule backtracking: list(item.cut().ahead(), item.cut().not(), longest(item.cut(), a))) {
+            rule = seq(backtracking.opt(), a);
+            result = Autumn.parse(rule, "a", unchecked);
+            AssertJUnit.assertTrue(result.thrown instanceof IllegalStateException);
+            AssertJUnit.assertTrue(result.thrown.getMessage().startsWith("cut at position 1"));
+            try {
+                Autumn.parse(rule, "a", ParseOptions.get());
+                AssertJUnit.fail("MalformedGrammarError not thrown for " + backtracking);
+            } catch (MalformedGrammarError e) {
+                AssertJUnit.assertTrue(e.checker.backtrackedCuts.contains(backtracking.getParser()));
+            }
+        }
+
+        // Memoized cuts followed by a lookahead, and memoized parsers reused after a cut.
+        rule = seq(item.cut().memo(), a.ahead(), choice(seq(item, b), seq(item, a)));
+        result = Autumn.parse(rule, "aaa", unchecked);
+        AssertJUnit.assertTrue(result.fullMatch);
+        assertEquals(result.valueStack.size(), 4); // the lookahead keeps its value
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void stream() throws Exception
+    {
+        rule record = seq(digit.at_least(1).push($ -> $.str()), '\n');
+        rule resync = seq(seq(not('\n'), any).at_least(0), '\n');
+        ParseOptions options = ParseOptions.get();
+        List<Object> values = new ArrayList<>();
+        List<RecordError> errors = new ArrayList<>();
+
+        StreamResult stream = Autumn.stream(record, "1\n22\n333\n", options, values::add);
+        AssertJUnit.assertTrue(stream.complete);
+        assertEquals(stream.records, 3);
+        assertEquals(values, list("1", "22", "333"));
+
+        values.clear();
+        stream = Autumn.stream(record, "1\nx\n3", options, values::add);
+        AssertJUnit.assertFalse(stream.complete);
+        assertEquals(values, list("1"));
+        assertEquals(stream.error.recordStart, 2);
+        assertEquals(stream.error.errorOffset, 2);
+        assertEquals(stream.position, 2);
+
+        values.clear();
+        stream = Autumn.stream(record, resync, "1\nx\n3\n2x\n", options, values::add, errors::add);
+        AssertJUnit.assertTrue(stream.complete);
+        assertEquals(values, list("1", "3"));
+        assertEquals(stream.errors, 2);
+        assertEquals(errors.get(0).resumeOffset, 4);
+        assertEquals(errors.get(1).errorOffset, 7);
+
+        String input = Strings.repeat("42\n", 1000);
+        stream = Autumn.stream(record, input, options, value -> {});
+        assertEquals(stream.records, 1000);
+        AssertJUnit.assertTrue(stream.peakLogSize <= 2);
+        AssertJUnit.assertTrue(stream.peakStackSize <= 1);
+
+        // In tracing mode, the timings of the previous records are not retained.
+        Field timings = Parse.class.getDeclaredField("traceTimings");
+        timings.setAccessible(true);
+        int[] maxTimings = new int[1];
+        rule probe = context(parse -> {
+            try {
+                int size = ((ArrayListLong) timings.get(parse)).size();
+                maxTimings[0] = Math.max(maxTimings[0], size);
+            }
+            catch (IllegalAccessException e) { throw new AssertionError(e); }
+            return true;
+        });
+        stream = Autumn.stream(seq(record, probe), input,
+            ParseOptions.wellFormednessCheck(false).trace(true).get(), value -> {});
+        assertEquals(stream.records, 1000);
+        AssertJUnit.assertTrue(maxTimings[0] < 20);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parseParallel() throws Exception
+    {
+        rule = seq(digit.at_least(1).push($ -> $.str()), '\n').at_least(0);
+        ParseOptions options = ParseOptions.get();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; ++i) builder.append(i).append('\n');
+        String input = builder.toString();
+        ParseResult expected = Autumn.parse(rule, input, options);
+
+        for (ChunkSplitter splitter: list(ChunkSplitter.lines(), ChunkSplitter.of(character('\n'))))
+        {
+            ParallelParseResult parallel =
+                Autumn.parseParallel(rule, input, splitter, 20, options, pool);
+            AssertJUnit.assertTrue(parallel.fullMatch);
+            AssertJUnit.assertTrue(parallel.chunks.size() > 5);
+            assertEquals(parallel.values, expected.valueStack);
+
+            String bad = input.replace("\n42\n", "\n4x2\n");
+            parallel = Autumn.parseParallel(rule, bad, splitter, 20, options, pool);
+            AssertJUnit.assertFalse(parallel.fullMatch);
+            assertEquals(parallel.errorOffset, Autumn.parse(rule, bad, options).errorOffset);
+        }
+
+        pool.shutdown();
+
+        // The splitter must release the parse state caches of the parses it runs.
+        rule separator = character('\n').memo();
+        assertEquals(ChunkSplitter.of(separator).boundary(input, 5), 6);
+        Field cached = ParseState.class.getDeclaredField("cached");
+        cached.setAccessible(true);
+        AssertJUnit.assertNull(cached.get(((Memo) separator.getParser()).memoizer));
+        rule = seq(digit.at_least(1), separator).at_least(0);
+        success(input);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void monitor() throws Exception
+    {
+        rule amemo = character('a').memo();
+        rule bmemo = character('b').memo();
+        rule = choice(seq(amemo, bmemo, b), seq(amemo, bmemo));
+        AutumnMonitor monitor = AutumnMonitor.register("TestParsers.monitor", true);
+        try {
+            ParseOptions options = ParseOptions.wellFormednessCheck(false).monitor(monitor).get();
+            assertEquals(options.profile.get(), monitor.profile());
+            for (int i = 0; i < 10; ++i)
+                Autumn.parse(rule, "ab", options);
+            Autumn.parse(rule, "abc", options);
+
+            assertEquals(monitor.getParses(), 11L);
+            assertEquals(monitor.getFailures(), 1L);
+            assertEquals(monitor.getExceptions(), 0L);
+            assertEquals(monitor.getInputParsed(), 23L);
+            assertEquals(monitor.getInFlightParses(), 0L);
+            // two entries (misses) and two hits per parse
+            assertEquals(monitor.getMemoHitRate(), 0.5);
+            AssertJUnit.assertTrue(
+                monitor.getMaxLatencyMillis() >= monitor.getAverageLatencyMillis());
+
+            ObjectName name = new ObjectName("norswap.autumn:type=AutumnMonitor,name="
+                + ObjectName.quote("TestParsers.monitor"));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(server.getAttribute(name, "Parses"), 11L);
+
+            monitor.reset();
+            assertEquals(monitor.getParses(), 0L);
+            assertEquals(monitor.getSlowestRules().length, 0);
+
+            // A stream is reported as a single parse.
+            rule record = seq(a, b);
+            Autumn.stream(record, "ababab", options, value -> {});
+            Autumn.stream(record, "abba", options, value -> {});
+            assertEquals(monitor.getParses(), 2L);
+            assertEquals(monitor.getFailures(), 1L);
+            assertEquals(monitor.getInputParsed(), 10L);
+            assertEquals(monitor.getInFlightParses(), 0L);
+        }
+        finally {
+            monitor.unregister();
+        }
+        AssertJUnit.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName("norswap.autumn:type=AutumnMonitor,name=\"TestParsers.monitor\"")));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void heatmap()
+    {
+        String input = "ab\naaa\nb";
+        rule nl = character('\n');
+        rule = seq(a, b, nl, choice(seq(a, a, a, a), seq(a, a, a)), nl, b);
+        result = Autumn.parse(rule,
+            input, ParseOptions.wellFormednessCheck(false).heatmap(true).get());
+        AssertJUnit.assertTrue(result.fullMatch);
+
+        LineMapString map = new LineMapString("", input);
+        List<ParseHeatmap.HotLine> lines = result.heatmap.hotLines(map, 2);
+        assertEquals(lines.size(), 2);
+        assertEquals(lines.get(0).line, 2);
+        assertEquals(lines.get(0).hottestColumn, 1);
+        AssertJUnit.assertTrue(result.heatmap.listing(map, 1).contains(">> aaa"));
+        AssertJUnit.assertTrue(result.heatmap.csv(map, 1).contains("\n2,"));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void backtracking()
     {
         rule = choice(seq(a,a), seq(character('a'), b));
@@ -749,6 +1457,48 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void testOperatorTable()
+    {
+        rule = operator_table()
+            .operand(a)
+            .prefix("-", 30, $ -> "-(" + $.$[0] + ")")
+            .suffix("!", 40, $ -> "(" + $.$[0] + ")!")
+            .suffix("?", 5, $ -> "(" + $.$[0] + ")?")
+            .infix("+", 10, $ -> "(" + $.$[0] + "+" + $.$[1] + ")")
+            .infix("*", 20, $ -> "(" + $.$[0] + "*" + $.$[1] + ")")
+            .infixRight("^", 25, $ -> "(" + $.$[0] + "^" + $.$[1] + ")");
+
+        success("a", "a");
+        success("a+a*a", "(a+(a*a))");
+        success("a*a+a", "((a*a)+a)");
+        success("a+a+a", "((a+a)+a)");
+        success("a^a^a", "(a^(a^a))");
+        success("a*a^a", "(a*(a^a))");
+        success("-a*a", "(-(a)*a)");
+        success("-a^a", "(-(a)^a)");
+        success("a*-a", "(a*-(a))");
+        success("--a", "-(-(a))");
+        success("-a!", "-((a)!)");
+        success("a+a!", "(a+(a)!)");
+        success("a+a?", "((a+a))?");
+        success("a+a?+a", "(((a+a))?+a)");
+
+        failure("");
+        failure("-");
+        prefix("a+", 1);
+        prefix("a+*a", 1);
+
+        // test no step version
+        rule = operator_table()
+            .operand(a)
+            .infix("+", 1)
+            .suffix("=", 0, $ -> Strings.join("", $.$));
+
+        success("a+a+a=", "aaa");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void testBounded()
     {
         rule = seq(not('-'), any).at_least(3).as_val("coarse")
@@ -791,4 +1541,55 @@ public final class TestParsers extends Grammar
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    private static final class KeywordGrammar extends Grammar
+    {
+        { id_part = choice(alphanum, '_'); }
+        rule _in    = reserved("in");
+        rule _int   = reserved("int");
+        rule _inner = reserved("in_ner");
+        rule _bang  = reserved("bang!");
+        rule iden   = identifier(seq(alpha, id_part.at_least(0)));
+        @Override public rule root() { return iden; }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void reservedWords()
+    {
+        KeywordGrammar g = new KeywordGrammar();
+        AssertJUnit.assertTrue(g._int.getParser().toString().contains("reserved"));
+
+        rule = g._int;
+        success("int");
+        failure("in");
+        failure("integer");
+
+        rule = g._inner;
+        success("in_ner");
+
+        rule = g._bang;
+        success("bang!");
+        failure("bang!x", 5);
+
+        rule = g.iden;
+        success("foo");
+        success("inte");
+        success("bang");
+        failure("in");
+        failure("int");
+        failure("in_ner");
+        failure("bang!");
+
+        rule = choice(g.iden, g._int, g._in);
+        success("int");
+        success("in");
+        success("i");
+
+        // The classification of "integer" must not be reused when the input is bounded to "int".
+        rule = seq(g.iden.ahead(), str("int").refine(g._int).exact(), g.iden);
+        success("integer");
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
@@ -30,6 +30,8 @@ public class TestWellFormedness extends Grammar
         seq(lazy(() -> this.anonymousLeftRecursive), "a"),
         "a");
 
+    public rule cutInLookahead = seq(str("a").cut().memo().ahead(), str("aaa"));
+
     // ---------------------------------------------------------------------------------------------
 
     private void assertThrown(rule rule, String name) {
@@ -65,5 +67,9 @@ public class TestWellFormedness extends Grammar
         assertThrown(nullableRepetitionRepetition, "repetition of nullable repetition");
     }
 
+    @Test public void testCutInLookahead() {
+        assertThrown(cutInLookahead, "cut within a lookahead");
+    }
+
     // ---------------------------------------------------------------------------------------------
 }